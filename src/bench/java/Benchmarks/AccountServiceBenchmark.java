@@ -0,0 +1,54 @@
+package Benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import Service.AccountService;
+import Util.ConnectionUtil;
+
+/**
+ * AccountService.validateUser, the login path, for a correct password, a wrong password and an unknown user,
+ * against the seeded testuser1 account.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AccountServiceBenchmark {
+
+    private AccountService accountService;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+        accountService = new AccountService();
+    }
+
+    @Benchmark
+    public boolean validateUserValid() {
+        return accountService.validateUser("testuser1", "password");
+    }
+
+    @Benchmark
+    public boolean validateUserWrongPassword() {
+        return accountService.validateUser("testuser1", "not the password");
+    }
+
+    @Benchmark
+    public boolean validateUserUnknown() {
+        return accountService.validateUser("nobody", "password");
+    }
+}
@@ -0,0 +1,104 @@
+package Benchmarks;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+/**
+ * Full HTTP round trips through SocialMediaController, with the server and the client in the same JVM on the
+ * loopback interface: routing, JSON, the services and H2 all included.
+ *
+ * Each call checks the status code, so a benchmark that starts failing shows up as an error rather than as a
+ * suspiciously fast score.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HttpRoundTripBenchmark {
+
+    private static final int PORT = 8091;
+
+    private Javalin app;
+    private HttpClient client;
+    private HttpRequest getMessage;
+    private HttpRequest getMessagesByUser;
+    private HttpRequest postMessage;
+    private HttpRequest login;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+        app = new SocialMediaController().startAPI();
+        app.start(PORT);
+        client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+
+        String base = "http://localhost:" + PORT;
+        getMessage = HttpRequest.newBuilder(URI.create(base + "/messages/1")).build();
+        getMessagesByUser = HttpRequest.newBuilder(URI.create(base + "/accounts/1/messages?limit=20")).build();
+        postMessage = HttpRequest.newBuilder(URI.create(base + "/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString(
+                        "{\"posted_by\":1,\"message_text\":\"benchmark message\",\"time_posted_epoch\":1669947792}"))
+                .header("Content-Type", "application/json")
+                .build();
+        login = HttpRequest.newBuilder(URI.create(base + "/login"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"username\":\"testuser1\",\"password\":\"password\"}"))
+                .header("Content-Type", "application/json")
+                .build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        app.stop();
+    }
+
+    @Benchmark
+    public byte[] getMessageById() throws IOException, InterruptedException {
+        return send(getMessage);
+    }
+
+    @Benchmark
+    public byte[] getMessagesByUserPage() throws IOException, InterruptedException {
+        return send(getMessagesByUser);
+    }
+
+    @Benchmark
+    public byte[] postMessage() throws IOException, InterruptedException {
+        return send(postMessage);
+    }
+
+    @Benchmark
+    public byte[] login() throws IOException, InterruptedException {
+        return send(login);
+    }
+
+    private byte[] send(HttpRequest request) throws IOException, InterruptedException {
+        HttpResponse<byte[]> response = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException(request.uri() + " returned " + response.statusCode());
+        }
+        return response.body();
+    }
+}
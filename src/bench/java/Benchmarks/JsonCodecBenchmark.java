@@ -0,0 +1,105 @@
+package Benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Model.Message;
+import Util.PayloadFormat;
+import io.javalin.json.JavalinJackson;
+
+/**
+ * Compares the shared PayloadFormat.JSON codecs against the way the handlers used to do it: a new ObjectMapper per request,
+ * the body decoded into a String first, and responses serialized to a String by Javalin before being written.
+ *
+ * Run with -prof gc to compare allocation per operation alongside throughput:
+ *   mvn -Pbench test-compile exec:exec -Djmh.args="JsonCodecBenchmark -prof gc"
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonCodecBenchmark {
+
+    @Param({"10", "1000"})
+    public int listSize;
+
+    private byte[] messageBody;
+    private Message message;
+    private List<Message> messages;
+    private JavalinJackson javalinJackson;
+    private ByteArrayOutputStream out;
+
+    @Setup
+    public void setUp() throws IOException {
+        message = new Message(1, 1, "a message of a fairly typical length for this application", 1669947792L);
+        messageBody = PayloadFormat.JSON.getMapper().writeValueAsBytes(message);
+        messages = new ArrayList<>();
+        for (int i = 0; i < listSize; i++) {
+            messages.add(new Message(i, i % 50, "message number " + i + " with some text", 1669947792L + i));
+        }
+        javalinJackson = new JavalinJackson(new ObjectMapper());
+        out = new ByteArrayOutputStream(64 * 1024);
+    }
+
+    @Benchmark
+    public Message readMessageLegacy() throws IOException {
+        String body = new String(messageBody, StandardCharsets.UTF_8);
+        return new ObjectMapper().readValue(body, Message.class);
+    }
+
+    @Benchmark
+    public Message readMessageCodec() throws IOException {
+        return PayloadFormat.JSON.readMessage(new ByteArrayInputStream(messageBody));
+    }
+
+    @Benchmark
+    public int writeMessageLegacy() throws IOException {
+        out.reset();
+        String json = javalinJackson.toJsonString(message, Message.class);
+        out.write(json.getBytes(StandardCharsets.UTF_8));
+        return out.size();
+    }
+
+    @Benchmark
+    public int writeMessageCodec() throws IOException {
+        out.reset();
+        PayloadFormat.JSON.getMessageWriter().writeValue(out, message);
+        return out.size();
+    }
+
+    @Benchmark
+    public int writeMessageListLegacy() throws IOException {
+        out.reset();
+        String json = javalinJackson.toJsonString(messages, List.class);
+        out.write(json.getBytes(StandardCharsets.UTF_8));
+        return out.size();
+    }
+
+    @Benchmark
+    public int writeMessageListCodec() throws IOException {
+        out.reset();
+        PayloadFormat.JSON.getMessageListWriter().writeValue(out, messages);
+        return out.size();
+    }
+}
@@ -0,0 +1,59 @@
+package Benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import Model.Account;
+import Model.Message;
+import Util.PayloadFormat;
+
+/**
+ * Message and Account JSON round trips through the shared codecs: serialize to bytes, then parse them back, as a
+ * request body and its response would be.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonRoundTripBenchmark {
+
+    private Message message;
+    private Account account;
+    private ByteArrayOutputStream out;
+
+    @Setup
+    public void setUp() {
+        message = new Message(1, 1, "a message of a fairly typical length for this application", 1669947792L);
+        account = new Account(1, "testuser1", "password");
+        out = new ByteArrayOutputStream(1024);
+    }
+
+    @Benchmark
+    public Message messageRoundTrip() throws IOException {
+        out.reset();
+        PayloadFormat.JSON.getMessageWriter().writeValue(out, message);
+        return PayloadFormat.JSON.readMessage(new ByteArrayInputStream(out.toByteArray()));
+    }
+
+    @Benchmark
+    public Account accountRoundTrip() throws IOException {
+        out.reset();
+        PayloadFormat.JSON.getAccountWriter().writeValue(out, account);
+        return PayloadFormat.JSON.readAccount(new ByteArrayInputStream(out.toByteArray()));
+    }
+}
@@ -0,0 +1,344 @@
+package Benchmarks;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import DAO.AccountDAO;
+import DAO.MessageDAO;
+import Controller.SocialMediaController;
+import Model.Account;
+import Model.Message;
+import Util.ConnectionUtil;
+import Util.LatencyHistogram;
+import io.javalin.Javalin;
+
+/**
+ * Open-loop HTTP load generator for sizing instances. Starts the app on a local port, seeds accounts and messages,
+ * then sends requests to all eight routes at a fixed arrival rate with a configurable mix, and prints throughput
+ * and latency percentiles per route.
+ *
+ * Requests are scheduled at their intended times whatever the server is doing. Each latency is measured from the
+ * intended send time, not the actual one, so a stalled server shows up as latency rather than as fewer requests
+ * (no coordinated omission). Arrivals are Poisson by default; load.arrivals=uniform spaces them evenly.
+ *
+ * Settings are system properties:
+ *   load.rate          requests per second (default 500)
+ *   load.seconds       measured duration (default 30), after load.warmupSeconds (default 5) of unrecorded load
+ *   load.mix           route weights, e.g. getMessageById=40,getMessagesByUser=25,... (defaults below)
+ *   load.readRatio     if set, rescales the weights so reads make up this share of requests, e.g. 0.95
+ *   load.arrivals      poisson or uniform
+ *   load.maxInFlight   requests allowed in flight before new ones are counted as dropped (default 10000)
+ *   load.accounts, load.messages   seed data (default 100 and 10000)
+ *   load.port          (default 8092); load.url to target an already running server instead of starting one
+ *
+ *   mvn -Pbench test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ *   java -Dload.rate=2000 -Dload.readRatio=0.9 -cp "$(cat target/cp.txt):target/classes:target/test-classes" \
+ *       Benchmarks.LoadGenerator
+ */
+public class LoadGenerator {
+
+    private static final String DEFAULT_MIX = "getMessageById=40,getMessagesByUser=25,getAllMessages=5,login=15,"
+            + "postMessage=8,patchMessage=4,deleteMessage=2,register=1";
+
+    private final String baseUrl;
+    private final int accounts;
+    private final HttpClient client;
+    private final SplittableRandom random = new SplittableRandom(42);
+    private final Map<String, RouteStats> stats = new LinkedHashMap<>();
+    private final LatencyHistogram overall = new LatencyHistogram();
+    private final AtomicInteger maxMessageId = new AtomicInteger();
+    private final AtomicInteger registrations = new AtomicInteger();
+    private final AtomicLong inFlight = new AtomicLong();
+    private final String[] routes;
+    private final double[] cumulativeWeights;
+
+    public static void main(String[] args) throws Exception {
+        int rate = Integer.getInteger("load.rate", 500);
+        int seconds = Integer.getInteger("load.seconds", 30);
+        int warmupSeconds = Integer.getInteger("load.warmupSeconds", 5);
+        int accounts = Integer.getInteger("load.accounts", 100);
+        int messages = Integer.getInteger("load.messages", 10_000);
+        long maxInFlight = Long.getLong("load.maxInFlight", 10_000);
+        boolean poisson = !"uniform".equals(System.getProperty("load.arrivals", "poisson"));
+        Map<String, Double> mix = parseMix(System.getProperty("load.mix", DEFAULT_MIX));
+        String readRatio = System.getProperty("load.readRatio");
+        if (readRatio != null) {
+            rescaleReads(mix, Double.parseDouble(readRatio));
+        }
+
+        String url = System.getProperty("load.url");
+        Javalin app = null;
+        if (url == null) {
+            int port = Integer.getInteger("load.port", 8092);
+            seed(accounts, messages);
+            app = new SocialMediaController().startAPI();
+            app.start(port);
+            url = "http://localhost:" + port;
+        }
+
+        LoadGenerator generator = new LoadGenerator(url, accounts, messages, mix);
+        System.out.printf("Offering %d req/s (%s arrivals) for %ds after %ds warm-up, mix %s%n",
+                rate, poisson ? "poisson" : "uniform", seconds, warmupSeconds, mix);
+        long elapsedNanos = generator.run(rate, warmupSeconds, seconds, maxInFlight, poisson);
+        generator.report(elapsedNanos);
+
+        if (app != null) {
+            app.stop();
+        }
+        System.exit(0);
+    }
+
+    LoadGenerator(String baseUrl, int accounts, int messages, Map<String, Double> mix) {
+        this.baseUrl = baseUrl;
+        this.accounts = accounts;
+        this.maxMessageId.set(messages);
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+        this.routes = mix.keySet().toArray(new String[0]);
+        this.cumulativeWeights = new double[routes.length];
+        double total = 0;
+        for (int i = 0; i < routes.length; i++) {
+            total += mix.get(routes[i]);
+            cumulativeWeights[i] = total;
+            stats.put(routes[i], new RouteStats());
+        }
+        for (int i = 0; i < routes.length; i++) {
+            cumulativeWeights[i] /= total;
+        }
+    }
+
+    // Resets the database and inserts the seed accounts (user2..userN besides testuser1, all with password
+    // "password") and messages directly
+    private static void seed(int accounts, int messages) {
+        ConnectionUtil.resetTestDatabase();
+        AccountDAO accountDAO = new AccountDAO();
+        for (int i = 2; i <= accounts; i++) {
+            accountDAO.insertAccount(new Account("user" + i, "password"));
+        }
+        MessageDAO messageDAO = new MessageDAO(false);
+        List<Message> batch = new ArrayList<>(1000);
+        for (int i = 2; i <= messages; i++) {
+            batch.add(new Message(1 + i % accounts, "seed message " + i, 1669947792L + i));
+            if (batch.size() == 1000 || i == messages) {
+                messageDAO.addMessages(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Sends requests on schedule until the measured period ends, then waits for stragglers.
+     * @return the length of the measured period in nanoseconds
+     */
+    long run(int rate, int warmupSeconds, int seconds, long maxInFlight, boolean poisson) throws InterruptedException {
+        double meanGapNanos = 1e9 / rate;
+        long start = System.nanoTime();
+        long measureFrom = start + TimeUnit.SECONDS.toNanos(warmupSeconds);
+        long end = measureFrom + TimeUnit.SECONDS.toNanos(seconds);
+        double next = start;
+        while (next < end) {
+            long intended = (long) next;
+            long now;
+            while ((now = System.nanoTime()) < intended) {
+                LockSupport.parkNanos(intended - now);
+            }
+            String route = pickRoute();
+            boolean recorded = intended >= measureFrom;
+            if (inFlight.get() >= maxInFlight) {
+                if (recorded) {
+                    stats.get(route).dropped.increment();
+                }
+            } else {
+                send(route, intended, recorded);
+            }
+            next += poisson ? -Math.log(1 - random.nextDouble()) * meanGapNanos : meanGapNanos;
+        }
+        long drainDeadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (inFlight.get() > 0 && System.nanoTime() < drainDeadline) {
+            Thread.sleep(10);
+        }
+        return end - measureFrom;
+    }
+
+    private String pickRoute() {
+        double roll = random.nextDouble();
+        for (int i = 0; i < routes.length; i++) {
+            if (roll < cumulativeWeights[i]) {
+                return routes[i];
+            }
+        }
+        return routes[routes.length - 1];
+    }
+
+    private void send(String route, long intendedNanos, boolean recorded) {
+        HttpRequest request = buildRequest(route);
+        RouteStats routeStats = stats.get(route);
+        inFlight.incrementAndGet();
+        client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                .whenComplete((response, failure) -> {
+                    inFlight.decrementAndGet();
+                    if (!recorded) {
+                        return;
+                    }
+                    long latency = System.nanoTime() - intendedNanos;
+                    routeStats.latency.record(latency);
+                    overall.record(latency);
+                    int status = failure != null ? -1 : response.statusCode();
+                    routeStats.statuses.computeIfAbsent(status, key -> new LongAdder()).increment();
+                    if (status == 200 && route.equals("postMessage")) {
+                        maxMessageId.incrementAndGet();
+                    }
+                });
+    }
+
+    private HttpRequest buildRequest(String route) {
+        int accountId = 1 + random.nextInt(accounts);
+        int messageId = 1 + random.nextInt(Math.max(1, maxMessageId.get()));
+        switch (route) {
+            case "getMessageById":
+                return get("/messages/" + messageId);
+            case "getMessagesByUser":
+                return get("/accounts/" + accountId + "/messages?limit=100");
+            case "getAllMessages":
+                return get("/messages?limit=100");
+            case "login":
+                return post("/login", "{\"username\":\"" + username(accountId) + "\",\"password\":\"password\"}");
+            case "postMessage":
+                return post("/messages", "{\"posted_by\":" + accountId
+                        + ",\"message_text\":\"load test message\",\"time_posted_epoch\":1669947792}");
+            case "patchMessage":
+                return HttpRequest.newBuilder(URI.create(baseUrl + "/messages/" + messageId))
+                        .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"message_text\":\"edited\"}"))
+                        .header("Content-Type", "application/json")
+                        .timeout(Duration.ofSeconds(30))
+                        .build();
+            case "deleteMessage":
+                return HttpRequest.newBuilder(URI.create(baseUrl + "/messages/" + messageId))
+                        .DELETE()
+                        .timeout(Duration.ofSeconds(30))
+                        .build();
+            case "register":
+                return post("/register", "{\"username\":\"load" + System.nanoTime() + "-"
+                        + registrations.incrementAndGet() + "\",\"password\":\"password\"}");
+            default:
+                throw new IllegalArgumentException("Unknown route in load.mix: " + route);
+        }
+    }
+
+    // The seeded account 1 is the reset script's testuser1; the others were created as user2..userN
+    private static String username(int accountId) {
+        return accountId == 1 ? "testuser1" : "user" + accountId;
+    }
+
+    private HttpRequest get(String path) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path)).timeout(Duration.ofSeconds(30)).build();
+    }
+
+    private HttpRequest post(String path, String body) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .header("Content-Type", "application/json")
+                .timeout(Duration.ofSeconds(30))
+                .build();
+    }
+
+    void report(long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        System.out.printf("%-18s %9s %9s %8s %9s %9s %9s %9s %9s  %s%n", "route", "requests", "req/s", "dropped",
+                "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms", "statuses");
+        long totalRequests = 0;
+        long totalDropped = 0;
+        for (Map.Entry<String, RouteStats> entry : stats.entrySet()) {
+            RouteStats routeStats = entry.getValue();
+            LatencyHistogram latency = routeStats.latency;
+            printRow(entry.getKey(), latency, routeStats.dropped.sum(), seconds, statuses(routeStats));
+            totalRequests += latency.getCount();
+            totalDropped += routeStats.dropped.sum();
+        }
+        printRow("all", overall, totalDropped, seconds, "");
+        System.out.printf("Completed %d requests in %.1fs%n", totalRequests, seconds);
+    }
+
+    private static void printRow(String name, LatencyHistogram latency, long dropped, double seconds,
+                                 String statuses) {
+        System.out.printf("%-18s %9d %9.1f %8d %9.2f %9.2f %9.2f %9.2f %9.2f  %s%n", name, latency.getCount(),
+                latency.getCount() / seconds, dropped, millis(latency.getValueAtQuantile(0.5)),
+                millis(latency.getValueAtQuantile(0.9)), millis(latency.getValueAtQuantile(0.99)),
+                millis(latency.getValueAtQuantile(0.999)), millis(latency.getMax()), statuses);
+    }
+
+    private static String statuses(RouteStats routeStats) {
+        StringBuilder out = new StringBuilder();
+        for (Map.Entry<Integer, LongAdder> status : new TreeMap<>(routeStats.statuses).entrySet()) {
+            if (out.length() > 0) {
+                out.append(' ');
+            }
+            out.append(status.getKey() == -1 ? "failed" : status.getKey().toString())
+                    .append('=').append(status.getValue().sum());
+        }
+        return out.toString();
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+
+    static Map<String, Double> parseMix(String mix) {
+        Map<String, Double> weights = new LinkedHashMap<>();
+        for (String entry : mix.split(",")) {
+            String[] parts = entry.trim().split("=");
+            double weight = Double.parseDouble(parts[1].trim());
+            if (weight > 0) {
+                weights.put(parts[0].trim(), weight);
+            }
+        }
+        return weights;
+    }
+
+    // GETs and logins are reads; everything else writes
+    private static void rescaleReads(Map<String, Double> mix, double readRatio) {
+        double reads = 0;
+        double writes = 0;
+        for (Map.Entry<String, Double> entry : mix.entrySet()) {
+            if (isRead(entry.getKey())) {
+                reads += entry.getValue();
+            } else {
+                writes += entry.getValue();
+            }
+        }
+        for (Map.Entry<String, Double> entry : mix.entrySet()) {
+            boolean read = isRead(entry.getKey());
+            double groupTotal = read ? reads : writes;
+            if (groupTotal > 0) {
+                entry.setValue(entry.getValue() / groupTotal * (read ? readRatio : 1 - readRatio));
+            }
+        }
+    }
+
+    private static boolean isRead(String route) {
+        return route.startsWith("get") || route.equals("login");
+    }
+
+    private static final class RouteStats {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LongAdder dropped = new LongAdder();
+        final ConcurrentHashMap<Integer, LongAdder> statuses = new ConcurrentHashMap<>();
+    }
+}
@@ -0,0 +1,75 @@
+package Benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import DAO.MessageDAO;
+import Model.Message;
+import Util.ConnectionUtil;
+
+/**
+ * MessageDAO against the H2 file database, at several table sizes. The DAO is called directly, so
+ * getMessageById measures the query and never the service's cache.
+ *
+ * Each table size runs in its own fork on a freshly reset database. The reset wipes ./h2/db, like the tests do.
+ *   mvn -Pbench test-compile exec:exec -Djmh.args="MessageDAOBenchmark"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageDAOBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int tableSize;
+
+    private MessageDAO messageDAO;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+        messageDAO = new MessageDAO(false);
+        // The reset leaves one message; the rest are inserted in batches of 1000
+        List<Message> batch = new ArrayList<>(1000);
+        for (int i = 1; i < tableSize; i++) {
+            batch.add(new Message(1, "benchmark message " + i, 1669947792L + i));
+            if (batch.size() == 1000 || i == tableSize - 1) {
+                messageDAO.addMessages(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    @Benchmark
+    public Message getMessageById() {
+        return messageDAO.getMessageById(ThreadLocalRandom.current().nextInt(1, tableSize + 1));
+    }
+
+    @Benchmark
+    public List<Message> getAllMessages() {
+        return messageDAO.getAllMessages();
+    }
+
+    // Grows the table by one row per call, so long runs drift slightly above tableSize
+    @Benchmark
+    public Message addMessage() {
+        return messageDAO.addMessage(new Message(1, "benchmark insert", 1669947792L));
+    }
+}
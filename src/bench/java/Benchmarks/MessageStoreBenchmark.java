@@ -0,0 +1,100 @@
+package Benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import DAO.AccountDAO;
+import DAO.ColumnarMessageStore;
+import DAO.MessageDAO;
+import DAO.MessageStore;
+import Model.Account;
+import Model.Message;
+import Util.ConnectionUtil;
+
+/**
+ * The MessageStore implementations side by side on a large table: MessageDAO querying H2, and ColumnarMessageStore
+ * answering from memory. The table is spread over ACCOUNTS accounts, so getMessagesByUser returns about
+ * tableSize / ACCOUNTS messages.
+ *
+ * Seeding a million rows into H2 takes a while, and the reset wipes ./h2/db, like the tests do. The forked JVM
+ * needs room for the JDBC listing of the whole table:
+ *   mvn -Pbench test-compile exec:exec -Djmh.args="MessageStoreBenchmark -jvmArgs -Xmx4g"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class MessageStoreBenchmark {
+
+    private static final int ACCOUNTS = 1000;
+
+    @Param({"1000000"})
+    public int tableSize;
+
+    @Param({"jdbc", "columnar"})
+    public String store;
+
+    private MessageStore messageStore;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+        AccountDAO accountDAO = new AccountDAO();
+        for (int i = 2; i <= ACCOUNTS; i++) {
+            accountDAO.insertAccount(new Account("user" + i, "password"));
+        }
+        MessageDAO messageDAO = new MessageDAO(false);
+        // The reset leaves one message; the rest are inserted in batches of 10000
+        List<Message> batch = new ArrayList<>(10_000);
+        for (int i = 1; i < tableSize; i++) {
+            batch.add(new Message(1 + i % ACCOUNTS, "benchmark message number " + i, 1669947792L + i));
+            if (batch.size() == 10_000 || i == tableSize - 1) {
+                messageDAO.addMessages(batch);
+                batch.clear();
+            }
+        }
+
+        if (store.equals("columnar")) {
+            long loadStart = System.nanoTime();
+            ColumnarMessageStore columnar = new ColumnarMessageStore(messageDAO);
+            System.out.printf("%nLoaded %d rows in %d ms: %d MB of columns, %d MB of text in %d MB of arena%n",
+                    columnar.getRowCount(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - loadStart),
+                    columnar.getColumnBytes() >> 20, columnar.getTextBytes() >> 20, columnar.getArenaBytes() >> 20);
+            messageStore = columnar;
+        } else {
+            messageStore = messageDAO;
+        }
+    }
+
+    @Benchmark
+    public List<Message> getAllMessages() {
+        return messageStore.getAllMessages();
+    }
+
+    @Benchmark
+    public List<Message> getMessagesByUser() {
+        return messageStore.getMessagesByUser(ThreadLocalRandom.current().nextInt(1, ACCOUNTS + 1));
+    }
+
+    @Benchmark
+    public Message getMessageById() {
+        return messageStore.getMessageById(ThreadLocalRandom.current().nextInt(1, tableSize + 1));
+    }
+}
@@ -0,0 +1,77 @@
+package Benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import Model.Message;
+import Util.PayloadFormat;
+
+/**
+ * Encode and decode cost of a message list, the shape of GET /messages and GET /accounts/{account_id}/messages, in
+ * each PayloadFormat. The encoded size of the list in every format is printed once per trial, so a run reports
+ * bandwidth alongside CPU:
+ *   mvn -Pbench test-compile exec:exec -Djmh.args="PayloadFormatBenchmark -prof gc"
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PayloadFormatBenchmark {
+
+    @Param({"JSON", "CBOR", "SMILE"})
+    public PayloadFormat format;
+
+    @Param({"20", "1000"})
+    public int listSize;
+
+    private List<Message> messages;
+    private byte[] encoded;
+    private ByteArrayOutputStream out;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        messages = new ArrayList<>();
+        for (int i = 0; i < listSize; i++) {
+            messages.add(new Message(i + 1, i % 50 + 1, "message number " + i + " with some ordinary text in it",
+                    1669947792L + i));
+        }
+        out = new ByteArrayOutputStream(listSize * 128);
+        format.getMessageListWriter().writeValue(out, messages);
+        encoded = out.toByteArray();
+
+        int jsonSize = PayloadFormat.JSON.getMessageListWriter().writeValueAsBytes(messages).length;
+        System.out.printf("%n%s, %d messages: %d bytes (%.0f%% of JSON)%n", format, listSize, encoded.length,
+                100.0 * encoded.length / jsonSize);
+    }
+
+    @Benchmark
+    public int encode() throws IOException {
+        out.reset();
+        format.getMessageListWriter().writeValue(out, messages);
+        return out.size();
+    }
+
+    @Benchmark
+    public List<Message> decode() throws IOException {
+        return format.readMessageList(new ByteArrayInputStream(encoded));
+    }
+}
@@ -0,0 +1,98 @@
+package Benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import DAO.MessageDAO;
+import Model.Message;
+import Model.MessagePage;
+import Service.MessageService;
+import Service.SearchIndex;
+import Util.ConnectionUtil;
+
+/**
+ * A first page of search results through MessageService, with and without the SearchIndex. Without it every search
+ * reads the whole table. Message i holds the words "common", "topicN" for N = i % TOPICS and "tagM" for
+ * M = (i * 7) % TAGS, so a topic matches tableSize / TOPICS messages and a topic and tag together about
+ * tableSize / (TOPICS * TAGS).
+ *
+ * The reset wipes ./h2/db, like the tests do.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class SearchBenchmark {
+
+    private static final int TOPICS = 1000;
+    private static final int TAGS = 97;
+    private static final int PAGE_SIZE = 20;
+
+    @Param({"200000"})
+    public int tableSize;
+
+    @Param({"false", "true"})
+    public boolean searchIndex;
+
+    private MessageService messageService;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+        messageService = new MessageService(new MessageDAO(false),
+                new MessageService.Options().searchIndex(searchIndex));
+        // The reset leaves one message; the rest are inserted in batches of 10000
+        List<Message> batch = new ArrayList<>(10_000);
+        for (int i = 1; i < tableSize; i++) {
+            batch.add(new Message(1, "common message topic" + (i % TOPICS) + " tag" + (i * 7 % TAGS),
+                    1669947792L + i));
+            if (batch.size() == 10_000 || i == tableSize - 1) {
+                messageService.addMessages(batch);
+                batch.clear();
+            }
+        }
+
+        if (searchIndex) {
+            SearchIndex index = messageService.getSearchIndex();
+            System.out.printf("%nIndexed %d postings of %d terms: %d KB, %.2f bytes per posting%n",
+                    index.getPostingCount(), index.getTermCount(), index.getMemoryBytes() >> 10,
+                    (double) index.getMemoryBytes() / index.getPostingCount());
+        }
+    }
+
+    // Newest messages containing a word every message has: the first page is the newest PAGE_SIZE rows
+    @Benchmark
+    public MessagePage commonTerm() {
+        return messageService.searchMessages("common message", null, PAGE_SIZE);
+    }
+
+    @Benchmark
+    public MessagePage topic() {
+        return messageService.searchMessages("topic" + ThreadLocalRandom.current().nextInt(TOPICS), null, PAGE_SIZE);
+    }
+
+    // Intersects the topic's list with the rarer tag's
+    @Benchmark
+    public MessagePage topicAndTag() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return messageService.searchMessages("common topic" + random.nextInt(TOPICS) + " tag" + random.nextInt(TAGS),
+                null, PAGE_SIZE);
+    }
+}
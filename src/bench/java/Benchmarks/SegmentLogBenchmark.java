@@ -0,0 +1,104 @@
+package Benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import DAO.MessageDAO;
+import DAO.MessageStore;
+import DAO.SegmentLogMessageStore;
+import Model.Message;
+import Util.ConnectionUtil;
+
+/**
+ * Inserts and point reads against MessageDAO on H2 and against SegmentLogMessageStore, with and without forcing
+ * each write to disk. Both start with 10,001 messages; inserts grow the store for the length of the run.
+ *
+ * The segment files go to target/bench-segments and the reset wipes ./h2/db, like the tests do.
+ *   mvn -Pbench test-compile exec:exec -Djmh.args="SegmentLogBenchmark"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SegmentLogBenchmark {
+
+    private static final Path SEGMENT_DIR = Paths.get("target", "bench-segments");
+
+    @Param({"jdbc", "segment", "segment-fsync"})
+    public String store;
+
+    private MessageStore messageStore;
+    private int maxMessageId;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        ConnectionUtil.resetTestDatabase();
+        MessageDAO messageDAO = new MessageDAO(false);
+        if (store.equals("jdbc")) {
+            messageStore = messageDAO;
+        } else {
+            deleteSegments();
+            SegmentLogMessageStore segmentLog = new SegmentLogMessageStore(SEGMENT_DIR, 64 << 20,
+                    store.equals("segment-fsync"), 0.5, 10_000);
+            segmentLog.importFrom(messageDAO);
+            messageStore = segmentLog;
+        }
+        List<Message> batch = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            batch.add(new Message(1, "benchmark message number " + i, 1669947792L + i));
+        }
+        messageStore.addMessages(batch);
+        maxMessageId = 10_001;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if (messageStore instanceof SegmentLogMessageStore) {
+            ((SegmentLogMessageStore) messageStore).close();
+        }
+    }
+
+    @Benchmark
+    public Message addMessage() {
+        Message added = messageStore.addMessage(new Message(1, "benchmark insert", 1669947792L));
+        maxMessageId = added.getMessage_id();
+        return added;
+    }
+
+    @Benchmark
+    public Message getMessageById() {
+        return messageStore.getMessageById(ThreadLocalRandom.current().nextInt(1, maxMessageId + 1));
+    }
+
+    private static void deleteSegments() throws IOException {
+        if (Files.exists(SEGMENT_DIR)) {
+            try (Stream<Path> files = Files.walk(SEGMENT_DIR)) {
+                files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+            }
+        }
+    }
+}
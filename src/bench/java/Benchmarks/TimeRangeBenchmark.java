@@ -0,0 +1,77 @@
+package Benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import DAO.MessageDAO;
+import Model.Message;
+import Model.MessagePage;
+import Service.MessageService;
+import Util.ConnectionUtil;
+
+/**
+ * A page of time-range reads through MessageService, for a window among the most recent messages, with and
+ * without the RecentMessagesIndex. Without it every page is the (time_posted_epoch, message_id) range query on
+ * the time index; with it the page is read from the skip list. Messages are posted one second apart, so a window
+ * of WINDOW_SECONDS holds that many messages and a page reads the first PAGE_SIZE of them.
+ *
+ * The reset wipes ./h2/db, like the tests do.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class TimeRangeBenchmark {
+
+    private static final long FIRST_EPOCH = 1669947792L;
+    private static final int WINDOW_SECONDS = 600;
+    private static final int PAGE_SIZE = 100;
+
+    @Param({"200000"})
+    public int tableSize;
+
+    @Param({"0", "10000"})
+    public int recentIndexSize;
+
+    private MessageService messageService;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+        messageService = new MessageService(new MessageDAO(false),
+                new MessageService.Options().recentIndexSize(recentIndexSize));
+        // The reset leaves one message; the rest are inserted in batches of 10000
+        List<Message> batch = new ArrayList<>(10_000);
+        for (int i = 1; i < tableSize; i++) {
+            batch.add(new Message(1, "benchmark message number " + i, FIRST_EPOCH + i));
+            if (batch.size() == 10_000 || i == tableSize - 1) {
+                messageService.addMessages(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    // A window starting among the newest messages, all of which the index holds when it is on
+    @Benchmark
+    public MessagePage recentWindow() {
+        long since = FIRST_EPOCH + tableSize - ThreadLocalRandom.current().nextInt(WINDOW_SECONDS, 5000);
+        return messageService.getMessagesInTimeRange(since, since + WINDOW_SECONDS, null, PAGE_SIZE);
+    }
+}
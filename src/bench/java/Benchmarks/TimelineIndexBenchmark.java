@@ -0,0 +1,95 @@
+package Benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import DAO.AccountDAO;
+import DAO.MessageDAO;
+import Model.Account;
+import Model.Message;
+import Service.MessageService;
+import Service.TimelineIndex;
+import Util.ConnectionUtil;
+
+/**
+ * Per-account reads through MessageService with and without the TimelineIndex. Without it every read is the
+ * posted_by query; with it the IDs come from memory and the bodies from the message cache, with one query for the
+ * ones it does not hold. The table is spread over ACCOUNTS accounts, so a timeline holds about
+ * tableSize / ACCOUNTS messages. It is seeded through the service, so the cache ends up holding the most recently
+ * written messages: at its default size of 10000 most timelines are cold. To measure warm timelines, make the
+ * cache hold the whole table:
+ *   mvn -Pbench test-compile exec:exec -Djmh.args="TimelineIndexBenchmark -jvmArgsAppend -Dmessages.cache.maxSize=400000"
+ *
+ * lookup times the index alone. The reset wipes ./h2/db, like the tests do.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class TimelineIndexBenchmark {
+
+    private static final int ACCOUNTS = 1000;
+
+    @Param({"200000"})
+    public int tableSize;
+
+    @Param({"false", "true"})
+    public boolean timelineIndex;
+
+    private MessageService messageService;
+    private TimelineIndex index;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+        AccountDAO accountDAO = new AccountDAO();
+        for (int i = 2; i <= ACCOUNTS; i++) {
+            accountDAO.insertAccount(new Account("user" + i, "password"));
+        }
+        messageService = new MessageService(new MessageDAO(false),
+                new MessageService.Options().timelineIndex(timelineIndex));
+        // The reset leaves one message; the rest are inserted in batches of 10000
+        List<Message> batch = new ArrayList<>(10_000);
+        for (int i = 1; i < tableSize; i++) {
+            batch.add(new Message(1 + i % ACCOUNTS, "benchmark message number " + i, 1669947792L + i));
+            if (batch.size() == 10_000 || i == tableSize - 1) {
+                messageService.addMessages(batch);
+                batch.clear();
+            }
+        }
+
+        index = timelineIndex ? messageService.getTimelineIndex() : new TimelineIndex();
+        if (timelineIndex) {
+            System.out.printf("%nIndexed %d messages of %d accounts: %d KB, %d bytes per account%n",
+                    index.getMessageCount(), index.getAccountCount(), index.getMemoryBytes() >> 10,
+                    index.getMemoryBytes() / index.getAccountCount());
+        }
+    }
+
+    @Benchmark
+    public List<Message> getMessagesByUser() {
+        return messageService.getMessagesByUser(ThreadLocalRandom.current().nextInt(1, ACCOUNTS + 1));
+    }
+
+    @Benchmark
+    public int[] lookup() {
+        return index.getMessageIdsAfter(ThreadLocalRandom.current().nextInt(1, ACCOUNTS + 1), 0, Integer.MAX_VALUE);
+    }
+}
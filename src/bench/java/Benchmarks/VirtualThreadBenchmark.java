@@ -0,0 +1,117 @@
+package Benchmarks;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+/**
+ * Drives the API with a large number of concurrent clients, once with handlers on Jetty's platform thread pool and
+ * once on virtual threads, and prints throughput and latency percentiles for each. Each client is closed-loop: it
+ * sends its next request as soon as the previous response arrives.
+ *
+ * Virtual threads need JDK 21+; on older JDKs the second run falls back to platform threads and says so.
+ *   mvn -Pbench test-compile exec:exec -Djmh.args=... does not apply here; run the class with the test classpath:
+ *   mvn -Pbench test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ *   java -cp "$(cat target/cp.txt):target/classes:target/test-classes" Benchmarks.VirtualThreadBenchmark 2000 10
+ *
+ * Arguments (all optional): clients (1000), seconds (10), path (/accounts/1/messages), port (8090).
+ */
+public class VirtualThreadBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        String path = args.length > 2 ? args[2] : "/accounts/1/messages";
+        int port = args.length > 3 ? Integer.parseInt(args[3]) : 8090;
+
+        ConnectionUtil.resetTestDatabase();
+        for (boolean virtualThreads : new boolean[] {false, true}) {
+            System.out.println(run(virtualThreads, clients, seconds, path, port));
+        }
+        System.exit(0);
+    }
+
+    private static String run(boolean virtualThreads, int clients, int seconds, String path, int port)
+            throws Exception {
+        String mode = virtualThreads ? "virtual" : "platform";
+        SocialMediaController controller = new SocialMediaController(virtualThreads);
+        Javalin app = controller.startAPI();
+        app.start(port);
+        try {
+            HttpClient client = HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_1_1)
+                    .connectTimeout(Duration.ofSeconds(10))
+                    .build();
+            HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + path))
+                    .timeout(Duration.ofSeconds(30))
+                    .GET()
+                    .build();
+
+            // Short warm-up so both modes start with a hot JIT and a full connection pool
+            drive(client, request, clients, TimeUnit.SECONDS.toNanos(2), new ConcurrentLinkedQueue<>(), new AtomicLong());
+
+            ConcurrentLinkedQueue<Long> latencies = new ConcurrentLinkedQueue<>();
+            AtomicLong errors = new AtomicLong();
+            long start = System.nanoTime();
+            drive(client, request, clients, TimeUnit.SECONDS.toNanos(seconds), latencies, errors);
+            double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+
+            long[] sorted = latencies.stream().mapToLong(Long::longValue).toArray();
+            Arrays.sort(sorted);
+            return String.format("%-8s clients=%d requests=%d errors=%d throughput=%.0f req/s "
+                            + "p50=%.2fms p90=%.2fms p99=%.2fms max=%.2fms threads=%d",
+                    mode, clients, sorted.length, errors.get(), sorted.length / elapsedSeconds,
+                    percentile(sorted, 0.50), percentile(sorted, 0.90), percentile(sorted, 0.99),
+                    percentile(sorted, 1.0), Thread.activeCount());
+        } finally {
+            app.stop();
+        }
+    }
+
+    private static void drive(HttpClient client, HttpRequest request, int clients, long durationNanos,
+                              ConcurrentLinkedQueue<Long> latencies, AtomicLong errors) {
+        long deadline = System.nanoTime() + durationNanos;
+        CompletableFuture<?>[] loops = new CompletableFuture<?>[clients];
+        for (int i = 0; i < clients; i++) {
+            loops[i] = loop(client, request, deadline, latencies, errors);
+        }
+        CompletableFuture.allOf(loops).join();
+    }
+
+    private static CompletableFuture<Void> loop(HttpClient client, HttpRequest request, long deadline,
+                                                ConcurrentLinkedQueue<Long> latencies, AtomicLong errors) {
+        if (System.nanoTime() >= deadline) {
+            return CompletableFuture.completedFuture(null);
+        }
+        long sent = System.nanoTime();
+        return client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                .handle((response, failure) -> {
+                    if (failure != null || response.statusCode() != 200) {
+                        errors.incrementAndGet();
+                    } else {
+                        latencies.add(System.nanoTime() - sent);
+                    }
+                    return null;
+                })
+                .thenCompose(ignored -> loop(client, request, deadline, latencies, errors));
+    }
+
+    private static double percentile(long[] sorted, double quantile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(quantile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))] / 1e6;
+    }
+}
@@ -0,0 +1,76 @@
+package Controller;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import DAO.MessageRowHandler;
+import Util.PayloadFormat;
+
+/**
+ * Writes message rows as a JSON array directly to an output stream as they come off the ResultSet. Nothing but
+ * the generator's own buffer is held in memory, and the output is flushed every FLUSH_EVERY_ROWS rows so the
+ * client starts receiving data before the query has finished. The same array can be written in CBOR or Smile by
+ * passing the PayloadFormat.
+ *
+ * A stream that fails part way is ended with abort() instead of close(), which leaves the array unterminated.
+ */
+public class MessageJsonStreamer implements MessageRowHandler, AutoCloseable {
+
+    // Rows written between flushes of the generator to the response; override with -Dhttp.stream.flushRows
+    private static final int FLUSH_EVERY_ROWS = Integer.getInteger("http.stream.flushRows", 256);
+
+    private final OutputStream out;
+    private final JsonGenerator generator;
+    private int pendingRows;
+    private boolean started;
+
+    public MessageJsonStreamer(OutputStream out) throws IOException {
+        this(out, PayloadFormat.JSON);
+    }
+
+    public MessageJsonStreamer(OutputStream out, PayloadFormat format) throws IOException {
+        this.out = out;
+        this.generator = format.createGenerator(out);
+        generator.writeStartArray();
+    }
+
+    @Override
+    public void onRow(int messageId, int postedBy, String messageText, long timePostedEpoch) throws IOException {
+        generator.writeStartObject();
+        generator.writeNumberField("message_id", messageId);
+        generator.writeNumberField("posted_by", postedBy);
+        generator.writeStringField("message_text", messageText);
+        generator.writeNumberField("time_posted_epoch", timePostedEpoch);
+        generator.writeEndObject();
+        if (++pendingRows >= FLUSH_EVERY_ROWS) {
+            started = true;
+            generator.flush();
+            pendingRows = 0;
+        }
+    }
+
+    // Whether part of the array has been flushed to the stream; until then an error response can still replace it
+    public boolean isStarted() {
+        return started;
+    }
+
+    // Closes the array and flushes what is left; the underlying stream is left open for the server to finish
+    @Override
+    public void close() throws IOException {
+        generator.writeEndArray();
+        generator.close();
+    }
+
+    // Flushes the rows written so far without closing the array, and closes the underlying stream, so the client
+    // gets a truncated body it cannot mistake for the whole listing
+    public void abort() throws IOException {
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_JSON_CONTENT);
+        try {
+            generator.close();
+        } finally {
+            out.close();
+        }
+    }
+}
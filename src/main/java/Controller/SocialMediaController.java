@@ -1,178 +1,730 @@
 package Controller;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 
 import Model.Account;
+import Model.BatchItemResult;
 import Model.Message;
+import Model.MessagePage;
 import Service.AccountService;
 import Service.MessageService;
+import Service.RecentMessagesIndex;
+import Service.SearchIndex;
+import Service.TimelineIndex;
+import DAO.GroupCommitWriter;
+import DAO.MessageStores;
+import Util.AdmissionLimiter;
+import Util.CacheStats;
+import Util.ConnectionUtil;
+import Util.DbExecutor;
+import Util.ETags;
+import Util.JsonCodecs;
+import Util.Metrics;
+import Util.PayloadFormat;
+import Util.PoolStats;
+import Util.SchemaMigrator;
+import Util.SingleFlight;
 import io.javalin.Javalin;
 import io.javalin.http.Context;
+import io.javalin.http.Handler;
+import io.javalin.http.HandlerType;
+import io.javalin.http.Header;
+import io.javalin.json.JavalinJackson;
+import io.javalin.util.LoomThreadPool;
+import io.javalin.util.LoomUtil;
+import org.eclipse.jetty.server.LowResourceMonitor;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.handler.StatisticsHandler;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ThreadPool;
 
 public class SocialMediaController {
+    // Response header carrying the opaque cursor of the next page on paginated list requests
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    // Largest number of messages accepted by a single POST /messages/batch
+    public static final int MAX_BATCH_SIZE = 1000;
+
+    // Admission control in front of the routes; see AdmissionLimiter. Reads and writes are limited separately so a
+    // burst of one cannot starve the other. Turn it off with -Dadmission.enabled=false.
+    private static final boolean ADMISSION_ENABLED =
+            Boolean.parseBoolean(System.getProperty("admission.enabled", "true"));
+    private static final int ADMISSION_READ_LIMIT = Integer.getInteger("admission.reads.limit", 64);
+    private static final int ADMISSION_WRITE_LIMIT = Integer.getInteger("admission.writes.limit", 32);
+    private static final int ADMISSION_MAX_QUEUE = Integer.getInteger("admission.maxQueue", 1000);
+    private static final long ADMISSION_TARGET_MILLIS = Long.getLong("admission.targetMillis", 5);
+    private static final long ADMISSION_INTERVAL_MILLIS = Long.getLong("admission.intervalMillis", 100);
+    // Request attribute holding the limiter a request was admitted by, so its permit is released exactly once
+    private static final String ADMISSION_ATTRIBUTE = "admission.limiter";
+    // Name of the Jetty pool requests are handled on, the one Javalin gives its own
+    private static final String REQUEST_THREAD_POOL_NAME = "JettyServerThreadPool";
+
     private final AccountService accountService;
     private final MessageService messageService;
+    // Run handlers on virtual threads instead of Jetty's platform thread pool; needs JDK 21+ (see the loom profile)
+    private final boolean virtualThreadsRequested;
+    private final AdmissionLimiter readAdmission = new AdmissionLimiter("reads", ADMISSION_READ_LIMIT,
+            ADMISSION_MAX_QUEUE, ADMISSION_TARGET_MILLIS, ADMISSION_INTERVAL_MILLIS);
+    private final AdmissionLimiter writeAdmission = new AdmissionLimiter("writes", ADMISSION_WRITE_LIMIT,
+            ADMISSION_MAX_QUEUE, ADMISSION_TARGET_MILLIS, ADMISSION_INTERVAL_MILLIS);
 
     public SocialMediaController() {
+        this(Boolean.getBoolean("http.virtualThreads"));
+    }
+
+    public SocialMediaController(boolean virtualThreads) {
         this.accountService = new AccountService();
-        this.messageService = new MessageService();
+        this.messageService = new MessageService(MessageStores.fromSystemProperties(),
+                MessageService.Options.fromSystemProperties());
+        this.virtualThreadsRequested = virtualThreads;
     }
 
     public Javalin startAPI() {
-        Javalin app = Javalin.create();
+        // Bring the schema up to date and check the hot queries are indexed before serving anything
+        SchemaMigrator.migrateAndVerify();
+        ThreadPool requestThreads = requestThreadPool();
+        // Anything still serialized by Javalin itself goes through the same shared mapper as the codecs
+        Javalin app = Javalin.create(config -> {
+            config.jetty.server(() -> createServer(requestThreads));
+            config.jsonMapper(new JavalinJackson(JsonCodecs.MAPPER));
+            // Called once the response is written, asynchronous ones included, so this times the whole request
+            config.requestLogger.http(this::recordRequest);
+        });
 
-        app.post("/register", this::addAccountHandler);
-        app.post("/login", this::getLoginHandler); 
-        app.post("/messages", this::addMessageHandler); 
-        app.get("/messages", this::getAllMessagesHandler);
-        app.get("/messages/{id}", this::getMessageByIdHandler); 
-        app.delete("/messages/{id}", this::deleteMessageHandler); 
-        app.patch("/messages/{message_id}", this::updateMessageHandler); 
-        app.get("/accounts/{account_id}/messages", this::getMessagesByUserHandler); 
+        app.post("/register", admit(writeAdmission, this::addAccountHandler));
+        app.post("/login", admit(readAdmission, this::getLoginHandler)); 
+        app.post("/messages", admit(writeAdmission, this::addMessageHandler)); 
+        app.post("/messages/batch", admit(writeAdmission, this::addMessagesBatchHandler));
+        app.get("/messages", admit(readAdmission, this::getAllMessagesHandler));
+        // Registered before /messages/{id}, which would otherwise take "search" for an id
+        app.get("/messages/search", admit(readAdmission, this::searchMessagesHandler));
+        app.get("/messages/{id}", admit(readAdmission, this::getMessageByIdHandler)); 
+        app.delete("/messages/{id}", admit(writeAdmission, this::deleteMessageHandler)); 
+        app.patch("/messages/{message_id}", admit(writeAdmission, this::updateMessageHandler)); 
+        app.get("/accounts/{account_id}/messages", admit(readAdmission, this::getMessagesByUserHandler)); 
+        // Metrics stay reachable when the server is shedding, that is when they are needed most
+        app.get("/metrics", this::getMetricsHandler);
+        // After-handlers run once the response is complete, asynchronous ones included
+        app.after(this::releaseAdmission);
 
         System.out.println("API started.");
         return app;
     }
 
+    // The Jetty thread pool of this app, one of the two Javalin would pick: virtual threads if asked for and the
+    // JDK has them, otherwise the usual bounded pool of platform threads. It is handed to this app's server rather
+    // than chosen through Javalin's process-wide switch, so apps in one JVM can differ.
+    private ThreadPool requestThreadPool() {
+        boolean virtualThreads = virtualThreadsRequested && LoomUtil.INSTANCE.getLoomAvailable();
+        if (virtualThreadsRequested && !virtualThreads) {
+            System.out.println("Virtual threads requested but not available on this JDK, using platform threads.");
+        }
+        // Either way database work runs on the bounded DbExecutor, sized to the connection pool, so the number of
+        // request threads never decides how many connections are asked for at once.
+        if (virtualThreads) {
+            return new LoomThreadPool(REQUEST_THREAD_POOL_NAME);
+        }
+        QueuedThreadPool pool = new QueuedThreadPool(250, 8, 60_000);
+        pool.setName(REQUEST_THREAD_POOL_NAME);
+        return pool;
+    }
+
+    // Set up like Javalin's default server, on the given thread pool
+    private static Server createServer(ThreadPool threadPool) {
+        Server server = new Server(threadPool);
+        server.addBean(new LowResourceMonitor(server));
+        server.insertHandler(new StatisticsHandler());
+        return server;
+    }
+
+    // Wraps a handler so it only runs once admitted by limiter; a shed request gets 503 and a Retry-After instead
+    private Handler admit(AdmissionLimiter limiter, Handler handler) {
+        if (!ADMISSION_ENABLED) {
+            return handler;
+        }
+        return ctx -> {
+            if (!limiter.acquire()) {
+                ctx.status(503);
+                ctx.header(Header.RETRY_AFTER, "1");
+                return;
+            }
+            ctx.attribute(ADMISSION_ATTRIBUTE, limiter);
+            handler.handle(ctx);
+        };
+    }
+
+    private void releaseAdmission(Context ctx) {
+        AdmissionLimiter limiter = ctx.attribute(ADMISSION_ATTRIBUTE);
+        if (limiter != null) {
+            ctx.attribute(ADMISSION_ATTRIBUTE, null);
+            limiter.release();
+        }
+    }
+
+    // Requests that matched no route are grouped under one label so unknown paths cannot grow the metrics. Javalin
+    // has no endpoint path for them, or a placeholder message once an after-handler has run.
+    private void recordRequest(Context ctx, Float executionTimeMs) {
+        String route = ctx.handlerType() == HandlerType.BEFORE ? null : ctx.endpointHandlerPath();
+        if (route == null || !route.startsWith("/")) {
+            route = "unmatched";
+        }
+        Metrics.recordRoute(ctx.method().name(), route, ctx.status().getCode(), (long) (executionTimeMs * 1_000_000));
+    }
+
     // 1: Our API should be able to process new User registrations.
-    private void addAccountHandler(Context ctx) throws JsonProcessingException {
-        ObjectMapper objectMapper = new ObjectMapper();
-        Account account = objectMapper.readValue(ctx.body(), Account.class);
-        System.out.println("Received account registration request.");
+    private void addAccountHandler(Context ctx) throws IOException {
+        Account account = requestFormat(ctx).readAccount(ctx.bodyInputStream());
 
         if (account.getPassword().length() >= 4 && account.getUsername().length() > 0
          && accountService.accountExists(account.getUsername()) == false) {
             
-            Account addedAccount = accountService.addAccount(account);
-            ctx.json(objectMapper.writeValueAsString(addedAccount));
-            ctx.status(200); // Created status
-            System.out.println("Account created successfully.");
+            respondAsync(ctx, accountService.addAccountAsync(account), addedAccount -> {
+                if (addedAccount == null) {
+                    // The database rejected it, e.g. a concurrent registration took the username first
+                    ctx.status(400);
+                    return;
+                }
+                writeBody(ctx, PayloadFormat::getAccountWriter, addedAccount);
+                ctx.status(200); // Created status
+            });
         } else {
             ctx.status(400);
             // ctx.json(account);
-            System.out.println("Invalid account data.");
         }
     }
 
     // 2: Our API should be able to process User logins.
-    private void getLoginHandler(Context ctx) throws JsonProcessingException {
+    private void getLoginHandler(Context ctx) throws IOException {
 
-        ObjectMapper objectMapper = new ObjectMapper();
-        Account loginRequest = objectMapper.readValue(ctx.body(), Account.class);
-        boolean isValidUser = accountService.validateUser(loginRequest.getUsername(), loginRequest.getPassword());
-        if (isValidUser) {
-            // Account account = new Account(loginRequest.getAccount_id(), loginRequest.getUsername(), loginRequest.getPassword());
-            ctx.status(200);
-            ctx.json(accountService.getAccountByUsername(loginRequest.getUsername()));
-            System.out.println("Login successful for user: " + loginRequest.getUsername());
-        } else {
-            ctx.status(401);
-            System.out.println("Invalid login attempt.");
-        }
+        Account loginRequest = requestFormat(ctx).readAccount(ctx.bodyInputStream());
+        // The account is only looked up once the credentials have been validated
+        CompletableFuture<Account> login = accountService
+                .validateUserAsync(loginRequest.getUsername(), loginRequest.getPassword())
+                .thenCompose(isValidUser -> isValidUser
+                        ? accountService.getAccountByUsernameAsync(loginRequest.getUsername())
+                        : CompletableFuture.completedFuture(null));
+        respondAsync(ctx, login, account -> {
+            if (account != null) {
+                // Account account = new Account(loginRequest.getAccount_id(), loginRequest.getUsername(), loginRequest.getPassword());
+                ctx.status(200);
+                writeBody(ctx, PayloadFormat::getAccountWriter, account);
+            } else {
+                ctx.status(401);
+            }
+        });
     }
 
     // 3: Our API should be able to process the creation of new messages.
-    private void addMessageHandler(Context ctx) throws JsonProcessingException {
+    private void addMessageHandler(Context ctx) throws IOException {
 
-        ObjectMapper objectMapper = new ObjectMapper();
-        Message message = objectMapper.readValue(ctx.body(), Message.class);
-        System.out.println("Received new message request.");
+        Message message = requestFormat(ctx).readMessage(ctx.bodyInputStream());
 
-        if(message.getMessage_text().length() > 0 && message.getMessage_text().length() <= 255 
-        && accountService.accountExists(message.getPosted_by())){
+        if(message.getMessage_text().length() == 0 || message.getMessage_text().length() > 255){
+            ctx.status(400);
+            return;
+        }
+        // The existence check is answered from memory, so the insert is only queued for a known account
+        CompletableFuture<Message> added = accountService.accountExistsAsync(message.getPosted_by())
+                .thenCompose(exists -> exists
+                        ? messageService.addMessageAsync(message)
+                        : CompletableFuture.completedFuture(null));
+        respondAsync(ctx, added, newMessage -> {
+            if (newMessage == null) {
+                ctx.status(400);
+                return;
+            }
             ctx.status(200); // Created status
-            Message newMessage = messageService.addMessage(message);
-            
-            ctx.json(newMessage);
-            System.out.println("Message created successfully.");
-        }else{
+            writeBody(ctx, PayloadFormat::getMessageWriter, newMessage);
+        });
+    }
+
+    // 3b: Our API should be able to create many messages in one request, reporting the outcome of each one.
+    private void addMessagesBatchHandler(Context ctx) throws IOException {
+        List<Message> messages;
+        try {
+            messages = requestFormat(ctx).readMessageList(ctx.bodyInputStream());
+        } catch (JsonProcessingException e) {
             ctx.status(400);
+            return;
         }
+        if (messages == null || messages.size() > MAX_BATCH_SIZE) {
+            ctx.status(400);
+            return;
+        }
+
+        // Every posted_by in the batch is checked at once against the in-memory account directory, with no query
+        Set<Integer> postedBy = new HashSet<>();
+        for (Message message : messages) {
+            if (message != null) {
+                postedBy.add(message.getPosted_by());
+            }
+        }
+        Set<Integer> existingAccounts = accountService.getExistingAccountIds(postedBy);
+
+        BatchItemResult[] results = new BatchItemResult[messages.size()];
+        List<Integer> validIndexes = new ArrayList<>();
+        List<Message> validMessages = new ArrayList<>();
+        for (int i = 0; i < messages.size(); i++) {
+            Message message = messages.get(i);
+            if (message == null || message.getMessage_text() == null || message.getMessage_text().length() == 0
+                    || message.getMessage_text().length() > 255) {
+                results[i] = BatchItemResult.rejected(i, "message_text must be between 1 and 255 characters");
+            } else if (!existingAccounts.contains(message.getPosted_by())) {
+                results[i] = BatchItemResult.rejected(i, "posted_by does not refer to an existing account");
+            } else {
+                validIndexes.add(i);
+                validMessages.add(message);
+            }
+        }
+
+        // The valid messages are inserted together; if the transaction fails none of them is created
+        respondAsync(ctx, messageService.addMessagesAsync(validMessages), created -> {
+            for (int j = 0; j < validIndexes.size(); j++) {
+                int index = validIndexes.get(j);
+                results[index] = created != null
+                        ? BatchItemResult.created(index, created.get(j))
+                        : BatchItemResult.rejected(index, "message could not be stored");
+            }
+
+            ctx.status(200);
+            writeBody(ctx, PayloadFormat::getBatchResultsWriter, results);
+        });
     }
 
 // 4: Our API should be able to retrieve all messages.
-    private void getAllMessagesHandler(Context ctx) {
-        List<Message> messages = messageService.getAllMessages();
-        ctx.json(messages);
+    private void getAllMessagesHandler(Context ctx) throws IOException {
+        // Polling clients that already hold the current version get a 304 without a query being run
+        if (notModified(ctx, ETags.of(messageService.getVersionScope(), messageService.getMessagesVersion(),
+                responseFormat(ctx).getEtagVariant()))) {
+            return;
+        }
+        if (isTimeRange(ctx)) {
+            getMessagesInTimeRange(ctx);
+            return;
+        }
+        if (isPaged(ctx)) {
+            Integer limit = pageLimit(ctx);
+            if (limit == null) {
+                ctx.status(400);
+                return;
+            }
+            CompletableFuture<MessagePage> page;
+            try {
+                page = messageService.getMessagesPageAsync(ctx.queryParam("cursor"), limit);
+            } catch (IllegalArgumentException e) {
+                ctx.status(400);
+                return;
+            }
+            respondAsync(ctx, page, messagePage -> writePage(ctx, messagePage));
+            return;
+        }
+        // Unpaged listings can be arbitrarily large, so rows are streamed to the response as they are read
         ctx.status(200);
-        System.out.println("Fetched all messages.");
+        PayloadFormat format = responseFormat(ctx);
+        ctx.contentType(format.getMediaType());
+        MessageJsonStreamer streamer = new MessageJsonStreamer(ctx.outputStream(), format);
+        respondStreamed(ctx, streamer, messageService.streamAllMessagesAsync(streamer));
+    }
+
+    // Messages posted at or after since and before until, oldest first, always a page; either bound may be left out
+    private void getMessagesInTimeRange(Context ctx) {
+        Integer limit = pageLimit(ctx);
+        long since;
+        long until;
+        try {
+            since = ctx.queryParam("since") == null ? Long.MIN_VALUE : Long.parseLong(ctx.queryParam("since"));
+            until = ctx.queryParam("until") == null ? Long.MAX_VALUE : Long.parseLong(ctx.queryParam("until"));
+        } catch (NumberFormatException e) {
+            ctx.status(400);
+            return;
+        }
+        if (limit == null || since > until) {
+            ctx.status(400);
+            return;
+        }
+        CompletableFuture<MessagePage> page;
+        try {
+            page = messageService.getMessagesInTimeRangeAsync(since, until, ctx.queryParam("cursor"), limit);
+        } catch (IllegalArgumentException e) {
+            ctx.status(400);
+            return;
+        }
+        respondAsync(ctx, page, messagePage -> writePage(ctx, messagePage));
+    }
+
+    // Messages containing every term of q, most recently posted first, a page at a time
+    private void searchMessagesHandler(Context ctx) throws IOException {
+        if (notModified(ctx, ETags.of(messageService.getVersionScope(), messageService.getMessagesVersion(),
+                responseFormat(ctx).getEtagVariant()))) {
+            return;
+        }
+        Integer limit = pageLimit(ctx);
+        String query = ctx.queryParam("q");
+        if (limit == null || query == null) {
+            ctx.status(400);
+            return;
+        }
+        CompletableFuture<MessagePage> page;
+        try {
+            page = messageService.searchMessagesAsync(query, ctx.queryParam("cursor"), limit);
+        } catch (IllegalArgumentException e) {
+            // No terms in q, or a bad cursor
+            ctx.status(400);
+            return;
+        }
+        respondAsync(ctx, page, messagePage -> writePage(ctx, messagePage));
     }
 
 // 5: Our API should be able to retrieve a message by its ID.
-    private void getMessageByIdHandler(Context ctx) {
+    private void getMessageByIdHandler(Context ctx) throws IOException {
         int messageId = Integer.parseInt(ctx.pathParam("id"));
-        Message retrievedMessage = messageService.getMessageById(messageId); 
-        ctx.status(200);
-        if(retrievedMessage != null){
-            ctx.json(retrievedMessage);
+        // A single message changes no more often than the table as a whole, so it shares the table's version
+        if (notModified(ctx, ETags.of(messageService.getVersionScope(), messageService.getMessagesVersion(),
+                responseFormat(ctx).getEtagVariant()))) {
+            return;
         }
+        respondAsync(ctx, messageService.getMessageByIdAsync(messageId), retrievedMessage -> {
+            ctx.status(200);
+            if(retrievedMessage != null){
+                writeBody(ctx, PayloadFormat::getMessageWriter, retrievedMessage);
+            }
+        });
     }
 
 // 6: Our API should be able to delete a message identified by a message ID.
-    private void deleteMessageHandler(Context ctx) {
+    private void deleteMessageHandler(Context ctx) throws IOException {
         int messageId = Integer.parseInt(ctx.pathParam("id"));
-        Message deletedMessage = messageService.getMessageById(messageId);
-        Boolean isDeleted = messageService.deleteMessage(messageId);
-        ctx.status(200);
-        if(isDeleted){
-            ctx.json(deletedMessage);
-        }
+        // Deletes the row and returns what it held in a single statement
+        respondAsync(ctx, messageService.deleteMessageReturningAsync(messageId), deletedMessage -> {
+            ctx.status(200);
+            if(deletedMessage != null){
+                writeBody(ctx, PayloadFormat::getMessageWriter, deletedMessage);
+            }
+        });
     }
 
 // 7: Our API should be able to update a message text identified by a message ID.
-    private void updateMessageHandler(Context ctx) throws JsonProcessingException {
+    private void updateMessageHandler(Context ctx) throws IOException {
 
     //step1: retrieve what's passed in the ctx object, namely the id, and the newText
     int retrievedId = Integer.parseInt(ctx.pathParam("message_id"));
-    //step2: validate that the id corresponds to an existing message
-    boolean isValidId = false;
-    if(messageService.getMessageById(retrievedId) != null){
-        isValidId = true;
-    }
-     //step0: store old message_text in a variable to compare with new text later:
-    //step3: validate that the newText passed in is neither blank nor exceeding 255 characters after retrieving it from the passed ctx object
-    String retrievedNewText = ctx.bodyAsClass(Message.class).getMessage_text();
-    boolean isValidText = false;
-    if(retrievedNewText.length() > 0 && retrievedNewText.length() <= 255){
-        isValidText = true;
-    }
-    //step4: set the Message object's message_text to the new text
-    Message oldMessage = messageService.getMessageById(retrievedId);
-    if(retrievedNewText != null && isValidId && isValidText){
-        oldMessage.setMessage_text(retrievedNewText);
-    }
-    // after we updated the old message we are labeling it appropriately for clarity
-    Message updatedMessage = oldMessage; 
-    //step5: pass the object to the service layer for update
-    Message messageReturnedFromUpdate = null;
-    if(updatedMessage != null){
-        messageReturnedFromUpdate = messageService.updateMessage(updatedMessage);
-    }
-    //step6: ensure that the service layer calls the dao layer with the passed object
-        //done
-    //step7: check that the sql querry updates the existing object's message_text in the database
-        //done
-    //step8: if the update is successful, display status code 200 and a json representation of the updated Message object
-    if(isValidId && isValidText){
-        ctx.status(200);
-        ctx.json(messageReturnedFromUpdate);
-    //step9: display status code 400 if text not valid or id not valid
-    }else {
+    String retrievedNewText = requestFormat(ctx).readMessage(ctx.bodyInputStream()).getMessage_text();
+    //step2: validate that the newText is neither blank nor exceeding 255 characters; no database work if it is not
+    if(retrievedNewText == null || retrievedNewText.length() == 0 || retrievedNewText.length() > 255){
         ctx.status(400);
+        return;
     }
+    //step3: update the text and read back the full row in one statement; null means the id does not exist
+    respondAsync(ctx, messageService.updateMessageTextAsync(retrievedId, retrievedNewText), messageReturnedFromUpdate -> {
+        //step4: if the update is successful, display status code 200 and a json representation of the updated Message object
+        if(messageReturnedFromUpdate != null){
+            ctx.status(200);
+            writeBody(ctx, PayloadFormat::getMessageWriter, messageReturnedFromUpdate);
+        //step5: display status code 400 if id not valid
+        }else {
+            ctx.status(400);
+        }
+    });
 }
 
     // 8: Our API should be able to retrieve all messages written by a particular user.
-    private void getMessagesByUserHandler(Context ctx) {
+    private void getMessagesByUserHandler(Context ctx) throws IOException {
         int accountId = Integer.parseInt(ctx.pathParam("account_id"));
-        List<Message> messages = messageService.getMessagesByUser(accountId);
-        ctx.json(messages);
+        if (notModified(ctx, ETags.of(messageService.getVersionScope(),
+                messageService.getAccountMessagesVersion(accountId), responseFormat(ctx).getEtagVariant()))) {
+            return;
+        }
+        if (isPaged(ctx)) {
+            Integer limit = pageLimit(ctx);
+            if (limit == null) {
+                ctx.status(400);
+                return;
+            }
+            CompletableFuture<MessagePage> page;
+            try {
+                page = messageService.getMessagesByUserPageAsync(accountId, ctx.queryParam("cursor"), limit);
+            } catch (IllegalArgumentException e) {
+                ctx.status(400);
+                return;
+            }
+            respondAsync(ctx, page, messagePage -> writePage(ctx, messagePage));
+            return;
+        }
         ctx.status(200);
+        PayloadFormat format = responseFormat(ctx);
+        ctx.contentType(format.getMediaType());
+        MessageJsonStreamer streamer = new MessageJsonStreamer(ctx.outputStream(), format);
+        respondStreamed(ctx, streamer, messageService.streamMessagesByUserAsync(accountId, streamer));
+
+    }
+
+    // Sets the response's ETag and answers 304 if the client's If-None-Match already names it. The version must be
+    // read before the data, so a write landing in between can only make the tag older than the body, never newer.
+    // Each encoding has its own tag, and Vary tells caches the body depends on Accept.
+    private boolean notModified(Context ctx, String etag) {
+        ctx.header(Header.ETAG, etag);
+        ctx.header(Header.VARY, Header.ACCEPT);
+        if (ETags.matches(ctx.header(Header.IF_NONE_MATCH), etag)) {
+            ctx.status(304);
+            return true;
+        }
+        return false;
+    }
+
+    // 9: Our API should expose its latency histograms, counters and pool, cache and queue statistics to Prometheus.
+    private void getMetricsHandler(Context ctx) {
+        StringBuilder out = new StringBuilder(8192);
+        Metrics.writePrometheus(out);
+
+        PoolStats pool = ConnectionUtil.getPoolStats();
+        Metrics.writeSample(out, "db_pool_active_connections", "gauge", "Connections checked out", pool.getActive());
+        Metrics.writeSample(out, "db_pool_idle_connections", "gauge", "Open connections not in use", pool.getIdle());
+        Metrics.writeSample(out, "db_pool_waiting_threads", "gauge", "Threads waiting for a connection",
+                pool.getWaiters());
+        Metrics.writeSample(out, "db_pool_max_connections", "gauge", "Pool size limit", pool.getMaxSize());
+        Metrics.writeSample(out, "db_pool_acquires_total", "counter", "Connection checkouts", pool.getAcquireCount());
+        Metrics.writeSample(out, "db_pool_acquire_timeouts_total", "counter", "Checkouts that timed out",
+                pool.getTimeoutCount());
+        Metrics.writeSample(out, "db_pool_acquire_seconds_mean", "gauge", "Mean time to check out a connection",
+                pool.getMeanAcquireNanos() / 1e9);
+        Metrics.writeSample(out, "db_pool_acquire_seconds_max", "gauge", "Longest time to check out a connection",
+                pool.getMaxAcquireNanos() / 1e9);
+        Metrics.writeSample(out, "db_statement_cache_hits_total", "counter", "Prepared statements reused",
+                pool.getStatementCacheHits());
+        Metrics.writeSample(out, "db_statement_cache_misses_total", "counter", "Prepared statements created",
+                pool.getStatementCacheMisses());
+
+        CacheStats cache = messageService.getMessageCacheStats();
+        Metrics.writeSample(out, "message_cache_hits_total", "counter", "getMessageById cache hits",
+                cache.getHitCount());
+        Metrics.writeSample(out, "message_cache_misses_total", "counter", "getMessageById cache misses",
+                cache.getMissCount());
+        Metrics.writeSample(out, "message_cache_evictions_total", "counter", "getMessageById cache evictions",
+                cache.getEvictionCount());
+        Metrics.writeSample(out, "message_cache_size", "gauge", "Entries in the getMessageById cache",
+                cache.getSize());
+
+        // Lookups in the index are timed as dao_call_duration_seconds{method="TimelineIndex.getMessageIdsAfter"}
+        TimelineIndex timelineIndex = messageService.getTimelineIndex();
+        if (timelineIndex != null) {
+            int accounts = timelineIndex.getAccountCount();
+            long bytes = timelineIndex.getMemoryBytes();
+            Metrics.writeSample(out, "timeline_index_accounts", "gauge", "Accounts in the timeline index", accounts);
+            Metrics.writeSample(out, "timeline_index_messages", "gauge", "Message IDs in the timeline index",
+                    timelineIndex.getMessageCount());
+            Metrics.writeSample(out, "timeline_index_bytes", "gauge", "Estimated heap held by the timeline index",
+                    bytes);
+            Metrics.writeSample(out, "timeline_index_account_bytes_mean", "gauge",
+                    "Estimated heap per account in the timeline index", accounts == 0 ? 0 : (double) bytes / accounts);
+            Metrics.writeSample(out, "timeline_index_account_bytes_max", "gauge",
+                    "Estimated heap of the largest account in the timeline index",
+                    timelineIndex.getMaxAccountMemoryBytes());
+        }
+
+        // Index reads are timed as dao_call_duration_seconds{method="RecentMessagesIndex.getMessagesInTimeRange"}
+        RecentMessagesIndex recentIndex = messageService.getRecentMessagesIndex();
+        if (recentIndex != null) {
+            Metrics.writeSample(out, "time_range_index_size", "gauge", "Messages in the recent messages index",
+                    recentIndex.size());
+            Map<String, Long> rangeReads = new LinkedHashMap<>();
+            rangeReads.put("memory", recentIndex.getHitCount());
+            rangeReads.put("database", recentIndex.getMissCount());
+            Metrics.writeSamples(out, "time_range_index_reads_total", "counter",
+                    "Time-range reads by where they were served", "source", rangeReads);
+            Metrics.writeSample(out, "time_range_index_floor_epoch", "gauge",
+                    "Oldest time_posted_epoch the recent messages index is complete from",
+                    recentIndex.getFloorEpoch());
+        }
+
+        // Lookups in the index are timed as dao_call_duration_seconds{method="SearchIndex.getMessageIdsBefore"}
+        SearchIndex searchIndex = messageService.getSearchIndex();
+        if (searchIndex != null) {
+            Metrics.writeSample(out, "search_index_terms", "gauge", "Distinct terms in the search index",
+                    searchIndex.getTermCount());
+            Metrics.writeSample(out, "search_index_postings", "gauge", "Message IDs in the search posting lists",
+                    searchIndex.getPostingCount());
+            Metrics.writeSample(out, "search_index_bytes", "gauge", "Estimated heap held by the search index",
+                    searchIndex.getMemoryBytes());
+        }
+
+        Map<String, Long> flightCalls = new LinkedHashMap<>();
+        Map<String, Long> flightCoalesced = new LinkedHashMap<>();
+        Map<String, Double> flightRatio = new LinkedHashMap<>();
+        for (SingleFlight<?, ?> flights : messageService.getSingleFlights()) {
+            flightCalls.put(flights.getName(), flights.getCallCount());
+            flightCoalesced.put(flights.getName(), flights.getCoalescedCount());
+            flightRatio.put(flights.getName(), flights.getCoalescingRatio());
+        }
+        Metrics.writeSamples(out, "single_flight_calls_total", "counter", "Reads that made their own DAO call",
+                "read", flightCalls);
+        Metrics.writeSamples(out, "single_flight_coalesced_total", "counter",
+                "Reads that shared another read's in-flight DAO call", "read", flightCoalesced);
+        Metrics.writeSamples(out, "single_flight_coalescing_ratio", "gauge", "Share of reads served by a shared call",
+                "read", flightRatio);
+
+        Metrics.writeSample(out, "db_executor_queue_depth", "gauge", "Database tasks waiting for a thread",
+                DbExecutor.getQueueDepth());
+        Metrics.writeSample(out, "db_executor_active_threads", "gauge", "Database tasks running",
+                DbExecutor.getActiveCount());
+        Metrics.writeSample(out, "db_executor_rejected_total", "counter", "Database tasks rejected as overload",
+                DbExecutor.getRejectedCount());
+
+        Map<String, Integer> inFlight = new LinkedHashMap<>();
+        Map<String, Integer> waiting = new LinkedHashMap<>();
+        Map<String, Long> queued = new LinkedHashMap<>();
+        Map<String, Long> shed = new LinkedHashMap<>();
+        Map<String, Double> queueSeconds = new LinkedHashMap<>();
+        for (AdmissionLimiter limiter : new AdmissionLimiter[] {readAdmission, writeAdmission}) {
+            inFlight.put(limiter.getName(), limiter.getInFlight());
+            waiting.put(limiter.getName(), limiter.getWaiting());
+            queued.put(limiter.getName(), limiter.getQueuedCount());
+            shed.put(limiter.getName(), limiter.getShedCount());
+            queueSeconds.put(limiter.getName(), limiter.getMeanQueueNanos() / 1e9);
+        }
+        Metrics.writeSamples(out, "admission_in_flight", "gauge", "Admitted requests in progress", "group", inFlight);
+        Metrics.writeSamples(out, "admission_waiting", "gauge", "Requests waiting for admission", "group", waiting);
+        Metrics.writeSamples(out, "admission_queued_total", "counter", "Requests that had to wait for admission",
+                "group", queued);
+        Metrics.writeSamples(out, "admission_shed_total", "counter", "Requests answered 503 by admission control",
+                "group", shed);
+        Metrics.writeSamples(out, "admission_queue_seconds_mean", "gauge", "Mean wait of queued requests", "group",
+                queueSeconds);
+
+        GroupCommitWriter groupCommitWriter = messageService.getGroupCommitWriter();
+        if (groupCommitWriter != null) {
+            Metrics.writeSample(out, "group_commit_queue_depth", "gauge", "Messages waiting for a group commit",
+                    groupCommitWriter.getQueueDepth());
+            Metrics.writeSample(out, "group_commit_batches_total", "counter", "Group commit transactions",
+                    groupCommitWriter.getBatchCount());
+            Metrics.writeSample(out, "group_commit_messages_total", "counter", "Messages written by group commit",
+                    groupCommitWriter.getMessageCount());
+            Metrics.writeSample(out, "group_commit_fallbacks_total", "counter",
+                    "Batches retried one message at a time", groupCommitWriter.getFallbackCount());
+            Metrics.writeSample(out, "group_commit_rejected_total", "counter",
+                    "Messages answered 503 because the group commit queue was full",
+                    groupCommitWriter.getRejectedCount());
+            Metrics.writeSample(out, "group_commit_seconds_mean", "gauge", "Mean group commit duration",
+                    groupCommitWriter.getMeanCommitNanos() / 1e9);
+            Metrics.writeSample(out, "group_commit_seconds_max", "gauge", "Longest group commit duration",
+                    groupCommitWriter.getMaxCommitNanos() / 1e9);
+        }
+
+        ctx.contentType("text/plain; version=0.0.4; charset=utf-8");
+        ctx.result(out.toString());
+    }
+
+    // A list request with since or until is a time-range listing
+    private boolean isTimeRange(Context ctx) {
+        return ctx.queryParam("since") != null || ctx.queryParam("until") != null;
+    }
+
+    // A list request is paginated as soon as it carries a limit or a cursor; otherwise it returns every row
+    private boolean isPaged(Context ctx) {
+        return ctx.queryParam("limit") != null || ctx.queryParam("cursor") != null;
+    }
+
+    // Returns the requested page size, the default if none was given, or null if the limit is not valid
+    private Integer pageLimit(Context ctx) {
+        String limitParam = ctx.queryParam("limit");
+        if (limitParam == null) {
+            return MessageService.DEFAULT_PAGE_SIZE;
+        }
+        try {
+            int limit = Integer.parseInt(limitParam);
+            if (limit < 1 || limit > MessageService.MAX_PAGE_SIZE) {
+                return null;
+            }
+            return limit;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    // Writes the page's messages as the body and the cursor of the next page, if any, as a header
+    private void writePage(Context ctx, MessagePage page) throws IOException {
+        if (page.hasNext()) {
+            ctx.header(NEXT_CURSOR_HEADER, page.getNextCursor());
+        }
+        ctx.status(200);
+        writeBody(ctx, PayloadFormat::getMessageListWriter, page.getMessages());
+    }
+
+    // Hands the pending result to Javalin, which keeps the request open until it completes; respond then writes
+    // the response on the thread that completed it. When the database executor is full the request gets a 503
+    // instead of queueing further. Any other failure goes to Javalin's exception handling.
+    private <T> void respondAsync(Context ctx, CompletableFuture<T> result, AsyncResponder<T> respond) {
+        ctx.future(() -> result
+                .thenAccept(value -> {
+                    try {
+                        respond.respond(value);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                })
+                .exceptionally(failure -> {
+                    Throwable cause = failure instanceof CompletionException && failure.getCause() != null
+                            ? failure.getCause() : failure;
+                    if (cause instanceof RejectedExecutionException) {
+                        Metrics.recordError("db_executor_rejected");
+                        ctx.status(503);
+                        ctx.header(Header.RETRY_AFTER, "1");
+                        return null;
+                    }
+                    Metrics.recordError("async_handler_failed");
+                    throw failure instanceof CompletionException
+                            ? (CompletionException) failure : new CompletionException(failure);
+                }));
+    }
+
+    // respondAsync for a listing streamed by streamer: the array is closed once every row is written. When the read
+    // fails after part of it was sent, the response is aborted instead, and the failure goes on to respondAsync.
+    private void respondStreamed(Context ctx, MessageJsonStreamer streamer, CompletableFuture<Integer> rows) {
+        respondAsync(ctx, rows.whenComplete((count, failure) -> {
+            if (failure != null && streamer.isStarted()) {
+                try {
+                    streamer.abort();
+                } catch (IOException e) {
+                    failure.addSuppressed(e);
+                }
+            }
+        }), count -> streamer.close());
+    }
+
+    // Writes the response for a completed asynchronous result
+    private interface AsyncResponder<T> {
+        void respond(T value) throws IOException;
+    }
+
+    // The encoding of the request body, from its Content-Type; JSON unless CBOR or Smile is named
+    private PayloadFormat requestFormat(Context ctx) {
+        return PayloadFormat.fromContentType(ctx.header(Header.CONTENT_TYPE));
+    }
+
+    // The encoding to answer in, from the Accept header; JSON unless the client prefers CBOR or Smile
+    private PayloadFormat responseFormat(Context ctx) {
+        return PayloadFormat.fromAccept(ctx.header(Header.ACCEPT));
+    }
 
+    // Serializes value in the negotiated encoding with that format's pre-built writer, straight to the response
+    // stream without an intermediate String
+    private void writeBody(Context ctx, Function<PayloadFormat, ObjectWriter> writer, Object value)
+            throws IOException {
+        PayloadFormat format = responseFormat(ctx);
+        ctx.contentType(format.getMediaType());
+        writer.apply(format).writeValue(ctx.outputStream(), value);
     }
 }
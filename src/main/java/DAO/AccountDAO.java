@@ -2,6 +2,7 @@ package DAO;
 
 import Model.Account;
 import Util.ConnectionUtil;
+import Util.Metrics;
 
 import java.sql.*;
 import java.util.ArrayList;
@@ -11,6 +12,7 @@ public class AccountDAO {
 
     // Insert a new account into the database (register)
     public Account insertAccount(Account account) {
+        long start = System.nanoTime();
         Connection connection = ConnectionUtil.getConnection();
         try {
             String sql = "INSERT INTO Account (username, password) VALUES (?, ?)";
@@ -28,8 +30,10 @@ public class AccountDAO {
             }
 
         } catch (SQLException e) {
+            Metrics.recordDaoError("AccountDAO.insertAccount");
             System.out.println("Error inserting account: " + e.getMessage());
         } finally {
+            Metrics.recordDao("AccountDAO.insertAccount", start);
             // Ensure the connection is closed after operation
             try {
                 if (connection != null) {
@@ -45,6 +49,7 @@ public class AccountDAO {
     // Retrieve all usernames from the database
     public List<String> getAllUsernames() {
         List<String> usernameList = new ArrayList<>();
+        long start = System.nanoTime();
         Connection connection = ConnectionUtil.getConnection();
         try {
             String sql = "SELECT username FROM account"; // Fixed query syntax
@@ -55,8 +60,10 @@ public class AccountDAO {
             }
 
         } catch (SQLException e) {
+            Metrics.recordDaoError("AccountDAO.getAllUsernames");
             System.out.println("Error retrieving usernames: " + e.getMessage());
         } finally {
+            Metrics.recordDao("AccountDAO.getAllUsernames", start);
             // Ensure the connection is closed after operation
             try {
                 if (connection != null) {
@@ -72,6 +79,7 @@ public class AccountDAO {
     // Retrieve an account by username
     public Account getAccountByUsername(String username) {
         Account account = null;
+        long start = System.nanoTime();
         Connection connection = ConnectionUtil.getConnection();
         try {
             String sql = "SELECT * FROM account WHERE username = ?";
@@ -86,8 +94,10 @@ public class AccountDAO {
             }
 
         } catch (SQLException e) {
+            Metrics.recordDaoError("AccountDAO.getAccountByUsername");
             System.out.println("Error retrieving account: " + e.getMessage());
         } finally {
+            Metrics.recordDao("AccountDAO.getAccountByUsername", start);
             // Ensure the connection is closed after operation
             try {
                 if (connection != null) {
@@ -103,6 +113,7 @@ public class AccountDAO {
     public Boolean accountExists(String username){
         Boolean result = false;
         Account account = null;
+        long start = System.nanoTime();
         Connection connection = ConnectionUtil.getConnection();
         try {
             String sql = "SELECT exists(select username from account where username = ?)";
@@ -112,7 +123,6 @@ public class AccountDAO {
 
             if(resultSet.next()){
                 Boolean usernameExists = resultSet.getBoolean(1);
-                System.out.println("I am here, the output is: " + usernameExists);
                 if(usernameExists){
                     result = true;
                 }else{
@@ -121,8 +131,10 @@ public class AccountDAO {
             }
 
         } catch (SQLException e) {
+            Metrics.recordDaoError("AccountDAO.accountExists");
             System.out.println("Error retrieving account: " + e.getMessage());
         } finally {
+            Metrics.recordDao("AccountDAO.accountExists", start);
             // Ensure the connection is closed after operation
             try {
                 if (connection != null) {
@@ -138,6 +150,7 @@ public class AccountDAO {
     public Account getAccountById(int id) {
          
         Account account = null;
+        long start = System.nanoTime();
         Connection connection = ConnectionUtil.getConnection();
 
         try{
@@ -148,42 +161,47 @@ public class AccountDAO {
             
             ResultSet rs = preparedStatement.executeQuery();
             while(rs.next()){
-                int accountId = rs.getInt("acount_id");
+                int accountId = rs.getInt("account_id");
                 String username = rs.getString("username");
                 String password = rs.getString("password");
 
                 account = new Account(accountId, username, password);
             }
         }catch(SQLException e){
+            Metrics.recordDaoError("AccountDAO.getAccountById");
             e.printStackTrace();
+        } finally {
+            Metrics.recordDao("AccountDAO.getAccountById", start);
+            // Ensure the connection is returned to the pool after operation
+            try {
+                if (connection != null) {
+                    connection.close();
+                }
+            } catch (SQLException e) {
+                System.out.println("Error closing connection: " + e.getMessage());
+            }
         }
 
         return account;
     }
 
-    public boolean accountExists(int id) {
-        Boolean result = false;
-        Account account = null;
+    // Retrieve the id and username of every account, without passwords
+    public List<Account> getAllAccountSummaries() {
+        List<Account> accounts = new ArrayList<>();
+        long start = System.nanoTime();
         Connection connection = ConnectionUtil.getConnection();
         try {
-            String sql = "SELECT exists(select account_id from account where account_id = ?)";
+            String sql = "SELECT account_id, username FROM account";
             PreparedStatement preparedStatement = connection.prepareStatement(sql);
-            preparedStatement.setInt(1, id);
             ResultSet resultSet = preparedStatement.executeQuery();
-
-            if(resultSet.next()){
-                Boolean accountIdExists = resultSet.getBoolean(1);
-                System.out.println("I am here, the output is: " + accountIdExists);
-                if(accountIdExists){
-                    result = true;
-                }else{
-                    result = false;
-                }
+            while (resultSet.next()) {
+                accounts.add(new Account(resultSet.getInt("account_id"), resultSet.getString("username"), null));
             }
-
         } catch (SQLException e) {
-            System.out.println("Error retrieving account: " + e.getMessage());
+            Metrics.recordDaoError("AccountDAO.getAllAccountSummaries");
+            System.out.println("Error retrieving accounts: " + e.getMessage());
         } finally {
+            Metrics.recordDao("AccountDAO.getAllAccountSummaries", start);
             // Ensure the connection is closed after operation
             try {
                 if (connection != null) {
@@ -193,7 +211,7 @@ public class AccountDAO {
                 System.out.println("Error closing connection: " + e.getMessage());
             }
         }
-        return result;
+        return accounts;
     }
 
 }
@@ -0,0 +1,398 @@
+package DAO;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import Model.Message;
+import Util.Metrics;
+
+/**
+ * An in-memory, column-oriented copy of the message table in front of H2. message_id, posted_by and
+ * time_posted_epoch are held in growable primitive arrays, one per column, and message_text as UTF-8 bytes in a
+ * shared arena of fixed-size chunks. A row is 24 bytes of columns plus its text, against a Message object, a
+ * String and its array per row on the heap, and reads never touch JDBC.
+ *
+ * H2 stays the system of record: every write goes to the MessageDAO first and is applied here only once it has
+ * succeeded, so a restart rebuilds the columns from H2. Writes are serialized on one lock, which makes this store
+ * the single writer of its columns. Holding the lock across the database call also keeps rows in message_id
+ * order, so a message is found by binary search on the id column. That lock would also serialize group commits
+ * into batches of one, so the MessageDAO must have group commit off; the constructor refuses one that has it on.
+ *
+ * Reads take no lock. A row is written in full before size is published (a volatile write), and readers read size
+ * first, so every row below it is complete. Changes to existing rows (an update's new text, or a delete) are a
+ * single store to the row's text reference with release semantics, read back with acquire semantics, so a reader
+ * sees either the old text or the new one. Grown columns and arena chunks are published before the size or
+ * reference that needs them.
+ *
+ * Deleted rows and replaced texts keep their space; the columns only ever grow until the next restart.
+ */
+public class ColumnarMessageStore implements MessageStore {
+
+    // Bytes per arena chunk; a text never spans two chunks
+    private static final int CHUNK_SIZE = 1 << 20;
+    private static final int INITIAL_ROWS = 1024;
+    // A text reference packs its chunk, offset and length as chunk << 40 | offset << 16 | length; DELETED marks a
+    // deleted row
+    private static final long DELETED = -1L;
+    private static final int MAX_TEXT_BYTES = 0xFFFF;
+    private static final VarHandle TEXT_REFS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private final MessageDAO database;
+    private final Object writeLock = new Object();
+
+    private volatile Columns columns = new Columns(INITIAL_ROWS);
+    private volatile int size;
+    private volatile byte[][] chunks = new byte[16][];
+    private volatile int liveRows;
+
+    // Writer state, only touched while holding writeLock
+    private int chunkCount;
+    private int chunkPosition = CHUNK_SIZE;
+    private long arenaBytes;
+
+    /**
+     * Loads every message from H2 through database, which then receives all writes.
+     * @throws IllegalArgumentException if database group commits its inserts
+     */
+    public ColumnarMessageStore(MessageDAO database) {
+        if (database.getGroupCommitWriter() != null) {
+            throw new IllegalArgumentException("ColumnarMessageStore needs a MessageDAO with group commit off");
+        }
+        this.database = database;
+        synchronized (writeLock) {
+            try {
+                database.streamAllMessages(this::append);
+            } catch (IOException e) {
+                // append never throws, so the database read failed
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    @Override
+    public GroupCommitWriter getGroupCommitWriter() {
+        return database.getGroupCommitWriter();
+    }
+
+    @Override
+    public Message addMessage(Message message) {
+        synchronized (writeLock) {
+            Message added = database.addMessage(message);
+            if (added != null) {
+                append(added.getMessage_id(), added.getPosted_by(), added.getMessage_text(),
+                        added.getTime_posted_epoch());
+            }
+            return added;
+        }
+    }
+
+    @Override
+    public List<Message> addMessages(List<Message> newMessages) {
+        synchronized (writeLock) {
+            List<Message> added = database.addMessages(newMessages);
+            if (added != null) {
+                for (Message message : added) {
+                    append(message.getMessage_id(), message.getPosted_by(), message.getMessage_text(),
+                            message.getTime_posted_epoch());
+                }
+            }
+            return added;
+        }
+    }
+
+    @Override
+    public boolean deleteMessage(int messageId) {
+        synchronized (writeLock) {
+            boolean deleted = database.deleteMessage(messageId);
+            if (deleted) {
+                markDeleted(messageId);
+            }
+            return deleted;
+        }
+    }
+
+    @Override
+    public Message deleteMessageReturning(int messageId) {
+        synchronized (writeLock) {
+            Message deleted = database.deleteMessageReturning(messageId);
+            if (deleted != null) {
+                markDeleted(messageId);
+            }
+            return deleted;
+        }
+    }
+
+    @Override
+    public Message updateMessage(Message updatedMessage) {
+        synchronized (writeLock) {
+            Message updated = database.updateMessage(updatedMessage);
+            if (updated != null) {
+                replaceText(updatedMessage.getMessage_id(), updatedMessage.getMessage_text());
+            }
+            return updated;
+        }
+    }
+
+    @Override
+    public Message updateMessageTextReturning(int messageId, String messageText) {
+        synchronized (writeLock) {
+            Message updated = database.updateMessageTextReturning(messageId, messageText);
+            if (updated != null) {
+                replaceText(messageId, updated.getMessage_text());
+            }
+            return updated;
+        }
+    }
+
+    @Override
+    public Message getMessageById(int messageId) {
+        long start = System.nanoTime();
+        int rows = size;
+        Columns snapshot = columns;
+        int row = Arrays.binarySearch(snapshot.ids, 0, rows, messageId);
+        Message message = row < 0 ? null : toMessage(snapshot, row);
+        Metrics.recordDao("ColumnarMessageStore.getMessageById", start);
+        return message;
+    }
+
+    @Override
+    public List<Message> getAllMessages() {
+        long start = System.nanoTime();
+        int rows = size;
+        Columns snapshot = columns;
+        List<Message> messages = new ArrayList<>(rows);
+        for (int row = 0; row < rows; row++) {
+            Message message = toMessage(snapshot, row);
+            if (message != null) {
+                messages.add(message);
+            }
+        }
+        Metrics.recordDao("ColumnarMessageStore.getAllMessages", start);
+        return messages;
+    }
+
+    @Override
+    public List<Message> getMessagesByUser(int userId) {
+        long start = System.nanoTime();
+        int rows = size;
+        Columns snapshot = columns;
+        int[] postedBy = snapshot.postedBy;
+        List<Message> messages = new ArrayList<>();
+        for (int row = 0; row < rows; row++) {
+            if (postedBy[row] == userId) {
+                Message message = toMessage(snapshot, row);
+                if (message != null) {
+                    messages.add(message);
+                }
+            }
+        }
+        Metrics.recordDao("ColumnarMessageStore.getMessagesByUser", start);
+        return messages;
+    }
+
+    @Override
+    public List<Message> getMessagesAfter(int afterMessageId, int limit) {
+        long start = System.nanoTime();
+        int rows = size;
+        Columns snapshot = columns;
+        List<Message> messages = new ArrayList<>(Math.min(limit, 1024));
+        for (int row = firstRowAfter(snapshot, rows, afterMessageId); row < rows && messages.size() < limit; row++) {
+            Message message = toMessage(snapshot, row);
+            if (message != null) {
+                messages.add(message);
+            }
+        }
+        Metrics.recordDao("ColumnarMessageStore.getMessagesAfter", start);
+        return messages;
+    }
+
+    @Override
+    public List<Message> getMessagesByUserAfter(int userId, int afterMessageId, int limit) {
+        long start = System.nanoTime();
+        int rows = size;
+        Columns snapshot = columns;
+        int[] postedBy = snapshot.postedBy;
+        List<Message> messages = new ArrayList<>();
+        for (int row = firstRowAfter(snapshot, rows, afterMessageId); row < rows && messages.size() < limit; row++) {
+            if (postedBy[row] == userId) {
+                Message message = toMessage(snapshot, row);
+                if (message != null) {
+                    messages.add(message);
+                }
+            }
+        }
+        Metrics.recordDao("ColumnarMessageStore.getMessagesByUserAfter", start);
+        return messages;
+    }
+
+    @Override
+    public int streamAllMessages(MessageRowHandler handler) throws IOException {
+        return stream(null, handler);
+    }
+
+    @Override
+    public int streamMessagesByUser(int userId, MessageRowHandler handler) throws IOException {
+        return stream(userId, handler);
+    }
+
+    // Hands the live rows, or only userId's if given, to the handler without building Message objects
+    private int stream(Integer userId, MessageRowHandler handler) throws IOException {
+        long start = System.nanoTime();
+        int rows = size;
+        Columns snapshot = columns;
+        int streamed = 0;
+        try {
+            for (int row = 0; row < rows; row++) {
+                if (userId != null && snapshot.postedBy[row] != userId) {
+                    continue;
+                }
+                long ref = (long) TEXT_REFS.getAcquire(snapshot.textRefs, row);
+                if (ref == DELETED) {
+                    continue;
+                }
+                handler.onRow(snapshot.ids[row], snapshot.postedBy[row], decode(chunks, ref), snapshot.epochs[row]);
+                streamed++;
+            }
+        } finally {
+            Metrics.recordDao("ColumnarMessageStore.stream", start);
+        }
+        return streamed;
+    }
+
+    // Rows stored, deleted ones included
+    public int getRowCount() {
+        return size;
+    }
+
+    public int getLiveRowCount() {
+        return liveRows;
+    }
+
+    // Heap taken by the columns as allocated, and by the arena chunks in use
+    public long getColumnBytes() {
+        return (long) columns.ids.length * (Integer.BYTES * 2 + Long.BYTES * 2);
+    }
+
+    public long getArenaBytes() {
+        synchronized (writeLock) {
+            return (long) chunkCount * CHUNK_SIZE;
+        }
+    }
+
+    // UTF-8 bytes of text written to the arena, replaced texts included
+    public long getTextBytes() {
+        synchronized (writeLock) {
+            return arenaBytes;
+        }
+    }
+
+    // Called with writeLock held, and from the constructor while loading
+    private void append(int messageId, int postedBy, String messageText, long timePostedEpoch) {
+        int row = size;
+        Columns current = columns;
+        if (row == current.ids.length) {
+            current = current.grow(row + (row >> 1));
+            columns = current;
+        }
+        current.ids[row] = messageId;
+        current.postedBy[row] = postedBy;
+        current.epochs[row] = timePostedEpoch;
+        current.textRefs[row] = storeText(messageText);
+        liveRows++;
+        size = row + 1;
+    }
+
+    private void markDeleted(int messageId) {
+        Columns current = columns;
+        int row = Arrays.binarySearch(current.ids, 0, size, messageId);
+        if (row >= 0 && (long) TEXT_REFS.getAcquire(current.textRefs, row) != DELETED) {
+            TEXT_REFS.setRelease(current.textRefs, row, DELETED);
+            liveRows--;
+        }
+    }
+
+    private void replaceText(int messageId, String messageText) {
+        Columns current = columns;
+        int row = Arrays.binarySearch(current.ids, 0, size, messageId);
+        if (row >= 0 && (long) TEXT_REFS.getAcquire(current.textRefs, row) != DELETED) {
+            TEXT_REFS.setRelease(current.textRefs, row, storeText(messageText));
+        }
+    }
+
+    // Copies the text's UTF-8 bytes into the arena and returns their reference
+    private long storeText(String messageText) {
+        byte[] bytes = messageText.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_TEXT_BYTES) {
+            throw new IllegalArgumentException("message_text longer than " + MAX_TEXT_BYTES + " bytes");
+        }
+        if (chunkPosition + bytes.length > CHUNK_SIZE) {
+            byte[][] arena = chunks;
+            if (chunkCount == arena.length) {
+                arena = Arrays.copyOf(arena, arena.length * 2);
+            }
+            arena[chunkCount++] = new byte[CHUNK_SIZE];
+            chunks = arena;
+            chunkPosition = 0;
+        }
+        int chunk = chunkCount - 1;
+        System.arraycopy(bytes, 0, chunks[chunk], chunkPosition, bytes.length);
+        long ref = (long) chunk << 40 | (long) chunkPosition << 16 | bytes.length;
+        chunkPosition += bytes.length;
+        arenaBytes += bytes.length;
+        return ref;
+    }
+
+    // The message in row, or null if it was deleted
+    private Message toMessage(Columns snapshot, int row) {
+        long ref = (long) TEXT_REFS.getAcquire(snapshot.textRefs, row);
+        if (ref == DELETED) {
+            return null;
+        }
+        return new Message(snapshot.ids[row], snapshot.postedBy[row], decode(chunks, ref), snapshot.epochs[row]);
+    }
+
+    private static String decode(byte[][] arena, long ref) {
+        return new String(arena[chunkOf(ref)], (int) (ref >>> 16) & 0xFFFFFF, (int) ref & MAX_TEXT_BYTES,
+                StandardCharsets.UTF_8);
+    }
+
+    private static int chunkOf(long ref) {
+        return (int) (ref >>> 40);
+    }
+
+    // Index of the first row with a message_id greater than afterMessageId
+    private static int firstRowAfter(Columns snapshot, int rows, int afterMessageId) {
+        int row = Arrays.binarySearch(snapshot.ids, 0, rows, afterMessageId);
+        return row >= 0 ? row + 1 : -row - 1;
+    }
+
+    // One generation of the column arrays, all of the same length; replaced by a longer copy when full
+    private static final class Columns {
+        final int[] ids;
+        final int[] postedBy;
+        final long[] epochs;
+        final long[] textRefs;
+
+        Columns(int capacity) {
+            this(new int[capacity], new int[capacity], new long[capacity], new long[capacity]);
+        }
+
+        private Columns(int[] ids, int[] postedBy, long[] epochs, long[] textRefs) {
+            this.ids = ids;
+            this.postedBy = postedBy;
+            this.epochs = epochs;
+            this.textRefs = textRefs;
+        }
+
+        Columns grow(int capacity) {
+            return new Columns(Arrays.copyOf(ids, capacity), Arrays.copyOf(postedBy, capacity),
+                    Arrays.copyOf(epochs, capacity), Arrays.copyOf(textRefs, capacity));
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package DAO;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import Model.Message;
+
+/**
+ * Group commit for message inserts. Callers enqueue messages on a bounded queue and get a future; a single writer
+ * thread drains the queue and inserts up to maxBatchSize messages per transaction, waiting at most maxDelayMillis
+ * after the first message of a batch for more to arrive. Each future completes with the inserted message (and its
+ * generated message_id) once its transaction has committed, or with null if the message could not be stored.
+ *
+ * If a whole batch fails, for example because one message references a missing account, its messages are retried
+ * one by one so a single bad message does not fail the others.
+ */
+public class GroupCommitWriter {
+
+    private final MessageDAO messageDAO;
+    private final int maxBatchSize;
+    private final long maxDelayNanos;
+    private final BlockingQueue<PendingMessage> queue;
+    private final Thread writerThread;
+    private volatile boolean running = true;
+
+    private final AtomicLong batchCount = new AtomicLong();
+    private final AtomicLong messageCount = new AtomicLong();
+    private final AtomicLong maxBatchSeen = new AtomicLong();
+    private final AtomicLong commitNanos = new AtomicLong();
+    private final AtomicLong maxCommitNanos = new AtomicLong();
+    private final AtomicLong fallbackCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    public GroupCommitWriter(MessageDAO messageDAO, int maxBatchSize, long maxDelayMillis, int queueCapacity) {
+        this.messageDAO = messageDAO;
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.writerThread = new Thread(this::drainLoop, "GroupCommitWriter");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Queues a message for the next group commit without blocking, so a request thread is never held up by a full
+     * queue.
+     * @return a future completed with the stored message, or with null if it could not be stored or the writer is
+     * closed; it fails with a RejectedExecutionException if the queue is full
+     */
+    public CompletableFuture<Message> submit(Message message) {
+        return enqueue(message, false);
+    }
+
+    /**
+     * Queues a message like submit, but waits while the queue is full, for callers that block on the result anyway.
+     */
+    public CompletableFuture<Message> put(Message message) {
+        return enqueue(message, true);
+    }
+
+    private CompletableFuture<Message> enqueue(Message message, boolean waitForSpace) {
+        PendingMessage pending = new PendingMessage(message);
+        if (!running) {
+            pending.future.complete(null);
+            return pending.future;
+        }
+        if (waitForSpace) {
+            try {
+                queue.put(pending);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                pending.future.complete(null);
+                return pending.future;
+            }
+        } else if (!queue.offer(pending)) {
+            rejectedCount.incrementAndGet();
+            pending.future.completeExceptionally(new RejectedExecutionException("Group commit queue is full"));
+            return pending.future;
+        }
+        // Closed while we were queueing: the writer may have made its last drain already. Whoever takes the message
+        // off the queue answers it, so either the writer commits it or it is answered here.
+        if (!running && queue.remove(pending)) {
+            pending.future.complete(null);
+        }
+        return pending.future;
+    }
+
+    private void drainLoop() {
+        List<PendingMessage> batch = new ArrayList<>(maxBatchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingMessage first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + maxDelayNanos;
+                while (batch.size() < maxBatchSize) {
+                    // Take whatever is already queued without waiting, then wait out the rest of the delay
+                    if (queue.drainTo(batch, maxBatchSize - batch.size()) > 0) {
+                        continue;
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        break;
+                    }
+                    PendingMessage next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                commit(batch);
+            } catch (InterruptedException e) {
+                running = false;
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            } finally {
+                // A batch cut short by an interrupt or a failure is answered rather than dropped; futures its
+                // commit already completed keep their result
+                for (PendingMessage pending : batch) {
+                    pending.future.complete(null);
+                }
+                batch.clear();
+            }
+        }
+        // Anything left after an interrupt is answered rather than leaving callers waiting forever
+        answerQueued();
+    }
+
+    private void answerQueued() {
+        PendingMessage pending;
+        while ((pending = queue.poll()) != null) {
+            pending.future.complete(null);
+        }
+    }
+
+    private void commit(List<PendingMessage> batch) {
+        List<Message> messages = new ArrayList<>(batch.size());
+        for (PendingMessage pending : batch) {
+            messages.add(pending.message);
+        }
+
+        long start = System.nanoTime();
+        List<Message> stored = messageDAO.addMessages(messages);
+        long elapsed = System.nanoTime() - start;
+
+        batchCount.incrementAndGet();
+        messageCount.addAndGet(batch.size());
+        maxBatchSeen.accumulateAndGet(batch.size(), Math::max);
+        commitNanos.addAndGet(elapsed);
+        maxCommitNanos.accumulateAndGet(elapsed, Math::max);
+
+        if (stored != null) {
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).future.complete(stored.get(i));
+            }
+            return;
+        }
+        fallbackCount.incrementAndGet();
+        for (PendingMessage pending : batch) {
+            pending.future.complete(messageDAO.insertMessage(pending.message));
+        }
+    }
+
+    /**
+     * Stops accepting messages, commits what is already queued and waits for the writer thread to finish.
+     */
+    public void close() {
+        running = false;
+        try {
+            writerThread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!writerThread.isAlive()) {
+            answerQueued();
+        }
+    }
+
+    public boolean isClosed() {
+        return !running;
+    }
+
+    // Messages waiting for the writer thread
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    // Transactions committed by the writer thread
+    public long getBatchCount() {
+        return batchCount.get();
+    }
+
+    public long getMessageCount() {
+        return messageCount.get();
+    }
+
+    public double getMeanBatchSize() {
+        long batches = batchCount.get();
+        return batches == 0 ? 0 : (double) messageCount.get() / batches;
+    }
+
+    public long getMaxBatchSize() {
+        return maxBatchSeen.get();
+    }
+
+    // Messages turned away by submit because the queue was full
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    public long getMeanCommitNanos() {
+        long batches = batchCount.get();
+        return batches == 0 ? 0 : commitNanos.get() / batches;
+    }
+
+    public long getMaxCommitNanos() {
+        return maxCommitNanos.get();
+    }
+
+    // Batches that failed as a whole and were retried one message at a time
+    public long getFallbackCount() {
+        return fallbackCount.get();
+    }
+
+    private static final class PendingMessage {
+        final Message message;
+        final CompletableFuture<Message> future = new CompletableFuture<>();
+
+        PendingMessage(Message message) {
+            this.message = message;
+        }
+    }
+}
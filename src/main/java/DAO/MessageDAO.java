@@ -2,15 +2,75 @@ package DAO;
 
 import Model.Message;
 import Util.ConnectionUtil;
+import Util.Metrics;
 
+import java.io.IOException;
 import java.sql.*;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
-public class MessageDAO {
+public class MessageDAO implements MessageStore {
+
+    // Rows requested per fetch when streaming a listing; override with -Ddb.stream.fetchSize
+    private static final int STREAM_FETCH_SIZE = Integer.getInteger("db.stream.fetchSize", 256);
+
+    // Group commit is off unless -Dmessages.groupCommit.enabled=true; tune it with the other messages.groupCommit.*
+    // properties
+    private static final boolean GROUP_COMMIT_ENABLED = Boolean.getBoolean("messages.groupCommit.enabled");
+
+    // Shared by every MessageDAO with group commit on, so their concurrent inserts batch together and only one
+    // writer thread is started; replaced if it has been closed
+    private static GroupCommitWriter sharedGroupCommitWriter;
+
+    // Set when addMessage goes through group commit, null when every insert is its own transaction
+    private final GroupCommitWriter groupCommitWriter;
+
+    public MessageDAO() {
+        this(GROUP_COMMIT_ENABLED);
+    }
+
+    public MessageDAO(boolean groupCommit) {
+        this.groupCommitWriter = groupCommit ? sharedGroupCommitWriter() : null;
+    }
+
+    private static synchronized GroupCommitWriter sharedGroupCommitWriter() {
+        if (sharedGroupCommitWriter == null || sharedGroupCommitWriter.isClosed()) {
+            sharedGroupCommitWriter = new GroupCommitWriter(new MessageDAO(false),
+                    Integer.getInteger("messages.groupCommit.maxBatchSize", 64),
+                    Long.getLong("messages.groupCommit.maxDelayMillis", 5L),
+                    Integer.getInteger("messages.groupCommit.queueCapacity", 1024));
+        }
+        return sharedGroupCommitWriter;
+    }
+
+    // Returns the group commit writer, or null if group commit is off
+    public GroupCommitWriter getGroupCommitWriter() {
+        return groupCommitWriter;
+    }
 
     // Method to add a new message to the database
     public Message addMessage(Message message) {
+        if (groupCommitWriter != null) {
+            return groupCommitWriter.put(message).join();
+        }
+        return insertMessage(message);
+    }
+
+    // With group commit on, the future is the writer's, so the caller's thread is free while the batch commits. A
+    // full queue fails it with a RejectedExecutionException instead of blocking the caller.
+    @Override
+    public CompletableFuture<Message> addMessageAsync(Message message, Executor executor) {
+        if (groupCommitWriter != null) {
+            return groupCommitWriter.submit(message);
+        }
+        return MessageStore.super.addMessageAsync(message, executor);
+    }
+
+    // Inserts a single message in its own autocommit transaction
+    Message insertMessage(Message message) {
+        long start = System.nanoTime();
         Connection connection = ConnectionUtil.getConnection();
         try {
             String sql = "INSERT INTO message (posted_by, message_text, time_posted_epoch) VALUES (?, ?, ?)";
@@ -28,8 +88,10 @@ public class MessageDAO {
             }
 
         } catch (SQLException e) {
+            Metrics.recordDaoError("MessageDAO.insertMessage");
             e.printStackTrace();
         } finally {
+            Metrics.recordDao("MessageDAO.insertMessage", start);
             try {
                 if (connection != null) {
                     connection.close(); // Close the connection
@@ -44,6 +106,7 @@ public class MessageDAO {
     // Method to retrieve all messages from the database
     public List<Message> getAllMessages() {
         List<Message> messages = new ArrayList<>();
+        long start = System.nanoTime();
         Connection connection = ConnectionUtil.getConnection();
         try {
             String sql = "SELECT * FROM message"; 
@@ -57,8 +120,10 @@ public class MessageDAO {
                 messages.add(new Message(messageId, postedBy, messageText, timePostedEpoch));
             }
         } catch (SQLException e) {
+            Metrics.recordDaoError("MessageDAO.getAllMessages");
             e.printStackTrace();
         } finally {
+            Metrics.recordDao("MessageDAO.getAllMessages", start);
             try {
                 if (connection != null) {
                     connection.close(); // Close the connection
@@ -72,6 +137,7 @@ public class MessageDAO {
 
     // Method to delete a message by its ID
     public boolean deleteMessage(int messageId) {
+        long start = System.nanoTime();
         Connection connection = ConnectionUtil.getConnection();
         try {
             String sql = "DELETE FROM message WHERE message_id = ?";
@@ -80,8 +146,10 @@ public class MessageDAO {
             int rowsAffected = preparedStatement.executeUpdate();
             return rowsAffected > 0; // Returns true if a row was deleted
         } catch (SQLException e) {
+            Metrics.recordDaoError("MessageDAO.deleteMessage");
             e.printStackTrace();
         } finally {
+            Metrics.recordDao("MessageDAO.deleteMessage", start);
             try {
                 if (connection != null) {
                     connection.close(); // Close the connection
@@ -95,6 +163,7 @@ public class MessageDAO {
 
     // Method to update an existing message
     public Message updateMessage(Message updatedMessage) {
+        long start = System.nanoTime();
         Connection connection = ConnectionUtil.getConnection();
         try {
            
@@ -106,8 +175,10 @@ public class MessageDAO {
             preparedStatement.executeUpdate();
             return new Message(updatedMessage.getMessage_id(), updatedMessage.getPosted_by(), updatedMessage.getMessage_text(), updatedMessage.getTime_posted_epoch());
         } catch (SQLException e) {
+            Metrics.recordDaoError("MessageDAO.updateMessage");
             e.printStackTrace();
         } finally {
+            Metrics.recordDao("MessageDAO.updateMessage", start);
             try {
                 if (connection != null) {
                     connection.close(); // Close the connection
@@ -121,6 +192,7 @@ public class MessageDAO {
 
     // Method to get a message by its ID
     public Message getMessageById(int messageId) {
+        long start = System.nanoTime();
         Connection connection = ConnectionUtil.getConnection();
         try {
             String sql = "SELECT * FROM message WHERE message_id = ?";
@@ -134,8 +206,10 @@ public class MessageDAO {
                 return new Message(messageId, postedBy, messageText, timePostedEpoch);
             }
         } catch (SQLException e) {
+            Metrics.recordDaoError("MessageDAO.getMessageById");
             e.printStackTrace();
         } finally {
+            Metrics.recordDao("MessageDAO.getMessageById", start);
             try {
                 if (connection != null) {
                     connection.close(); // Close the connection
@@ -147,9 +221,52 @@ public class MessageDAO {
         return null;
     }
 
+    // Method to get the messages with the given IDs in one query, in message_id order, or null if the query failed.
+    // The IDs are bound as a single array parameter, so the statement text is the same for any number of them.
+    public List<Message> getMessagesByIds(int[] messageIds) {
+        List<Message> messages = new ArrayList<>(messageIds.length);
+        if (messageIds.length == 0) {
+            return messages;
+        }
+        long start = System.nanoTime();
+        Connection connection = ConnectionUtil.getConnection();
+        try {
+            String sql = "SELECT * FROM message WHERE message_id = ANY(?) ORDER BY message_id";
+            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+            Integer[] ids = new Integer[messageIds.length];
+            for (int i = 0; i < messageIds.length; i++) {
+                ids[i] = messageIds[i];
+            }
+            preparedStatement.setObject(1, ids);
+            ResultSet resultSet = preparedStatement.executeQuery();
+            while (resultSet.next()) {
+                int messageId = resultSet.getInt("message_id");
+                int postedBy = resultSet.getInt("posted_by");
+                String messageText = resultSet.getString("message_text");
+                long timePostedEpoch = resultSet.getLong("time_posted_epoch");
+                messages.add(new Message(messageId, postedBy, messageText, timePostedEpoch));
+            }
+        } catch (SQLException e) {
+            Metrics.recordDaoError("MessageDAO.getMessagesByIds");
+            e.printStackTrace();
+            return null;
+        } finally {
+            Metrics.recordDao("MessageDAO.getMessagesByIds", start);
+            try {
+                if (connection != null) {
+                    connection.close(); // Close the connection
+                }
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        }
+        return messages;
+    }
+
     // Method to get all messages by a specific user
     public List<Message> getMessagesByUser(int userId) {
         List<Message> messages = new ArrayList<>();
+        long start = System.nanoTime();
         Connection connection = ConnectionUtil.getConnection();
         try {
             String sql = "select * from message where posted_by = ?";
@@ -164,8 +281,118 @@ public class MessageDAO {
                 messages.add(new Message(messageId, userId, messageText, timePostedEpoch));
             }
         } catch (SQLException e) {
+            Metrics.recordDaoError("MessageDAO.getMessagesByUser");
+            e.printStackTrace();
+        } finally {
+            Metrics.recordDao("MessageDAO.getMessagesByUser", start);
+            try {
+                if (connection != null) {
+                    connection.close(); // Close the connection
+                }
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        }
+        return messages;
+    }
+
+    // Method to retrieve up to limit messages with a message_id greater than afterMessageId, in message_id order
+    public List<Message> getMessagesAfter(int afterMessageId, int limit) {
+        List<Message> messages = new ArrayList<>();
+        long start = System.nanoTime();
+        Connection connection = ConnectionUtil.getConnection();
+        try {
+            String sql = "SELECT * FROM message WHERE message_id > ? ORDER BY message_id LIMIT ?";
+            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+            preparedStatement.setInt(1, afterMessageId);
+            preparedStatement.setInt(2, limit);
+            ResultSet resultSet = preparedStatement.executeQuery();
+            while (resultSet.next()) {
+                int messageId = resultSet.getInt("message_id");
+                int postedBy = resultSet.getInt("posted_by");
+                String messageText = resultSet.getString("message_text");
+                long timePostedEpoch = resultSet.getLong("time_posted_epoch");
+                messages.add(new Message(messageId, postedBy, messageText, timePostedEpoch));
+            }
+        } catch (SQLException e) {
+            Metrics.recordDaoError("MessageDAO.getMessagesAfter");
+            e.printStackTrace();
+        } finally {
+            Metrics.recordDao("MessageDAO.getMessagesAfter", start);
+            try {
+                if (connection != null) {
+                    connection.close(); // Close the connection
+                }
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        }
+        return messages;
+    }
+
+    // Method to retrieve up to limit messages by a specific user with a message_id greater than afterMessageId
+    public List<Message> getMessagesByUserAfter(int userId, int afterMessageId, int limit) {
+        List<Message> messages = new ArrayList<>();
+        long start = System.nanoTime();
+        Connection connection = ConnectionUtil.getConnection();
+        try {
+            String sql = "SELECT * FROM message WHERE posted_by = ? AND message_id > ? ORDER BY message_id LIMIT ?";
+            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+            preparedStatement.setInt(1, userId);
+            preparedStatement.setInt(2, afterMessageId);
+            preparedStatement.setInt(3, limit);
+            ResultSet resultSet = preparedStatement.executeQuery();
+            while (resultSet.next()) {
+                int messageId = resultSet.getInt("message_id");
+                String messageText = resultSet.getString("message_text");
+                long timePostedEpoch = resultSet.getLong("time_posted_epoch");
+                messages.add(new Message(messageId, userId, messageText, timePostedEpoch));
+            }
+        } catch (SQLException e) {
+            Metrics.recordDaoError("MessageDAO.getMessagesByUserAfter");
+            e.printStackTrace();
+        } finally {
+            Metrics.recordDao("MessageDAO.getMessagesByUserAfter", start);
+            try {
+                if (connection != null) {
+                    connection.close(); // Close the connection
+                }
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        }
+        return messages;
+    }
+
+    // Method to retrieve up to limit messages posted in [fromEpoch, untilEpoch), in (time_posted_epoch, message_id)
+    // order, resuming after message afterMessageId at fromEpoch. Served by message_time_posted_idx, which is in
+    // that order, so H2 reads just the rows returned.
+    public List<Message> getMessagesInTimeRange(long fromEpoch, int afterMessageId, long untilEpoch, int limit) {
+        List<Message> messages = new ArrayList<>();
+        long start = System.nanoTime();
+        Connection connection = ConnectionUtil.getConnection();
+        try {
+            String sql = "SELECT * FROM message WHERE time_posted_epoch >= ? AND time_posted_epoch < ?"
+                    + " AND (time_posted_epoch > ? OR message_id > ?) ORDER BY time_posted_epoch, message_id LIMIT ?";
+            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+            preparedStatement.setLong(1, fromEpoch);
+            preparedStatement.setLong(2, untilEpoch);
+            preparedStatement.setLong(3, fromEpoch);
+            preparedStatement.setInt(4, afterMessageId);
+            preparedStatement.setInt(5, limit);
+            ResultSet resultSet = preparedStatement.executeQuery();
+            while (resultSet.next()) {
+                int messageId = resultSet.getInt("message_id");
+                int postedBy = resultSet.getInt("posted_by");
+                String messageText = resultSet.getString("message_text");
+                long timePostedEpoch = resultSet.getLong("time_posted_epoch");
+                messages.add(new Message(messageId, postedBy, messageText, timePostedEpoch));
+            }
+        } catch (SQLException e) {
+            Metrics.recordDaoError("MessageDAO.getMessagesInTimeRange");
             e.printStackTrace();
         } finally {
+            Metrics.recordDao("MessageDAO.getMessagesInTimeRange", start);
             try {
                 if (connection != null) {
                     connection.close(); // Close the connection
@@ -176,4 +403,170 @@ public class MessageDAO {
         }
         return messages;
     }
+
+    // Method to stream every message to the handler in message_id order without materializing the list
+    public int streamAllMessages(MessageRowHandler handler) throws IOException {
+        return streamMessages("SELECT * FROM message ORDER BY message_id", null, handler);
+    }
+
+    // Method to stream all messages by a specific user to the handler without materializing the list
+    public int streamMessagesByUser(int userId, MessageRowHandler handler) throws IOException {
+        return streamMessages("SELECT * FROM message WHERE posted_by = ? ORDER BY message_id", userId, handler);
+    }
+
+    // Runs the query with lazy execution turned on for this connection, so H2 produces rows as the cursor moves
+    // forward instead of building the whole result in memory first. Returns the number of rows streamed. A query
+    // failing part way throws, so the caller does not take the rows streamed so far for all of them.
+    private int streamMessages(String sql, Integer userId, MessageRowHandler handler) throws IOException {
+        int rows = 0;
+        long start = System.nanoTime();
+        Connection connection = ConnectionUtil.getConnection();
+        try {
+            connection.prepareStatement("SET LAZY_QUERY_EXECUTION TRUE").executeUpdate();
+            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+            preparedStatement.setFetchSize(STREAM_FETCH_SIZE);
+            if (userId != null) {
+                preparedStatement.setInt(1, userId);
+            }
+            ResultSet resultSet = preparedStatement.executeQuery();
+            while (resultSet.next()) {
+                handler.onRow(resultSet.getInt("message_id"), resultSet.getInt("posted_by"),
+                        resultSet.getString("message_text"), resultSet.getLong("time_posted_epoch"));
+                rows++;
+            }
+        } catch (SQLException e) {
+            Metrics.recordDaoError("MessageDAO.streamMessages");
+            throw new IOException("Streaming messages failed after " + rows + " rows", e);
+        } finally {
+            Metrics.recordDao("MessageDAO.streamMessages", start);
+            try {
+                if (connection != null) {
+                    try {
+                        connection.prepareStatement("SET LAZY_QUERY_EXECUTION FALSE").executeUpdate();
+                    } finally {
+                        connection.close(); // Close the connection
+                    }
+                }
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        }
+        return rows;
+    }
+
+    // Method to insert several messages as one JDBC batch in a single transaction. Returns the inserted messages
+    // with their generated IDs, in the same order, or null if the transaction was rolled back.
+    public List<Message> addMessages(List<Message> newMessages) {
+        List<Message> messages = new ArrayList<>();
+        if (newMessages.isEmpty()) {
+            return messages;
+        }
+        long start = System.nanoTime();
+        Connection connection = ConnectionUtil.getConnection();
+        try {
+            connection.setAutoCommit(false);
+            String sql = "INSERT INTO message (posted_by, message_text, time_posted_epoch) VALUES (?, ?, ?)";
+            PreparedStatement preparedStatement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+            for (Message message : newMessages) {
+                preparedStatement.setInt(1, message.getPosted_by());
+                preparedStatement.setString(2, message.getMessage_text());
+                preparedStatement.setLong(3, message.getTime_posted_epoch());
+                preparedStatement.addBatch();
+            }
+            preparedStatement.executeBatch();
+            ResultSet pkeyResultSet = preparedStatement.getGeneratedKeys();
+            for (Message message : newMessages) {
+                if (!pkeyResultSet.next()) {
+                    throw new SQLException("Missing generated key for batch insert");
+                }
+                int generatedMessageId = (int) pkeyResultSet.getLong(1);
+                messages.add(new Message(generatedMessageId, message.getPosted_by(), message.getMessage_text(), message.getTime_posted_epoch()));
+            }
+            connection.commit();
+            return messages;
+        } catch (SQLException e) {
+            Metrics.recordDaoError("MessageDAO.addMessages");
+            e.printStackTrace();
+            try {
+                connection.rollback();
+            } catch (SQLException rollbackException) {
+                rollbackException.printStackTrace();
+            }
+        } finally {
+            Metrics.recordDao("MessageDAO.addMessages", start);
+            try {
+                if (connection != null) {
+                    connection.setAutoCommit(true);
+                    connection.close(); // Close the connection
+                }
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        }
+        return null;
+    }
+
+    // Method to delete a message by its ID and return the deleted row, in one statement. Returns null if no message
+    // had that ID.
+    public Message deleteMessageReturning(int messageId) {
+        long start = System.nanoTime();
+        Connection connection = ConnectionUtil.getConnection();
+        try {
+            String sql = "SELECT * FROM OLD TABLE (DELETE FROM message WHERE message_id = ?)";
+            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+            preparedStatement.setInt(1, messageId);
+            ResultSet resultSet = preparedStatement.executeQuery();
+            if (resultSet.next()) {
+                int postedBy = resultSet.getInt("posted_by");
+                String messageText = resultSet.getString("message_text");
+                long timePostedEpoch = resultSet.getLong("time_posted_epoch");
+                return new Message(messageId, postedBy, messageText, timePostedEpoch);
+            }
+        } catch (SQLException e) {
+            Metrics.recordDaoError("MessageDAO.deleteMessageReturning");
+            e.printStackTrace();
+        } finally {
+            Metrics.recordDao("MessageDAO.deleteMessageReturning", start);
+            try {
+                if (connection != null) {
+                    connection.close(); // Close the connection
+                }
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        }
+        return null;
+    }
+
+    // Method to change the text of a message and return the full updated row, in one statement. Returns null if no
+    // message had that ID.
+    public Message updateMessageTextReturning(int messageId, String messageText) {
+        long start = System.nanoTime();
+        Connection connection = ConnectionUtil.getConnection();
+        try {
+            String sql = "SELECT * FROM FINAL TABLE (UPDATE message SET message_text = ? WHERE message_id = ?)";
+            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+            preparedStatement.setString(1, messageText);
+            preparedStatement.setInt(2, messageId);
+            ResultSet resultSet = preparedStatement.executeQuery();
+            if (resultSet.next()) {
+                int postedBy = resultSet.getInt("posted_by");
+                long timePostedEpoch = resultSet.getLong("time_posted_epoch");
+                return new Message(messageId, postedBy, resultSet.getString("message_text"), timePostedEpoch);
+            }
+        } catch (SQLException e) {
+            Metrics.recordDaoError("MessageDAO.updateMessageTextReturning");
+            e.printStackTrace();
+        } finally {
+            Metrics.recordDao("MessageDAO.updateMessageTextReturning", start);
+            try {
+                if (connection != null) {
+                    connection.close(); // Close the connection
+                }
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        }
+        return null;
+    }
 }
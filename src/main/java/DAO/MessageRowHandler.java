@@ -0,0 +1,12 @@
+package DAO;
+
+import java.io.IOException;
+
+/**
+ * Receives message rows one at a time as they are read from a ResultSet, without a Message object being built
+ * for each row. Used to stream large listings straight to the response.
+ */
+@FunctionalInterface
+public interface MessageRowHandler {
+    void onRow(int messageId, int postedBy, String messageText, long timePostedEpoch) throws IOException;
+}
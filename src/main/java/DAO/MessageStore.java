@@ -0,0 +1,95 @@
+package DAO;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import Model.Message;
+import Util.DbExecutor;
+
+/**
+ * The message operations MessageService relies on. MessageDAO implements them with JDBC against H2.
+ * ColumnarMessageStore keeps a copy in memory but writes through to H2, which stays its system of record;
+ * SegmentLogMessageStore imports the table once and from then on its segment files are the system of record, with
+ * the message table no longer written. MessageStores picks one at startup.
+ *
+ * Listings are returned in message_id order. A failed write returns null (or false), as MessageDAO always has.
+ */
+public interface MessageStore {
+
+    // Returns the group commit writer behind addMessage, or null if inserts are not group committed
+    GroupCommitWriter getGroupCommitWriter();
+
+    Message addMessage(Message message);
+
+    // Adds a message and completes with what addMessage returns. Stores that commit inserts on a thread of their own
+    // override this so no thread waits on the commit; the default runs addMessage on executor.
+    default CompletableFuture<Message> addMessageAsync(Message message, Executor executor) {
+        return DbExecutor.supplyAsync(() -> addMessage(message), executor);
+    }
+
+    // Adds all the messages in one transaction; returns them with their generated IDs, or null if none was stored
+    List<Message> addMessages(List<Message> newMessages);
+
+    List<Message> getAllMessages();
+
+    Message getMessageById(int messageId);
+
+    // The messages with the given ascending IDs, in that order, skipping IDs with no message; null if the lookup
+    // failed. Stores that answer getMessageById from memory can keep this default.
+    default List<Message> getMessagesByIds(int[] messageIds) {
+        List<Message> messages = new ArrayList<>(messageIds.length);
+        for (int messageId : messageIds) {
+            Message message = getMessageById(messageId);
+            if (message != null) {
+                messages.add(message);
+            }
+        }
+        return messages;
+    }
+
+    List<Message> getMessagesByUser(int userId);
+
+    // Up to limit messages with a message_id greater than afterMessageId
+    List<Message> getMessagesAfter(int afterMessageId, int limit);
+
+    // Up to limit messages by userId with a message_id greater than afterMessageId
+    List<Message> getMessagesByUserAfter(int userId, int afterMessageId, int limit);
+
+    // Up to limit messages with fromEpoch <= time_posted_epoch < untilEpoch, in (time_posted_epoch, message_id)
+    // order, leaving out the ones at fromEpoch with a message_id of afterMessageId or less. The default scans every
+    // message, which only suits stores that hold them in memory.
+    default List<Message> getMessagesInTimeRange(long fromEpoch, int afterMessageId, long untilEpoch, int limit) {
+        List<Message> messages = new ArrayList<>();
+        for (Message message : getAllMessages()) {
+            long epoch = message.getTime_posted_epoch();
+            if (epoch >= fromEpoch && epoch < untilEpoch
+                    && (epoch > fromEpoch || message.getMessage_id() > afterMessageId)) {
+                messages.add(message);
+            }
+        }
+        messages.sort(Comparator.comparingLong(Message::getTime_posted_epoch)
+                .thenComparingInt(Message::getMessage_id));
+        return messages.size() > limit ? new ArrayList<>(messages.subList(0, limit)) : messages;
+    }
+
+    // Streams every message to the handler without materializing the list; returns the number of rows. Throws
+    // IOException if the handler does or the read fails part way
+    int streamAllMessages(MessageRowHandler handler) throws IOException;
+
+    int streamMessagesByUser(int userId, MessageRowHandler handler) throws IOException;
+
+    boolean deleteMessage(int messageId);
+
+    // Deletes the message and returns what it held, or null if there was none
+    Message deleteMessageReturning(int messageId);
+
+    // Sets the text of the message with updatedMessage's ID
+    Message updateMessage(Message updatedMessage);
+
+    // Sets the text and returns the full updated message, or null if there was none
+    Message updateMessageTextReturning(int messageId, String messageText);
+}
@@ -0,0 +1,52 @@
+package DAO;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+
+/**
+ * Chooses the MessageStore behind MessageService from -Dmessages.store:
+ *   jdbc      MessageDAO, every call a query against H2 (the default)
+ *   columnar  ColumnarMessageStore, reads from memory and writes through to H2, without group commit
+ *   segment   SegmentLogMessageStore, memory-mapped segment files in -Dmessages.segment.dir; on the first start the
+ *             existing H2 messages are copied in
+ */
+public class MessageStores {
+
+    private static final String SEGMENT_DIR = System.getProperty("messages.segment.dir", "./h2/segments");
+    private static final int SEGMENT_SIZE_MB = Integer.getInteger("messages.segment.sizeMB", 64);
+    private static final boolean SEGMENT_FSYNC = Boolean.getBoolean("messages.segment.fsync");
+    private static final double SEGMENT_COMPACT_LIVE_RATIO =
+            Double.parseDouble(System.getProperty("messages.segment.compactLiveRatio", "0.5"));
+    private static final long SEGMENT_COMPACT_INTERVAL_MILLIS =
+            Long.getLong("messages.segment.compactIntervalMillis", 10_000L);
+
+    private MessageStores() {
+    }
+
+    public static MessageStore fromSystemProperties() {
+        String store = System.getProperty("messages.store", "jdbc");
+        switch (store) {
+            case "jdbc":
+                return new MessageDAO();
+            case "columnar":
+                // Group commit would gain nothing behind the store's write lock, so it is always off here
+                return new ColumnarMessageStore(new MessageDAO(false));
+            case "segment":
+                return openSegmentLog();
+            default:
+                throw new IllegalArgumentException("Unknown messages.store: " + store);
+        }
+    }
+
+    private static SegmentLogMessageStore openSegmentLog() {
+        try {
+            SegmentLogMessageStore store = new SegmentLogMessageStore(Paths.get(SEGMENT_DIR), SEGMENT_SIZE_MB << 20,
+                    SEGMENT_FSYNC, SEGMENT_COMPACT_LIVE_RATIO, SEGMENT_COMPACT_INTERVAL_MILLIS);
+            store.importFrom(new MessageDAO(false));
+            return store;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open the message segments in " + SEGMENT_DIR, e);
+        }
+    }
+}
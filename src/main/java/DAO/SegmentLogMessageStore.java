@@ -0,0 +1,755 @@
+package DAO;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+import Model.Message;
+import Util.Metrics;
+
+/**
+ * Keeps the messages in memory-mapped, append-only segment files instead of H2. Every write appends a record to
+ * the active segment: a PUT holding the whole message for an insert or an overwrite, a TOMBSTONE for a delete.
+ * Records are never changed in place, so an insert is a copy into mapped memory and an index update, with no
+ * JDBC round trip, and a read decodes the record straight from the mapping.
+ *
+ * Record layout, big-endian, each followed by the next at the following byte:
+ *   int length | byte type | int message_id | int posted_by | long time_posted_epoch | short text length |
+ *   UTF-8 text | int CRC32 of everything from type to the end of the text
+ * A segment starts with a header: magic, format version, and the next message_id at the time it was created.
+ *
+ * The index maps message_id to the segment and offset of the message's latest PUT. It is an array indexed by
+ * message_id, as ids are dense, and is rebuilt at startup by scanning every segment in order, later records
+ * winning. A scan stops at the first record that is zero, truncated or fails its CRC, which is where a crash
+ * interrupted the last write; the rest of that segment is zeroed so the bytes of an earlier run cannot be read
+ * back as records after the next crash. Writes are only as durable as the page cache unless fsync is on, in
+ * which case each write forces its segment to disk before returning.
+ *
+ * Writes are serialized on one lock. Reads take none: a record is written in full before its index entry is
+ * published with release semantics, and readers load entries with acquire semantics.
+ *
+ * Overwritten and deleted records are dead space. A background thread compacts sealed segments whose live share
+ * has dropped below compactLiveRatio: their live records are appended again to the active segment, the index is
+ * pointed at the copies, and the old file is deleted. A tombstone is carried forward only while an older segment
+ * still holds a PUT for its message, and its copy counts as live, so a segment of such tombstones is not rewritten
+ * on every pass. A crash during compaction leaves both copies, and recovery keeps the later one. The originals may have been on disk already, so the copies are forced to disk, and the directory
+ * synced after the delete, whether or not fsync is on.
+ */
+public class SegmentLogMessageStore implements MessageStore, AutoCloseable {
+
+    private static final int MAGIC = 0x4D534731;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+    private static final byte PUT = 1;
+    private static final byte TOMBSTONE = 2;
+    // length, type, message_id, posted_by, time_posted_epoch, text length and CRC around the text
+    private static final int RECORD_OVERHEAD = 4 + 1 + 4 + 4 + 8 + 2 + 4;
+    private static final int MAX_TEXT_BYTES = 0xFFFF;
+    private static final String SEGMENT_PREFIX = "messages-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final VarHandle LOCATIONS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private final Path directory;
+    private final int segmentSize;
+    private final boolean fsync;
+    private final double compactLiveRatio;
+    private final Object writeLock = new Object();
+
+    // Segments by number; a compacted segment's slot is cleared. Replaced by a longer copy when full.
+    private volatile Segment[] segments = new Segment[16];
+    // Location of each message_id's latest PUT as (segment number + 1) << 32 | offset, 0 if there is none
+    private volatile long[] locations = new long[1024];
+    // Highest message_id ever handed out
+    private volatile int maxMessageId;
+
+    // Writer state, only touched while holding writeLock
+    private Segment active;
+    private int nextMessageId = 1;
+    private int liveMessages;
+    private final CRC32 crc = new CRC32();
+
+    private final AtomicLong compactedSegments = new AtomicLong();
+    private final Thread compactor;
+    private volatile boolean running = true;
+    // Released by close() to wake the compactor out of its sleep
+    private final CountDownLatch closed = new CountDownLatch(1);
+
+    public SegmentLogMessageStore(Path directory, int segmentSize, boolean fsync, double compactLiveRatio,
+                                  long compactIntervalMillis) throws IOException {
+        if (segmentSize < HEADER_SIZE + RECORD_OVERHEAD + MAX_TEXT_BYTES) {
+            throw new IllegalArgumentException("segmentSize too small for the largest record: " + segmentSize);
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.fsync = fsync;
+        this.compactLiveRatio = compactLiveRatio;
+        Files.createDirectories(directory);
+        synchronized (writeLock) {
+            recover();
+        }
+        if (compactIntervalMillis > 0) {
+            compactor = new Thread(() -> compactLoop(compactIntervalMillis), "SegmentLogCompactor");
+            compactor.setDaemon(true);
+            compactor.start();
+        } else {
+            compactor = null;
+        }
+    }
+
+    /**
+     * Copies every message of source into an empty store, keeping their message_ids; used to move an existing
+     * table over on the first start. Does nothing if the store already holds records.
+     * @return the number of messages copied
+     */
+    public int importFrom(MessageStore source) throws IOException {
+        synchronized (writeLock) {
+            if (maxMessageId > 0 || active.position > HEADER_SIZE || segmentCount() > 1) {
+                return 0;
+            }
+            int copied = source.streamAllMessages((messageId, postedBy, messageText, timePostedEpoch) -> {
+                append(PUT, messageId, postedBy, messageText, timePostedEpoch);
+                nextMessageId = Math.max(nextMessageId, messageId + 1);
+            });
+            force(active);
+            return copied;
+        }
+    }
+
+    @Override
+    public GroupCommitWriter getGroupCommitWriter() {
+        return null;
+    }
+
+    @Override
+    public Message addMessage(Message message) {
+        long start = System.nanoTime();
+        try {
+            synchronized (writeLock) {
+                int messageId = nextMessageId++;
+                append(PUT, messageId, message.getPosted_by(), message.getMessage_text(),
+                        message.getTime_posted_epoch());
+                force(active);
+                return new Message(messageId, message.getPosted_by(), message.getMessage_text(),
+                        message.getTime_posted_epoch());
+            }
+        } finally {
+            Metrics.recordDao("SegmentLogMessageStore.addMessage", start);
+        }
+    }
+
+    @Override
+    public List<Message> addMessages(List<Message> newMessages) {
+        long start = System.nanoTime();
+        List<Message> added = new ArrayList<>(newMessages.size());
+        try {
+            synchronized (writeLock) {
+                for (Message message : newMessages) {
+                    int messageId = nextMessageId++;
+                    append(PUT, messageId, message.getPosted_by(), message.getMessage_text(),
+                            message.getTime_posted_epoch());
+                    added.add(new Message(messageId, message.getPosted_by(), message.getMessage_text(),
+                            message.getTime_posted_epoch()));
+                }
+                force(active);
+            }
+        } finally {
+            Metrics.recordDao("SegmentLogMessageStore.addMessages", start);
+        }
+        return added;
+    }
+
+    @Override
+    public boolean deleteMessage(int messageId) {
+        return deleteMessageReturning(messageId) != null;
+    }
+
+    @Override
+    public Message deleteMessageReturning(int messageId) {
+        long start = System.nanoTime();
+        try {
+            synchronized (writeLock) {
+                Message deleted = read(messageId);
+                if (deleted != null) {
+                    append(TOMBSTONE, messageId, deleted.getPosted_by(), "", deleted.getTime_posted_epoch());
+                    force(active);
+                }
+                return deleted;
+            }
+        } finally {
+            Metrics.recordDao("SegmentLogMessageStore.deleteMessageReturning", start);
+        }
+    }
+
+    // Like MessageDAO, answers with the message as given, whether or not its message_id exists
+    @Override
+    public Message updateMessage(Message updatedMessage) {
+        updateMessageTextReturning(updatedMessage.getMessage_id(), updatedMessage.getMessage_text());
+        return new Message(updatedMessage.getMessage_id(), updatedMessage.getPosted_by(),
+                updatedMessage.getMessage_text(), updatedMessage.getTime_posted_epoch());
+    }
+
+    @Override
+    public Message updateMessageTextReturning(int messageId, String messageText) {
+        long start = System.nanoTime();
+        try {
+            synchronized (writeLock) {
+                Message current = read(messageId);
+                if (current == null) {
+                    return null;
+                }
+                append(PUT, messageId, current.getPosted_by(), messageText, current.getTime_posted_epoch());
+                force(active);
+                return new Message(messageId, current.getPosted_by(), messageText, current.getTime_posted_epoch());
+            }
+        } finally {
+            Metrics.recordDao("SegmentLogMessageStore.updateMessageTextReturning", start);
+        }
+    }
+
+    @Override
+    public Message getMessageById(int messageId) {
+        long start = System.nanoTime();
+        Message message = read(messageId);
+        Metrics.recordDao("SegmentLogMessageStore.getMessageById", start);
+        return message;
+    }
+
+    @Override
+    public List<Message> getAllMessages() {
+        List<Message> messages = new ArrayList<>();
+        scan(null, 0, Integer.MAX_VALUE, (messageId, postedBy, messageText, timePostedEpoch) ->
+                messages.add(new Message(messageId, postedBy, messageText, timePostedEpoch)));
+        return messages;
+    }
+
+    @Override
+    public List<Message> getMessagesByUser(int userId) {
+        List<Message> messages = new ArrayList<>();
+        scan(userId, 0, Integer.MAX_VALUE, (messageId, postedBy, messageText, timePostedEpoch) ->
+                messages.add(new Message(messageId, postedBy, messageText, timePostedEpoch)));
+        return messages;
+    }
+
+    @Override
+    public List<Message> getMessagesAfter(int afterMessageId, int limit) {
+        List<Message> messages = new ArrayList<>();
+        scan(null, afterMessageId, limit, (messageId, postedBy, messageText, timePostedEpoch) ->
+                messages.add(new Message(messageId, postedBy, messageText, timePostedEpoch)));
+        return messages;
+    }
+
+    @Override
+    public List<Message> getMessagesByUserAfter(int userId, int afterMessageId, int limit) {
+        List<Message> messages = new ArrayList<>();
+        scan(userId, afterMessageId, limit, (messageId, postedBy, messageText, timePostedEpoch) ->
+                messages.add(new Message(messageId, postedBy, messageText, timePostedEpoch)));
+        return messages;
+    }
+
+    @Override
+    public int streamAllMessages(MessageRowHandler handler) throws IOException {
+        return scanChecked(null, 0, Integer.MAX_VALUE, handler);
+    }
+
+    @Override
+    public int streamMessagesByUser(int userId, MessageRowHandler handler) throws IOException {
+        return scanChecked(userId, 0, Integer.MAX_VALUE, handler);
+    }
+
+    // Messages currently stored
+    public int getLiveMessageCount() {
+        synchronized (writeLock) {
+            return liveMessages;
+        }
+    }
+
+    public int getSegmentCount() {
+        synchronized (writeLock) {
+            return segmentCount();
+        }
+    }
+
+    // Bytes of records written to the segments that still exist, dead ones included
+    public long getUsedBytes() {
+        synchronized (writeLock) {
+            long used = 0;
+            for (Segment segment : segments) {
+                if (segment != null) {
+                    used += segment.position - HEADER_SIZE;
+                }
+            }
+            return used;
+        }
+    }
+
+    // Bytes of records that are the latest PUT of a stored message, or a tombstone compaction had to keep
+    public long getLiveBytes() {
+        synchronized (writeLock) {
+            long live = 0;
+            for (Segment segment : segments) {
+                if (segment != null) {
+                    live += segment.liveBytes;
+                }
+            }
+            return live;
+        }
+    }
+
+    public long getCompactedSegmentCount() {
+        return compactedSegments.get();
+    }
+
+    /**
+     * Compacts every sealed segment whose live share is below compactLiveRatio. Called by the background thread;
+     * public so a caller can force a pass.
+     * @return the number of segments compacted
+     */
+    public int compact() throws IOException {
+        int compacted = 0;
+        Segment[] current = segments;
+        for (int number = 0; number < current.length; number++) {
+            synchronized (writeLock) {
+                if (!running) {
+                    break;
+                }
+                Segment segment = segments[number];
+                if (segment == null || segment == active) {
+                    continue;
+                }
+                long used = segment.position - HEADER_SIZE;
+                if (used > 0 && segment.liveBytes >= used * compactLiveRatio) {
+                    continue;
+                }
+                compact(segment);
+                compacted++;
+            }
+        }
+        return compacted;
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        closed.countDown();
+        if (compactor != null) {
+            // A pass in progress stops at its next segment; one that has not taken the lock yet sees running and
+            // does nothing, so no pass touches the segments once they are closed below
+            try {
+                compactor.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (writeLock) {
+            for (Segment segment : segments) {
+                if (segment != null) {
+                    segment.buffer.force();
+                    segment.channel.close();
+                }
+            }
+        }
+    }
+
+    // Rebuilds the index from the segment files, oldest first, and opens the segment to append to
+    private void recover() throws IOException {
+        TreeMap<Integer, Path> files = new TreeMap<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory,
+                SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : stream) {
+                String name = file.getFileName().toString();
+                files.put(Integer.parseInt(name.substring(SEGMENT_PREFIX.length(),
+                        name.length() - SEGMENT_SUFFIX.length())), file);
+            }
+        }
+        Segment last = null;
+        for (Map.Entry<Integer, Path> file : files.entrySet()) {
+            Segment segment = Segment.open(file.getValue(), file.getKey(), segmentSize);
+            if (segment.buffer.getInt(0) != MAGIC || segment.buffer.getInt(4) != VERSION) {
+                throw new IOException("Not a message segment: " + file.getValue());
+            }
+            putSegment(segment);
+            nextMessageId = Math.max(nextMessageId, segment.buffer.getInt(8));
+            replay(segment);
+            last = segment;
+        }
+        if (last == null || last.position + RECORD_OVERHEAD + MAX_TEXT_BYTES > last.capacity) {
+            last = createSegment(last == null ? 0 : last.number + 1);
+        }
+        active = last;
+    }
+
+    // Applies the segment's records to the index up to the first one that is missing or damaged, and zeroes
+    // everything after it
+    private void replay(Segment segment) {
+        ByteBuffer buffer = segment.buffer;
+        int position = HEADER_SIZE;
+        while (position + RECORD_OVERHEAD <= segment.capacity) {
+            int length = buffer.getInt(position);
+            if (length < RECORD_OVERHEAD || position + length > segment.capacity
+                    || length != RECORD_OVERHEAD + Short.toUnsignedInt(buffer.getShort(position + 21))
+                    || buffer.getInt(position + length - 4) != checksum(buffer, position, length)) {
+                break;
+            }
+            byte type = buffer.get(position + 4);
+            int messageId = buffer.getInt(position + 5);
+            if (type == PUT) {
+                setLocation(messageId, segment, position, length);
+            } else {
+                clearLocation(messageId);
+            }
+            nextMessageId = Math.max(nextMessageId, messageId + 1);
+            position += length;
+        }
+        segment.position = position;
+        for (int i = position; i < segment.capacity; i++) {
+            if (buffer.get(i) != 0) {
+                buffer.put(i, (byte) 0);
+            }
+        }
+        maxMessageId = nextMessageId - 1;
+    }
+
+    // Called with writeLock held. Appends a record to the active segment, rolling over to a new one when it is full,
+    // and points the index at it.
+    private void append(byte type, int messageId, int postedBy, String messageText, long timePostedEpoch) {
+        byte[] text = messageText.getBytes(StandardCharsets.UTF_8);
+        if (text.length > MAX_TEXT_BYTES) {
+            throw new IllegalArgumentException("message_text longer than " + MAX_TEXT_BYTES + " bytes");
+        }
+        int length = RECORD_OVERHEAD + text.length;
+        try {
+            if (active.position + length > active.capacity) {
+                force(active);
+                active = createSegment(active.number + 1);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        Segment segment = active;
+        ByteBuffer buffer = segment.buffer;
+        int position = segment.position;
+        buffer.put(position + 4, type);
+        buffer.putInt(position + 5, messageId);
+        buffer.putInt(position + 9, postedBy);
+        buffer.putLong(position + 13, timePostedEpoch);
+        buffer.putShort(position + 21, (short) text.length);
+        for (int i = 0; i < text.length; i++) {
+            buffer.put(position + 23 + i, text[i]);
+        }
+        buffer.putInt(position + length - 4, checksum(buffer, position, length));
+        // The length goes in last: until it is there, a scan sees the end of the log at this position
+        buffer.putInt(position, length);
+        segment.position = position + length;
+        if (type == PUT) {
+            setLocation(messageId, segment, position, length);
+        } else {
+            clearLocation(messageId);
+        }
+        if (messageId > maxMessageId) {
+            maxMessageId = messageId;
+        }
+    }
+
+    private void setLocation(int messageId, Segment segment, int position, int length) {
+        long[] index = locations;
+        if (messageId >= index.length) {
+            index = Arrays.copyOf(index, Math.max(messageId + 1, index.length + (index.length >> 1)));
+            locations = index;
+        }
+        long previous = (long) LOCATIONS.getAcquire(index, messageId);
+        if (previous != 0) {
+            release(previous);
+        } else {
+            liveMessages++;
+        }
+        segment.liveBytes += length;
+        LOCATIONS.setRelease(index, messageId, (long) (segment.number + 1) << 32 | position);
+    }
+
+    private void clearLocation(int messageId) {
+        long[] index = locations;
+        if (messageId < index.length) {
+            long previous = (long) LOCATIONS.getAcquire(index, messageId);
+            if (previous != 0) {
+                release(previous);
+                liveMessages--;
+                LOCATIONS.setRelease(index, messageId, 0L);
+            }
+        }
+    }
+
+    // The record at location is no longer live
+    private void release(long location) {
+        Segment segment = segments[(int) (location >>> 32) - 1];
+        segment.liveBytes -= segment.buffer.getInt((int) location);
+    }
+
+    // Called with writeLock held. Moves the segment's live records to the active segment and deletes its file.
+    private void compact(Segment segment) throws IOException {
+        Set<Integer> shadowed = putsInOlderSegments(segment);
+        int firstTarget = active.number;
+        ByteBuffer buffer = segment.buffer;
+        int position = HEADER_SIZE;
+        while (position < segment.position) {
+            int length = buffer.getInt(position);
+            byte type = buffer.get(position + 4);
+            int messageId = buffer.getInt(position + 5);
+            long location = (long) (segment.number + 1) << 32 | position;
+            boolean live = type == PUT && messageId < locations.length
+                    && (long) LOCATIONS.getAcquire(locations, messageId) == location;
+            boolean needed = type == TOMBSTONE && shadowed.contains(messageId);
+            if (live || needed) {
+                String text = decodeText(buffer, position);
+                append(type, messageId, buffer.getInt(position + 9), text, buffer.getLong(position + 13));
+                if (needed) {
+                    active.liveBytes += length;
+                }
+            }
+            position += length;
+        }
+        // The copies may have rolled over into new segments; all of them go to disk before the original is deleted
+        for (int number = firstTarget; number <= active.number; number++) {
+            if (segments[number] != null) {
+                segments[number].buffer.force();
+            }
+        }
+        Segment[] table = segments;
+        table[segment.number] = null;
+        segments = table;
+        segment.channel.close();
+        Files.deleteIfExists(segment.file);
+        syncDirectory();
+        compactedSegments.incrementAndGet();
+    }
+
+    // Called with writeLock held. The ids of the segment's tombstones that an older segment still holds a PUT for;
+    // without the tombstone, recovery would bring that PUT back.
+    private Set<Integer> putsInOlderSegments(Segment segment) {
+        Set<Integer> tombstones = new HashSet<>();
+        ByteBuffer buffer = segment.buffer;
+        for (int position = HEADER_SIZE; position < segment.position; position += buffer.getInt(position)) {
+            if (buffer.get(position + 4) == TOMBSTONE) {
+                tombstones.add(buffer.getInt(position + 5));
+            }
+        }
+        Set<Integer> shadowed = new HashSet<>();
+        for (int number = 0; number < segment.number && !tombstones.isEmpty(); number++) {
+            Segment older = segments[number];
+            if (older == null) {
+                continue;
+            }
+            ByteBuffer olderBuffer = older.buffer;
+            for (int position = HEADER_SIZE; position < older.position; position += olderBuffer.getInt(position)) {
+                int messageId = olderBuffer.getInt(position + 5);
+                if (olderBuffer.get(position + 4) == PUT && tombstones.remove(messageId)) {
+                    shadowed.add(messageId);
+                }
+            }
+        }
+        return shadowed;
+    }
+
+    private void compactLoop(long intervalMillis) {
+        while (running) {
+            try {
+                if (closed.await(intervalMillis, TimeUnit.MILLISECONDS)) {
+                    return;
+                }
+                compact();
+            } catch (InterruptedException e) {
+                return;
+            } catch (IOException | RuntimeException e) {
+                Metrics.recordError("segment_compaction_failed");
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private Segment createSegment(int number) throws IOException {
+        Path file = directory.resolve(String.format("%s%08d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+        Segment segment = Segment.open(file, number, segmentSize);
+        segment.buffer.putInt(0, MAGIC);
+        segment.buffer.putInt(4, VERSION);
+        segment.buffer.putInt(8, nextMessageId);
+        segment.position = HEADER_SIZE;
+        segment.buffer.force();
+        if (fsync) {
+            syncDirectory();
+        }
+        putSegment(segment);
+        return segment;
+    }
+
+    // Makes the creation and deletion of segment files durable, not just their contents
+    private void syncDirectory() throws IOException {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Windows cannot open a directory as a channel; there the file system does not need it
+            if (!System.getProperty("os.name").startsWith("Windows")) {
+                throw e;
+            }
+        }
+    }
+
+    private void putSegment(Segment segment) {
+        Segment[] table = segments;
+        if (segment.number >= table.length) {
+            table = Arrays.copyOf(table, Math.max(segment.number + 1, table.length * 2));
+        }
+        table[segment.number] = segment;
+        segments = table;
+    }
+
+    private int segmentCount() {
+        int count = 0;
+        for (Segment segment : segments) {
+            if (segment != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private void force(Segment segment) {
+        if (fsync) {
+            segment.buffer.force();
+        }
+    }
+
+    // The latest version of the message, or null. A location can point into a segment that compaction has just
+    // removed; the index has been repointed by then, so it is read again.
+    private Message read(int messageId) {
+        while (true) {
+            long[] index = locations;
+            if (messageId <= 0 || messageId >= index.length) {
+                return null;
+            }
+            long location = (long) LOCATIONS.getAcquire(index, messageId);
+            if (location == 0) {
+                return null;
+            }
+            Segment segment = segments[(int) (location >>> 32) - 1];
+            if (segment == null) {
+                continue;
+            }
+            int position = (int) location;
+            ByteBuffer buffer = segment.buffer;
+            return new Message(messageId, buffer.getInt(position + 9), decodeText(buffer, position),
+                    buffer.getLong(position + 13));
+        }
+    }
+
+    // Hands the stored messages with a message_id above afterMessageId, only userId's if given, to the handler in
+    // message_id order, stopping after limit
+    private int scanChecked(Integer userId, int afterMessageId, int limit, MessageRowHandler handler)
+            throws IOException {
+        long start = System.nanoTime();
+        int rows = 0;
+        try {
+            int last = maxMessageId;
+            for (int messageId = Math.max(1, afterMessageId + 1); messageId <= last && rows < limit; messageId++) {
+                long[] index = locations;
+                if (messageId >= index.length) {
+                    break;
+                }
+                long location = (long) LOCATIONS.getAcquire(index, messageId);
+                if (location == 0) {
+                    continue;
+                }
+                Segment segment = segments[(int) (location >>> 32) - 1];
+                if (segment == null) {
+                    // Moved by compaction; read the new location
+                    messageId--;
+                    continue;
+                }
+                ByteBuffer buffer = segment.buffer;
+                int position = (int) location;
+                int postedBy = buffer.getInt(position + 9);
+                if (userId != null && postedBy != userId) {
+                    continue;
+                }
+                handler.onRow(messageId, postedBy, decodeText(buffer, position), buffer.getLong(position + 13));
+                rows++;
+            }
+        } finally {
+            Metrics.recordDao("SegmentLogMessageStore.scan", start);
+        }
+        return rows;
+    }
+
+    private int scan(Integer userId, int afterMessageId, int limit, MessageRowHandler handler) {
+        try {
+            return scanChecked(userId, afterMessageId, limit, handler);
+        } catch (IOException e) {
+            // The handlers that build lists never throw
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String decodeText(ByteBuffer buffer, int position) {
+        int length = Short.toUnsignedInt(buffer.getShort(position + 21));
+        byte[] text = new byte[length];
+        for (int i = 0; i < length; i++) {
+            text[i] = buffer.get(position + 23 + i);
+        }
+        return new String(text, StandardCharsets.UTF_8);
+    }
+
+    // CRC32 of the record from its type byte to the end of its text; only called with writeLock held
+    private int checksum(ByteBuffer buffer, int position, int length) {
+        crc.reset();
+        ByteBuffer record = buffer.duplicate();
+        record.limit(position + length - 4).position(position + 4);
+        crc.update(record);
+        return (int) crc.getValue();
+    }
+
+    // One segment file and its mapping. position and liveBytes are only touched while holding writeLock.
+    private static final class Segment {
+        final Path file;
+        final int number;
+        final FileChannel channel;
+        final MappedByteBuffer buffer;
+        final int capacity;
+        int position = HEADER_SIZE;
+        long liveBytes;
+
+        private Segment(Path file, int number, FileChannel channel, MappedByteBuffer buffer) {
+            this.file = file;
+            this.number = number;
+            this.channel = channel;
+            this.buffer = buffer;
+            this.capacity = buffer.capacity();
+        }
+
+        // Maps the file, creating it at size bytes if needed; an existing file keeps its own size
+        static Segment open(Path file, int number, int size) throws IOException {
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            long length = Math.max(channel.size(), size);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+            return new Segment(file, number, channel, buffer);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package Model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * The outcome of one message in a POST /messages/batch request. index is the position of the message in the
+ * request array; exactly one of message (the created message, with its generated id) and error is set.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BatchItemResult {
+    public static final String CREATED = "created";
+    public static final String REJECTED = "rejected";
+
+    private int index;
+    private String status;
+    private Message message;
+    private String error;
+
+    public BatchItemResult() {
+    }
+
+    public static BatchItemResult created(int index, Message message) {
+        BatchItemResult result = new BatchItemResult();
+        result.index = index;
+        result.status = CREATED;
+        result.message = message;
+        return result;
+    }
+
+    public static BatchItemResult rejected(int index, String error) {
+        BatchItemResult result = new BatchItemResult();
+        result.index = index;
+        result.status = REJECTED;
+        result.error = error;
+        return result;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public void setIndex(int index) {
+        this.index = index;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public Message getMessage() {
+        return message;
+    }
+
+    public void setMessage(Message message) {
+        this.message = message;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+}
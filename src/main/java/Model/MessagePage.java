@@ -0,0 +1,28 @@
+package Model;
+
+import java.util.List;
+
+/**
+ * One page of a keyset-paginated message listing. nextCursor is null on the last page.
+ */
+public class MessagePage {
+    private final List<Message> messages;
+    private final String nextCursor;
+
+    public MessagePage(List<Message> messages, String nextCursor) {
+        this.messages = messages;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<Message> getMessages() {
+        return messages;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public boolean hasNext() {
+        return nextCursor != null;
+    }
+}
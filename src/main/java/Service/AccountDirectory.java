@@ -0,0 +1,54 @@
+package Service;
+
+import java.util.BitSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import Model.Account;
+
+/**
+ * In-memory index of every account's username and account_id, used to answer existence checks without a
+ * database round trip. Usernames live in a concurrent hash set; account ids, which are small sequential
+ * integers, live in a BitSet guarded by a read-write lock.
+ *
+ * The directory only knows about accounts it was loaded with or told about through add(). The database stays
+ * the authority: the unique constraint on username still rejects a registration that races with another one.
+ */
+public class AccountDirectory {
+
+    private final Set<String> usernames = ConcurrentHashMap.newKeySet();
+    private final BitSet accountIds = new BitSet();
+    private final ReadWriteLock accountIdsLock = new ReentrantReadWriteLock();
+
+    public void add(Account account) {
+        usernames.add(account.getUsername());
+        accountIdsLock.writeLock().lock();
+        try {
+            accountIds.set(account.getAccount_id());
+        } finally {
+            accountIdsLock.writeLock().unlock();
+        }
+    }
+
+    public boolean containsUsername(String username) {
+        return username != null && usernames.contains(username);
+    }
+
+    public boolean containsAccountId(int accountId) {
+        if (accountId < 0) {
+            return false;
+        }
+        accountIdsLock.readLock().lock();
+        try {
+            return accountIds.get(accountId);
+        } finally {
+            accountIdsLock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        return usernames.size();
+    }
+}
@@ -1,25 +1,55 @@
 package Service;
 
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
 
 import DAO.AccountDAO;
 import Model.Account;
+import Util.DbExecutor;
 
 public class AccountService {
 
     private final AccountDAO accountDAO;
+    // Answers accountExists without a database round trip; loaded once here and kept current by addAccount
+    private final AccountDirectory accountDirectory = new AccountDirectory();
+    // Runs the DAO calls of the *Async methods; null means the shared DbExecutor
+    private final Executor executor;
 
     public AccountService() {
         accountDAO = new AccountDAO();
+        executor = null;
+        loadAccountDirectory();
     }
 
     public AccountService(AccountDAO accountDAO) {
+        this(accountDAO, null);
+    }
+
+    public AccountService(AccountDAO accountDAO, Executor executor) {
         this.accountDAO = accountDAO;
+        this.executor = executor;
+        loadAccountDirectory();
+    }
+
+    private void loadAccountDirectory() {
+        for (Account account : accountDAO.getAllAccountSummaries()) {
+            accountDirectory.add(account);
+        }
     }
 
     public Account addAccount(Account account) {
-        // Inserts a new account into the database via the DAO and returns the added account
-        return accountDAO.insertAccount(account);
+        // Inserts a new account into the database via the DAO and returns the added account, or null if the
+        // database rejected it (e.g. the username was taken by a concurrent registration)
+        Account added = accountDAO.insertAccount(account);
+        if (added != null) {
+            accountDirectory.add(added);
+        }
+        return added;
     }
 
     public List<String> getAllUsernames() {
@@ -41,23 +71,66 @@ public class AccountService {
         return accountDAO.getAccountByUsername(username);
     }
     public Boolean accountExists(String username) {
-        if(accountDAO.accountExists(username)){
-            return true;
-        }
-        return false;
+        // Answered from the in-memory directory
+        return accountDirectory.containsUsername(username);
     }
 
     public Boolean accountExists(int id) {
-        if(accountDAO.accountExists(id)){
-            return true;
-        }
-        return false;
+        // Answered from the in-memory directory
+        return accountDirectory.containsAccountId(id);
     }
 
     public Account getAccountById(int id) {
         return accountDAO.getAccountById(id);
     }
 
-  
-    
+    public Set<Integer> getExistingAccountIds(Collection<Integer> ids) {
+        // Checks a whole set of account ids against the in-memory directory and returns the ones that exist
+        Set<Integer> existing = new HashSet<>();
+        for (Integer id : ids) {
+            if (id != null && accountDirectory.containsAccountId(id)) {
+                existing.add(id);
+            }
+        }
+        return existing;
+    }
+
+    // Asynchronous variants. Database work runs on the executor; checks answered by the in-memory directory
+    // complete immediately on the calling thread.
+
+    public CompletableFuture<Account> addAccountAsync(Account account) {
+        return async(() -> addAccount(account));
+    }
+
+    public CompletableFuture<List<String>> getAllUsernamesAsync() {
+        return async(this::getAllUsernames);
+    }
+
+    public CompletableFuture<Boolean> validateUserAsync(String username, String password) {
+        return async(() -> validateUser(username, password));
+    }
+
+    public CompletableFuture<Account> getAccountByUsernameAsync(String username) {
+        return async(() -> getAccountByUsername(username));
+    }
+
+    public CompletableFuture<Account> getAccountByIdAsync(int id) {
+        return async(() -> getAccountById(id));
+    }
+
+    public CompletableFuture<Boolean> accountExistsAsync(String username) {
+        return CompletableFuture.completedFuture(accountExists(username));
+    }
+
+    public CompletableFuture<Boolean> accountExistsAsync(int id) {
+        return CompletableFuture.completedFuture(accountExists(id));
+    }
+
+    public CompletableFuture<Set<Integer>> getExistingAccountIdsAsync(Collection<Integer> ids) {
+        return CompletableFuture.completedFuture(getExistingAccountIds(ids));
+    }
+
+    private <T> CompletableFuture<T> async(Supplier<T> work) {
+        return DbExecutor.supplyAsync(work, executor != null ? executor : DbExecutor.get());
+    }
 }
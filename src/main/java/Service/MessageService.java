@@ -1,19 +1,208 @@
 package Service;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 
-import DAO.MessageDAO;
+import DAO.GroupCommitWriter;
+import DAO.MessageRowHandler;
+import DAO.MessageStore;
 import Model.Message;
+import Model.MessagePage;
+import Util.CacheStats;
+import Util.DbExecutor;
+import Util.LruCache;
+import Util.Metrics;
+import Util.PageCursor;
+import Util.PageCursor.TimeKey;
+import Util.SingleFlight;
 
 public class MessageService {
-    private final MessageDAO messageDAO;
+    // Page size used when a client sends a cursor without a limit, and the largest limit a client may ask for
+    public static final int DEFAULT_PAGE_SIZE = 100;
+    public static final int MAX_PAGE_SIZE = 1000;
 
-    public MessageService() {
-        this.messageDAO = new MessageDAO();
+    // Number of messages kept by the getMessageById cache; override with -Dmessages.cache.maxSize
+    private static final int MESSAGE_CACHE_SIZE = Integer.getInteger("messages.cache.maxSize", 10_000);
+    // Share one in-flight DAO call between concurrent identical reads; turn off with -Dmessages.singleFlight=false
+    private static final boolean SINGLE_FLIGHT_ENABLED =
+            Boolean.parseBoolean(System.getProperty("messages.singleFlight", "true"));
+    // Resolve per-account listings through an in-memory TimelineIndex; turn off with -Dmessages.timelineIndex=false
+    private static final boolean TIMELINE_INDEX_ENABLED =
+            Boolean.parseBoolean(System.getProperty("messages.timelineIndex", "true"));
+    // Message IDs resolved, and bodies fetched in one store call, per round of a timeline read
+    private static final int TIMELINE_BATCH_SIZE = 1000;
+    // Most recent messages, by time posted, kept in memory for time-range reads; 0 turns the RecentMessagesIndex off
+    private static final int RECENT_INDEX_SIZE = Integer.getInteger("messages.recentIndex.size", 10_000);
+    // Answer searches from an in-memory SearchIndex; turn off with -Dmessages.searchIndex=false to scan the store
+    private static final boolean SEARCH_INDEX_ENABLED =
+            Boolean.parseBoolean(System.getProperty("messages.searchIndex", "true"));
+
+    // In the app, MessageDAO unless -Dmessages.store picks another store; see MessageStores
+    private final MessageStore messageDAO;
+    // message_ids by account, built at startup and kept current by the writes below; null when per-account reads
+    // go to the store
+    private final TimelineIndex timelineIndex;
+    // The newest messages by time_posted_epoch, kept current the same way; null when time ranges go to the store
+    private final RecentMessagesIndex recentIndex;
+    // message_ids by the terms of their text, kept current the same way; null when searches scan the store
+    private final SearchIndex searchIndex;
+    // Updates and deletes of one message hold its lock from the store write until the cache and indexes have the
+    // result, so they see them in commit order. Locks are shared by message_ids with the same low bits.
+    private final Object[] updateLocks = newLocks(64);
+    // Read-through cache of getMessageById results, including misses. Holds private copies of the messages.
+    private final LruCache<Integer, Message> messageCache = new LruCache<>(MESSAGE_CACHE_SIZE);
+    // Runs the DAO calls of the *Async methods; null means the shared DbExecutor
+    private final Executor executor;
+    // Concurrent identical reads of the *Async methods below. Every caller gets its own copy of the shared result.
+    private final SingleFlight<Integer, Message> messageByIdFlights = new SingleFlight<>("getMessageById");
+    private final SingleFlight<Integer, List<Message>> messagesByUserFlights = new SingleFlight<>("getMessagesByUser");
+    private final SingleFlight<UserPageKey, MessagePage> messagesByUserPageFlights =
+            new SingleFlight<>("getMessagesByUserPage");
+
+    // Data versions for conditional GETs, bumped after every successful add, update and delete. Each account has
+    // its own counter; writes that cannot be attributed to an account (the legacy boolean delete and the
+    // whole-message update) bump unattributedVersion, which every account's version includes.
+    private final String versionScope = Long.toString(System.currentTimeMillis(), 36);
+    private final AtomicLong messagesVersion = new AtomicLong();
+    private final AtomicLong unattributedVersion = new AtomicLong();
+    private final ConcurrentHashMap<Integer, AtomicLong> accountVersions = new ConcurrentHashMap<>();
+
+    public MessageService(MessageStore messageDAO, Options options) {
+        this.messageDAO = messageDAO;
+        this.executor = options.executor;
+        this.timelineIndex = options.timelineIndex ? new TimelineIndex() : null;
+        this.recentIndex = options.recentIndexSize > 0 ? new RecentMessagesIndex(options.recentIndexSize) : null;
+        this.searchIndex = options.searchIndex ? new SearchIndex() : null;
+        loadIndexes();
+    }
+
+    // Fills the in-memory indexes from one listing of the store
+    private void loadIndexes() {
+        if (timelineIndex == null && recentIndex == null && searchIndex == null) {
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            messageDAO.streamAllMessages((messageId, postedBy, messageText, timePostedEpoch) -> {
+                if (timelineIndex != null) {
+                    timelineIndex.add(postedBy, messageId);
+                }
+                if (recentIndex != null) {
+                    recentIndex.add(new Message(messageId, postedBy, messageText, timePostedEpoch));
+                }
+                if (searchIndex != null) {
+                    searchIndex.add(messageId, messageText);
+                }
+            });
+        } catch (IOException e) {
+            // The handler never throws, so the store failed to read
+            throw new UncheckedIOException(e);
+        } finally {
+            Metrics.recordDao("MessageService.loadIndexes", start);
+        }
+    }
+
+    public CacheStats getMessageCacheStats() {
+        // Hit ratio, evictions and size of the getMessageById cache
+        return messageCache.getStats();
+    }
+
+    // The per-account index of message_ids, for its memory statistics; null when it is turned off
+    public TimelineIndex getTimelineIndex() {
+        return timelineIndex;
+    }
+
+    // The index of recent messages, for its hit and size statistics; null when it is turned off
+    public RecentMessagesIndex getRecentMessagesIndex() {
+        return recentIndex;
+    }
+
+    // The search index, for its size statistics; null when it is turned off
+    public SearchIndex getSearchIndex() {
+        return searchIndex;
+    }
+
+    // The DAO's group commit writer, or null when group commit is off
+    public GroupCommitWriter getGroupCommitWriter() {
+        return messageDAO.getGroupCommitWriter();
+    }
+
+    // Identifies this service's version counters; they restart from zero with a new scope on every startup
+    public String getVersionScope() {
+        return versionScope;
+    }
+
+    // Current version of the whole message table. Read it before reading the data it describes.
+    public long getMessagesVersion() {
+        return messagesVersion.get();
+    }
+
+    // Current version of one account's messages. Read it before reading the data it describes.
+    public long getAccountMessagesVersion(int accountId) {
+        AtomicLong accountVersion = accountVersions.get(accountId);
+        return (accountVersion == null ? 0 : accountVersion.get()) + unattributedVersion.get();
+    }
+
+    private void bumpVersion(int accountId) {
+        accountVersions.computeIfAbsent(accountId, id -> new AtomicLong()).incrementAndGet();
+        messagesVersion.incrementAndGet();
+    }
+
+    private void bumpUnattributedVersion() {
+        unattributedVersion.incrementAndGet();
+        messagesVersion.incrementAndGet();
+    }
+
+    // The single-flight groups, for their coalescing statistics
+    public List<SingleFlight<?, ?>> getSingleFlights() {
+        return List.of(messageByIdFlights, messagesByUserFlights, messagesByUserPageFlights);
+    }
+
+    // Reads that start after a write must not join a flight that may have read the data before it
+    private void forgetFlights(int messageId, int accountId) {
+        messageByIdFlights.forget(messageId);
+        messagesByUserFlights.forget(accountId);
+        messagesByUserPageFlights.forgetIf(key -> key.userId == accountId);
+    }
+
+    // For writes that cannot be attributed to an account
+    private void forgetFlights(int messageId) {
+        messageByIdFlights.forget(messageId);
+        messagesByUserFlights.forgetIf(accountId -> true);
+        messagesByUserPageFlights.forgetIf(key -> true);
+    }
+
+    // Callers are free to modify the messages they get back, so the cache never shares its own instances
+    private static Message copyOf(Message message) {
+        return message == null ? null : new Message(message.getMessage_id(), message.getPosted_by(),
+                message.getMessage_text(), message.getTime_posted_epoch());
+    }
+
+    private static List<Message> copyOf(List<Message> messages) {
+        if (messages == null) {
+            return null;
+        }
+        List<Message> copy = new ArrayList<>(messages.size());
+        for (Message message : messages) {
+            copy.add(copyOf(message));
+        }
+        return copy;
     }
 
-    public MessageService(MessageDAO messageDAO) {
-        this.messageDAO = messageDAO; 
+    private static MessagePage copyOf(MessagePage page) {
+        return new MessagePage(copyOf(page.getMessages()), page.getNextCursor());
     }
 
     public List<Message> getAllMessages() {
@@ -23,26 +212,643 @@ public class MessageService {
 
     public boolean deleteMessage(int messageId) {
         // Deletes a message by its ID and returns true if deletion was successful
-        return messageDAO.deleteMessage(messageId);
+        synchronized (updateLockFor(messageId)) {
+            boolean deleted = messageDAO.deleteMessage(messageId);
+            if (deleted) {
+                messageCache.put(messageId, null);
+                if (timelineIndex != null) {
+                    timelineIndex.remove(messageId);
+                }
+                if (recentIndex != null) {
+                    recentIndex.remove(messageId);
+                }
+                // The text is not known here, so the message's postings stay in the SearchIndex until a search
+                // drops them
+                bumpUnattributedVersion();
+                forgetFlights(messageId);
+            } else {
+                messageCache.invalidate(messageId);
+            }
+            return deleted;
+        }
+    }
+
+    public Message deleteMessageReturning(int messageId) {
+        // Deletes a message by its ID and returns the deleted message, or null if there was none
+        synchronized (updateLockFor(messageId)) {
+            Message deleted = messageDAO.deleteMessageReturning(messageId);
+            if (deleted != null) {
+                messageCache.put(messageId, null);
+                if (timelineIndex != null) {
+                    timelineIndex.remove(deleted.getPosted_by(), messageId);
+                }
+                if (recentIndex != null) {
+                    recentIndex.remove(messageId);
+                }
+                if (searchIndex != null) {
+                    searchIndex.remove(messageId, deleted.getMessage_text());
+                }
+                bumpVersion(deleted.getPosted_by());
+                forgetFlights(messageId, deleted.getPosted_by());
+            } else {
+                messageCache.invalidate(messageId);
+            }
+            return deleted;
+        }
+    }
+
+    public Message updateMessageText(int messageId, String messageText) {
+        // Changes a message's text and returns the updated message, or null if there was none
+        synchronized (updateLockFor(messageId)) {
+            Message updated = messageDAO.updateMessageTextReturning(messageId, messageText);
+            if (updated != null) {
+                messageCache.put(messageId, copyOf(updated));
+                if (recentIndex != null) {
+                    recentIndex.replace(copyOf(updated));
+                }
+                // Postings of terms only the old text had are dropped by the searches that find them
+                if (searchIndex != null) {
+                    searchIndex.add(messageId, messageText);
+                }
+                bumpVersion(updated.getPosted_by());
+                forgetFlights(messageId, updated.getPosted_by());
+            } else {
+                messageCache.invalidate(messageId);
+            }
+            return updated;
+        }
     }
 
     public Message updateMessage(Message updatedMessage) {
         // Updates an existing message and returns true if the update was successful
-        return messageDAO.updateMessage(updatedMessage);
+        int messageId = updatedMessage.getMessage_id();
+        synchronized (updateLockFor(messageId)) {
+            Message result = messageDAO.updateMessage(updatedMessage);
+            messageCache.invalidate(messageId);
+            if (result != null) {
+                // The result echoes the request, so only the text is taken from it
+                if (recentIndex != null) {
+                    recentIndex.replaceText(messageId, updatedMessage.getMessage_text());
+                }
+                if (searchIndex != null) {
+                    searchIndex.add(messageId, updatedMessage.getMessage_text());
+                }
+                bumpUnattributedVersion();
+                forgetFlights(messageId);
+            }
+            return result;
+        }
+    }
+
+    private Object updateLockFor(int messageId) {
+        return updateLocks[messageId & (updateLocks.length - 1)];
+    }
+
+    private static Object[] newLocks(int count) {
+        Object[] locks = new Object[count];
+        for (int i = 0; i < count; i++) {
+            locks[i] = new Object();
+        }
+        return locks;
     }
 
     public List<Message> getMessagesByUser(int userId) {
         // Retrieves all messages posted by a specific user
+        if (timelineIndex != null) {
+            return readTimeline(userId, 0, Integer.MAX_VALUE);
+        }
         return messageDAO.getMessagesByUser(userId);
     }
 
     public Message getMessageById(int messageId) {
-        // Retrieves a message by its ID
-        return messageDAO.getMessageById(messageId);
+        // Retrieves a message by its ID, from the cache when possible
+        return copyOf(messageCache.get(messageId, messageDAO::getMessageById));
     }
 
     public Message addMessage(Message message) {
         // Adds a new message to the database and returns the added message
-        return messageDAO.addMessage(message);
+        return onMessageAdded(messageDAO.addMessage(message));
+    }
+
+    // Brings the cache and indexes up to date with a message the store has added; null if it was not
+    private Message onMessageAdded(Message added) {
+        if (added != null) {
+            messageCache.put(added.getMessage_id(), copyOf(added));
+            if (timelineIndex != null) {
+                timelineIndex.add(added.getPosted_by(), added.getMessage_id());
+            }
+            if (recentIndex != null) {
+                recentIndex.add(copyOf(added));
+            }
+            if (searchIndex != null) {
+                searchIndex.add(added.getMessage_id(), added.getMessage_text());
+            }
+            bumpVersion(added.getPosted_by());
+            forgetFlights(added.getMessage_id(), added.getPosted_by());
+        }
+        return added;
+    }
+
+    public MessagePage getMessagesPage(String cursor, int limit) {
+        // Retrieves one page of all messages in message_id order, resuming after the cursor
+        int afterMessageId = PageCursor.decodeMessageId(cursor);
+        return toPage(messageDAO.getMessagesAfter(afterMessageId, limit + 1), limit);
+    }
+
+    public MessagePage getMessagesByUserPage(int userId, String cursor, int limit) {
+        // Retrieves one page of a user's messages in message_id order, resuming after the cursor
+        int afterMessageId = PageCursor.decodeMessageId(cursor);
+        return toPage(getMessagesByUserAfter(userId, afterMessageId, limit + 1), limit);
+    }
+
+    public MessagePage getMessagesInTimeRange(long since, long until, String cursor, int limit) {
+        // Retrieves one page of the messages posted in [since, until), oldest first, resuming after the cursor
+        TimeKey after = PageCursor.decodeTimeKey(cursor);
+        MessagePage page = getRecentMessagesInTimeRange(since, until, after, limit);
+        return page != null ? page : getStoredMessagesInTimeRange(since, until, after, limit);
+    }
+
+    // The page from the recent messages index, or null if the range reaches back past what it holds
+    private MessagePage getRecentMessagesInTimeRange(long since, long until, TimeKey after, int limit) {
+        if (recentIndex == null) {
+            return null;
+        }
+        long fromEpoch = fromEpoch(since, after);
+        List<Message> messages = recentIndex.getMessagesInTimeRange(fromEpoch, afterMessageId(since, after), until,
+                limit + 1);
+        return messages == null ? null : toTimePage(copyOf(messages), limit);
+    }
+
+    private MessagePage getStoredMessagesInTimeRange(long since, long until, TimeKey after, int limit) {
+        return toTimePage(messageDAO.getMessagesInTimeRange(fromEpoch(since, after), afterMessageId(since, after),
+                until, limit + 1), limit);
+    }
+
+    // A cursor from before since, e.g. after the client moved the range forward, starts the range over
+    private static long fromEpoch(long since, TimeKey after) {
+        return after != null && after.getTimePostedEpoch() >= since ? after.getTimePostedEpoch() : since;
+    }
+
+    private static int afterMessageId(long since, TimeKey after) {
+        return after != null && after.getTimePostedEpoch() >= since ? after.getMessageId() : 0;
+    }
+
+    // Like toPage, with a cursor on the last message's (time_posted_epoch, message_id)
+    private MessagePage toTimePage(List<Message> messages, int limit) {
+        if (messages.size() <= limit) {
+            return new MessagePage(messages, null);
+        }
+        List<Message> page = messages.subList(0, limit);
+        Message last = page.get(limit - 1);
+        return new MessagePage(page, PageCursor.encodeTimeKey(new TimeKey(last.getTime_posted_epoch(),
+                last.getMessage_id())));
+    }
+
+    private List<Message> getMessagesByUserAfter(int userId, int afterMessageId, int limit) {
+        if (timelineIndex != null) {
+            return readTimeline(userId, afterMessageId, limit);
+        }
+        return messageDAO.getMessagesByUserAfter(userId, afterMessageId, limit);
+    }
+
+    // Up to limit of the account's messages after afterMessageId: the IDs come from the timeline index, the bodies
+    // from the message cache, and only the ones it misses from the store
+    private List<Message> readTimeline(int userId, int afterMessageId, int limit) {
+        List<Message> messages = new ArrayList<>(Math.min(limit, timelineIndex.getMessageCount(userId)));
+        while (messages.size() < limit) {
+            int[] messageIds = timelineIndex.getMessageIdsAfter(userId, afterMessageId,
+                    Math.min(limit - messages.size(), TIMELINE_BATCH_SIZE));
+            if (messageIds.length == 0) {
+                break;
+            }
+            for (Message message : loadTimelineMessages(userId, messageIds)) {
+                messages.add(copyOf(message));
+            }
+            afterMessageId = messageIds[messageIds.length - 1];
+        }
+        return messages;
+    }
+
+    // The cached messages for the IDs, in the same order. An ID whose message is known to be gone was deleted while
+    // it was being added to the index, so it is dropped from the index here.
+    private List<Message> loadTimelineMessages(int userId, int[] messageIds) {
+        List<Integer> keys = new ArrayList<>(messageIds.length);
+        for (int messageId : messageIds) {
+            keys.add(messageId);
+        }
+        Map<Integer, Message> found = messageCache.getAll(keys, missing -> fetchMessages(userId, messageIds, missing));
+        List<Message> messages = new ArrayList<>(messageIds.length);
+        for (int messageId : messageIds) {
+            if (!found.containsKey(messageId)) {
+                // The store failed to answer; leave the index alone
+                continue;
+            }
+            Message message = found.get(messageId);
+            if (message == null) {
+                timelineIndex.remove(userId, messageId);
+            } else {
+                messages.add(message);
+            }
+        }
+        return messages;
+    }
+
+    // Loader for the message cache: the missing messages of a timeline batch by ID, fetched in one store call. When
+    // most of the batch is missing, which also keeps the cache from storing it, the account's rows across the
+    // batch's span are read in index order instead of looking up each ID; the cached rows among them go unused.
+    // Rows the index does not hold yet, such as an add that committed but is not indexed, take up places in that
+    // range and can push IDs of the batch past its limit, so those are looked up by ID rather than taken as gone.
+    private Map<Integer, Message> fetchMessages(int userId, int[] batch, List<Integer> missing) {
+        if (missing.size() * 2 <= batch.length) {
+            return fetchMessagesByIds(missing);
+        }
+        int first = missing.get(0);
+        int span = Arrays.binarySearch(batch, missing.get(missing.size() - 1))
+                - Arrays.binarySearch(batch, first) + 1;
+        List<Message> messages = messageDAO.getMessagesByUserAfter(userId, first - 1, span);
+        if (messages == null) {
+            return null;
+        }
+        // A short result reached the end of the account's rows, so it covers every ID from first on
+        int coveredThrough = messages.size() < span ? Integer.MAX_VALUE
+                : messages.get(messages.size() - 1).getMessage_id();
+        Map<Integer, Message> byId = messagesById(messages);
+        List<Integer> uncovered = new ArrayList<>();
+        for (int messageId : missing) {
+            if (messageId > coveredThrough) {
+                uncovered.add(messageId);
+            }
+        }
+        if (!uncovered.isEmpty()) {
+            Map<Integer, Message> rest = fetchMessagesByIds(uncovered);
+            if (rest == null) {
+                return null;
+            }
+            byId.putAll(rest);
+        }
+        return byId;
+    }
+
+    // Loader for the message cache: the missing messages, by ID, fetched in one store call
+    private Map<Integer, Message> fetchMessagesByIds(List<Integer> missing) {
+        int[] messageIds = new int[missing.size()];
+        for (int i = 0; i < messageIds.length; i++) {
+            messageIds[i] = missing.get(i);
+        }
+        return messagesById(messageDAO.getMessagesByIds(messageIds));
+    }
+
+    private static Map<Integer, Message> messagesById(List<Message> messages) {
+        if (messages == null) {
+            return null;
+        }
+        Map<Integer, Message> byId = new HashMap<>(messages.size() * 2);
+        for (Message message : messages) {
+            byId.put(message.getMessage_id(), message);
+        }
+        return byId;
+    }
+
+    public MessagePage searchMessages(String query, String cursor, int limit) {
+        // Retrieves one page of the messages containing every term of the query, most recently posted first
+        List<String> terms = searchTerms(query);
+        int beforeMessageId = beforeMessageId(cursor);
+        return toPage(search(terms, beforeMessageId, limit + 1), limit);
+    }
+
+    // The terms to search for; throws IllegalArgumentException if the query has none
+    private static List<String> searchTerms(String query) {
+        List<String> terms = SearchIndex.terms(query);
+        if (terms.isEmpty()) {
+            throw new IllegalArgumentException("No search terms in query: " + query);
+        }
+        return terms;
+    }
+
+    // Search results run newest first, so their cursor resumes below the message_id it holds
+    private static int beforeMessageId(String cursor) {
+        int messageId = PageCursor.decodeMessageId(cursor);
+        return cursor == null ? Integer.MAX_VALUE : messageId;
+    }
+
+    private List<Message> search(List<String> terms, int beforeMessageId, int limit) {
+        return searchIndex != null ? searchIndexed(terms, beforeMessageId, limit)
+                : searchStore(terms, beforeMessageId, limit);
+    }
+
+    // Candidates come from the index a batch at a time and their bodies from the message cache. A candidate whose
+    // message is gone, or whose text no longer has all the terms, is a stale posting and is dropped from the index.
+    private List<Message> searchIndexed(List<String> terms, int beforeMessageId, int limit) {
+        List<Message> messages = new ArrayList<>();
+        while (messages.size() < limit) {
+            int[] messageIds = searchIndex.getMessageIdsBefore(terms, beforeMessageId,
+                    Math.min(limit - messages.size(), TIMELINE_BATCH_SIZE));
+            if (messageIds.length == 0) {
+                break;
+            }
+            List<Integer> keys = new ArrayList<>(messageIds.length);
+            for (int messageId : messageIds) {
+                keys.add(messageId);
+            }
+            Map<Integer, Message> found = messageCache.getAll(keys, this::fetchMessagesByIds);
+            for (int messageId : messageIds) {
+                if (!found.containsKey(messageId)) {
+                    // The store failed to answer; leave the index alone
+                    continue;
+                }
+                Message message = found.get(messageId);
+                if (message != null && SearchIndex.matches(message.getMessage_text(), terms)) {
+                    messages.add(copyOf(message));
+                    continue;
+                }
+                // The body may have been read before an update that the index has already seen, so it is read
+                // again before deciding which postings are stale
+                Message current = messageCache.get(messageId, messageDAO::getMessageById);
+                List<String> stale = new ArrayList<>(terms);
+                if (current != null) {
+                    stale.removeAll(SearchIndex.terms(current.getMessage_text()));
+                }
+                if (!stale.isEmpty()) {
+                    searchIndex.remove(messageId, stale);
+                    // An update committed after that read may have added one of those terms just before the removal.
+                    // Writers update the cache before the index, so reading again now sees such a text
+                    Message after = messageCache.get(messageId, messageDAO::getMessageById);
+                    if (after != null && after != current) {
+                        List<String> restored = new ArrayList<>(stale);
+                        restored.retainAll(SearchIndex.terms(after.getMessage_text()));
+                        searchIndex.add(messageId, restored);
+                    }
+                }
+                if (stale.isEmpty()) {
+                    messages.add(copyOf(current));
+                }
+            }
+            beforeMessageId = messageIds[messageIds.length - 1];
+        }
+        return messages;
+    }
+
+    // Without the index every message is read and its text tokenized; only the newest limit matches are kept
+    private List<Message> searchStore(List<String> terms, int beforeMessageId, int limit) {
+        ArrayDeque<Message> newest = new ArrayDeque<>();
+        try {
+            messageDAO.streamAllMessages((messageId, postedBy, messageText, timePostedEpoch) -> {
+                if (messageId < beforeMessageId && SearchIndex.matches(messageText, terms)) {
+                    newest.addLast(new Message(messageId, postedBy, messageText, timePostedEpoch));
+                    if (newest.size() > limit) {
+                        newest.removeFirst();
+                    }
+                }
+            });
+        } catch (IOException e) {
+            // The handler never throws, so the store failed to read
+            throw new UncheckedIOException(e);
+        }
+        List<Message> messages = new ArrayList<>(newest.size());
+        newest.descendingIterator().forEachRemaining(messages::add);
+        return messages;
+    }
+
+    // The DAO is asked for one row more than the page size; if that row exists there is a next page
+    private MessagePage toPage(List<Message> messages, int limit) {
+        if (messages.size() <= limit) {
+            return new MessagePage(messages, null);
+        }
+        List<Message> page = messages.subList(0, limit);
+        String nextCursor = PageCursor.encodeMessageId(page.get(limit - 1).getMessage_id());
+        return new MessagePage(page, nextCursor);
+    }
+
+    public int streamAllMessages(MessageRowHandler handler) throws IOException {
+        // Streams every message to the handler row by row
+        return messageDAO.streamAllMessages(handler);
+    }
+
+    public int streamMessagesByUser(int userId, MessageRowHandler handler) throws IOException {
+        // Streams all messages posted by a specific user to the handler row by row, a batch of the timeline at a time
+        // when it is indexed
+        if (timelineIndex == null) {
+            return messageDAO.streamMessagesByUser(userId, handler);
+        }
+        int rows = 0;
+        int afterMessageId = 0;
+        while (true) {
+            int[] messageIds = timelineIndex.getMessageIdsAfter(userId, afterMessageId, TIMELINE_BATCH_SIZE);
+            if (messageIds.length == 0) {
+                return rows;
+            }
+            for (Message message : loadTimelineMessages(userId, messageIds)) {
+                handler.onRow(message.getMessage_id(), message.getPosted_by(), message.getMessage_text(),
+                        message.getTime_posted_epoch());
+                rows++;
+            }
+            afterMessageId = messageIds[messageIds.length - 1];
+        }
+    }
+
+    public List<Message> addMessages(List<Message> messages) {
+        // Adds several messages in one transaction and returns them with their generated IDs, or null on failure
+        List<Message> added = messageDAO.addMessages(messages);
+        if (added != null) {
+            for (Message message : added) {
+                messageCache.put(message.getMessage_id(), copyOf(message));
+                if (timelineIndex != null) {
+                    timelineIndex.add(message.getPosted_by(), message.getMessage_id());
+                }
+                if (recentIndex != null) {
+                    recentIndex.add(copyOf(message));
+                }
+                if (searchIndex != null) {
+                    searchIndex.add(message.getMessage_id(), message.getMessage_text());
+                }
+                bumpVersion(message.getPosted_by());
+                forgetFlights(message.getMessage_id(), message.getPosted_by());
+            }
+        }
+        return added;
+    }
+
+    // Asynchronous variants. Each runs its blocking counterpart on the executor and completes with its result.
+    // The single-message and per-account reads are coalesced: concurrent identical calls share one DAO call.
+
+    public CompletableFuture<List<Message>> getAllMessagesAsync() {
+        return async(this::getAllMessages);
+    }
+
+    public CompletableFuture<Message> getMessageByIdAsync(int messageId) {
+        return coalesce(messageByIdFlights, messageId, () -> getMessageById(messageId))
+                .thenApply(MessageService::copyOf);
+    }
+
+    public CompletableFuture<List<Message>> getMessagesByUserAsync(int userId) {
+        return coalesce(messagesByUserFlights, userId, () -> getMessagesByUser(userId))
+                .thenApply(MessageService::copyOf);
+    }
+
+    public CompletableFuture<Message> addMessageAsync(Message message) {
+        // With group commit on this completes from the writer's future, so no executor thread waits on the commit
+        // and the number of inserts in flight is not capped by the executor's size. What follows the commit, the
+        // response included, is handed back to the executor so it does not hold up the writer's next batch.
+        return messageDAO.addMessageAsync(message, executor()).thenApplyAsync(this::onMessageAdded, afterCommit());
+    }
+
+    // The executor, except that a task it rejects runs on the completing thread: the message is already
+    // committed, so a full queue must not turn it into a failed add
+    private Executor afterCommit() {
+        Executor executor = executor();
+        return task -> {
+            try {
+                executor.execute(task);
+            } catch (RejectedExecutionException e) {
+                task.run();
+            }
+        };
+    }
+
+    public CompletableFuture<List<Message>> addMessagesAsync(List<Message> messages) {
+        return async(() -> addMessages(messages));
+    }
+
+    public CompletableFuture<Message> deleteMessageReturningAsync(int messageId) {
+        return async(() -> deleteMessageReturning(messageId));
+    }
+
+    public CompletableFuture<Message> updateMessageTextAsync(int messageId, String messageText) {
+        return async(() -> updateMessageText(messageId, messageText));
+    }
+
+    public CompletableFuture<MessagePage> getMessagesPageAsync(String cursor, int limit) {
+        // The cursor is decoded up front so an invalid one throws IllegalArgumentException here, not in the future
+        int afterMessageId = PageCursor.decodeMessageId(cursor);
+        return async(() -> toPage(messageDAO.getMessagesAfter(afterMessageId, limit + 1), limit));
+    }
+
+    public CompletableFuture<MessagePage> getMessagesByUserPageAsync(int userId, String cursor, int limit) {
+        int afterMessageId = PageCursor.decodeMessageId(cursor);
+        return coalesce(messagesByUserPageFlights, new UserPageKey(userId, afterMessageId, limit),
+                () -> toPage(getMessagesByUserAfter(userId, afterMessageId, limit + 1), limit))
+                .thenApply(MessageService::copyOf);
+    }
+
+    // Served without leaving the calling thread when the recent messages index holds the range
+    public CompletableFuture<MessagePage> getMessagesInTimeRangeAsync(long since, long until, String cursor,
+                                                                      int limit) {
+        TimeKey after = PageCursor.decodeTimeKey(cursor);
+        MessagePage page = getRecentMessagesInTimeRange(since, until, after, limit);
+        if (page != null) {
+            return CompletableFuture.completedFuture(page);
+        }
+        return async(() -> getStoredMessagesInTimeRange(since, until, after, limit));
+    }
+
+    public CompletableFuture<MessagePage> searchMessagesAsync(String query, String cursor, int limit) {
+        // The query and cursor are checked up front so a bad one throws IllegalArgumentException here
+        List<String> terms = searchTerms(query);
+        int beforeMessageId = beforeMessageId(cursor);
+        return async(() -> toPage(search(terms, beforeMessageId, limit + 1), limit));
+    }
+
+    public CompletableFuture<Integer> streamAllMessagesAsync(MessageRowHandler handler) {
+        // The handler is called on an executor thread; an IOException fails the future with UncheckedIOException
+        return async(() -> {
+            try {
+                return streamAllMessages(handler);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    // Streams are written to one caller's response as they are read, so they are not coalesced
+    public CompletableFuture<Integer> streamMessagesByUserAsync(int userId, MessageRowHandler handler) {
+        return async(() -> {
+            try {
+                return streamMessagesByUser(userId, handler);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private <T> CompletableFuture<T> async(Supplier<T> work) {
+        return DbExecutor.supplyAsync(work, executor());
+    }
+
+    private Executor executor() {
+        return executor != null ? executor : DbExecutor.get();
+    }
+
+    // Runs work on the executor, or joins the identical call already in flight
+    private <K, T> CompletableFuture<T> coalesce(SingleFlight<K, T> flights, K key, Supplier<T> work) {
+        if (!SINGLE_FLIGHT_ENABLED) {
+            return async(work);
+        }
+        return flights.execute(key, () -> async(work));
+    }
+
+    // Identifies one page of one account's messages
+    /**
+     * The executor and in-memory indexes a MessageService is built with. A new Options runs the *Async methods on
+     * the shared DbExecutor and keeps no indexes, so every read goes to the store; fromSystemProperties() turns on
+     * what the -D switches above ask for.
+     */
+    public static final class Options {
+        private Executor executor;
+        private boolean timelineIndex;
+        private int recentIndexSize;
+        private boolean searchIndex;
+
+        public static Options fromSystemProperties() {
+            return new Options().timelineIndex(TIMELINE_INDEX_ENABLED).recentIndexSize(RECENT_INDEX_SIZE)
+                    .searchIndex(SEARCH_INDEX_ENABLED);
+        }
+
+        // Runs the DAO calls of the *Async methods; null means the shared DbExecutor
+        public Options executor(Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        public Options timelineIndex(boolean timelineIndex) {
+            this.timelineIndex = timelineIndex;
+            return this;
+        }
+
+        // Messages kept by the RecentMessagesIndex; 0 leaves it out
+        public Options recentIndexSize(int recentIndexSize) {
+            this.recentIndexSize = recentIndexSize;
+            return this;
+        }
+
+        public Options searchIndex(boolean searchIndex) {
+            this.searchIndex = searchIndex;
+            return this;
+        }
+    }
+
+    private static final class UserPageKey {
+        private final int userId;
+        private final int afterMessageId;
+        private final int limit;
+
+        UserPageKey(int userId, int afterMessageId, int limit) {
+            this.userId = userId;
+            this.afterMessageId = afterMessageId;
+            this.limit = limit;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof UserPageKey)) {
+                return false;
+            }
+            UserPageKey other = (UserPageKey) o;
+            return userId == other.userId && afterMessageId == other.afterMessageId && limit == other.limit;
+        }
+
+        @Override
+        public int hashCode() {
+            return (userId * 31 + afterMessageId) * 31 + limit;
+        }
     }
 }
@@ -0,0 +1,157 @@
+package Service;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import Model.Message;
+import Util.Metrics;
+import Util.PageCursor.TimeKey;
+
+/**
+ * The most recently posted messages, by time_posted_epoch, in a ConcurrentSkipListMap ordered the way the
+ * time-range listings are, so a range that starts inside it is answered without a query.
+ *
+ * At most capacity messages are kept. The index is only complete from its floor up: it holds every message whose
+ * (time_posted_epoch, message_id) is at or above the floor, and none below. Adding past capacity drops the oldest
+ * message and raises the floor to the next one; a message posted with a time below the floor is not added at all.
+ * A range that starts below the floor returns null and the caller goes to the store.
+ *
+ * Reads take no lock. Writers are serialized, and raise the floor before removing what falls below it, so a
+ * reader that checks the floor again after collecting its messages can tell whether the window slid under it.
+ * Writes that only know a message_id find its key in a map kept next to the skip list. Replacements of one message
+ * are applied in the order they are made, so callers make them in commit order; MessageService holds the message's
+ * update lock from the store write until the index has it. Like TimelineIndex, the index only knows what it was
+ * loaded with or told about.
+ */
+public class RecentMessagesIndex {
+
+    private static final TimeKey LOWEST = new TimeKey(Long.MIN_VALUE, Integer.MIN_VALUE);
+
+    private final int capacity;
+    private final ConcurrentSkipListMap<TimeKey, Message> messages = new ConcurrentSkipListMap<>();
+    // The key of every message in the skip list, by message_id
+    private final ConcurrentHashMap<Integer, TimeKey> keys = new ConcurrentHashMap<>();
+    private final Object writeLock = new Object();
+    // Every message at or above the floor is in the map. Starts at the lowest key: an empty table is complete.
+    private volatile TimeKey floor = LOWEST;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public RecentMessagesIndex(int capacity) {
+        this.capacity = capacity;
+    }
+
+    public void add(Message message) {
+        TimeKey key = keyOf(message);
+        synchronized (writeLock) {
+            if (key.compareTo(floor) < 0) {
+                return;
+            }
+            messages.put(key, message);
+            keys.put(message.getMessage_id(), key);
+            if (messages.size() > capacity) {
+                Map.Entry<TimeKey, Message> oldest = messages.firstEntry();
+                floor = messages.higherKey(oldest.getKey());
+                messages.remove(oldest.getKey());
+                keys.remove(oldest.getValue().getMessage_id());
+            }
+        }
+    }
+
+    // Replaces the stored copy of a message whose text changed, if the index holds it
+    public void replace(Message message) {
+        synchronized (writeLock) {
+            TimeKey key = keys.get(message.getMessage_id());
+            if (key != null) {
+                messages.put(key, message);
+            }
+        }
+    }
+
+    // For writes that only know the message_id and the new text
+    public void replaceText(int messageId, String messageText) {
+        synchronized (writeLock) {
+            TimeKey key = keys.get(messageId);
+            if (key != null) {
+                Message stored = messages.get(key);
+                messages.put(key, new Message(messageId, stored.getPosted_by(), messageText,
+                        stored.getTime_posted_epoch()));
+            }
+        }
+    }
+
+    public void remove(int messageId) {
+        synchronized (writeLock) {
+            TimeKey key = keys.remove(messageId);
+            if (key != null) {
+                messages.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Returns up to limit messages in [fromEpoch, untilEpoch) after message afterMessageId at fromEpoch, in
+     * (time_posted_epoch, message_id) order, or null if the range starts below the floor. The messages are the
+     * stored instances, not copies.
+     */
+    public List<Message> getMessagesInTimeRange(long fromEpoch, int afterMessageId, long untilEpoch, int limit) {
+        long start = System.nanoTime();
+        try {
+            TimeKey from = new TimeKey(fromEpoch, afterMessageId);
+            if (from.compareTo(floor) < 0) {
+                misses.incrementAndGet();
+                return null;
+            }
+            List<Message> result = new ArrayList<>(Math.min(limit, 1024));
+            Iterator<Message> iterator = messages.tailMap(from, false).values().iterator();
+            while (result.size() < limit && iterator.hasNext()) {
+                Message message = iterator.next();
+                if (message.getTime_posted_epoch() >= untilEpoch) {
+                    break;
+                }
+                result.add(message);
+            }
+            // Messages removed while we were collecting all sat below the floor they raised
+            if (from.compareTo(floor) < 0) {
+                misses.incrementAndGet();
+                return null;
+            }
+            hits.incrementAndGet();
+            return result;
+        } finally {
+            Metrics.recordDao("RecentMessagesIndex.getMessagesInTimeRange", start);
+        }
+    }
+
+    public int size() {
+        return messages.size();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    // Time-range reads answered from the index
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    // Time-range reads that started below the floor and went to the store
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    // Oldest time_posted_epoch the index is complete from
+    public long getFloorEpoch() {
+        return floor.getTimePostedEpoch();
+    }
+
+    private static TimeKey keyOf(Message message) {
+        return new TimeKey(message.getTime_posted_epoch(), message.getMessage_id());
+    }
+}
@@ -0,0 +1,414 @@
+package Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import Util.Metrics;
+
+/**
+ * In-memory inverted index from the terms of message_text to the message_ids of the messages containing them, so a
+ * search is answered without a LIKE scan and only the matching bodies have to be fetched.
+ *
+ * A term is a maximal run of letters and digits, lower-cased. Each term's posting list holds its message_ids in
+ * ascending order, compressed: the ids are split into blocks, appends filling one to BLOCK_SIZE before starting the
+ * next, the first id of every block is kept in a skip array, and the rest are varint-encoded gaps from the previous
+ * id in the block's own byte array, a byte each for gaps under 128. A search walks the rarest term's blocks from the
+ * newest down, and looks up each candidate in the other terms' lists by binary search over their skip arrays,
+ * decoding one block per lookup.
+ *
+ * Readers take no lock, as in TimelineIndex: each list is an immutable snapshot behind a volatile reference,
+ * appends of a new largest id write into spare capacity past the published length, and an id added out of order
+ * or removed re-encodes only the block it falls in, in a new snapshot sharing the other blocks. That block is split
+ * once it holds more than MAX_BLOCK_SIZE ids and dropped once empty. Writers to the same term are serialized on its
+ * list.
+ *
+ * The lists may hold more than is true. Removing a message needs its text, which a legacy delete or a text update
+ * does not have at hand, so those leave the old postings behind. Callers check the text of what they fetch with
+ * matches() and remove what no longer matches.
+ */
+public class SearchIndex {
+
+    private static final int BLOCK_SIZE = 128;
+    private static final int MAX_BLOCK_SIZE = 2 * BLOCK_SIZE;
+    private static final int[] NO_IDS = new int[0];
+    private static final byte[] NO_BYTES = new byte[0];
+    private static final Snapshot EMPTY = new Snapshot(new byte[0][], NO_IDS, NO_IDS, 0, 0, 0, 0);
+    // Estimated fixed cost of a term's entry with compressed oops: map node, the term's String and its bytes, the
+    // posting list, its snapshot and three array headers
+    private static final int TERM_OVERHEAD_BYTES = 32 + 24 + 24 + 16 + 40 + 3 * 16;
+    // A block's slots in the snapshot's three arrays, and its byte array's header
+    private static final int BLOCK_SLOT_BYTES = 3 * 4;
+    private static final int BLOCK_HEADER_BYTES = 16;
+
+    private final ConcurrentHashMap<String, Postings> postings = new ConcurrentHashMap<>();
+
+    /**
+     * The distinct terms of text, in the order they first appear.
+     */
+    public static List<String> terms(String text) {
+        Set<String> terms = new LinkedHashSet<>();
+        if (text == null) {
+            return new ArrayList<>(terms);
+        }
+        String lower = text.toLowerCase(Locale.ROOT);
+        int start = -1;
+        for (int i = 0; i < lower.length(); ) {
+            int codePoint = lower.codePointAt(i);
+            if (Character.isLetterOrDigit(codePoint)) {
+                if (start < 0) {
+                    start = i;
+                }
+            } else if (start >= 0) {
+                terms.add(lower.substring(start, i));
+                start = -1;
+            }
+            i += Character.charCount(codePoint);
+        }
+        if (start >= 0) {
+            terms.add(lower.substring(start));
+        }
+        return new ArrayList<>(terms);
+    }
+
+    /**
+     * Whether text contains every one of the terms.
+     */
+    public static boolean matches(String text, Collection<String> terms) {
+        return terms(text).containsAll(terms);
+    }
+
+    public void add(int messageId, String text) {
+        add(messageId, terms(text));
+    }
+
+    public void add(int messageId, Collection<String> terms) {
+        for (String term : terms) {
+            postings.computeIfAbsent(term, t -> new Postings()).add(messageId);
+        }
+    }
+
+    public void remove(int messageId, String text) {
+        remove(messageId, terms(text));
+    }
+
+    public void remove(int messageId, Collection<String> terms) {
+        for (String term : terms) {
+            Postings list = postings.get(term);
+            if (list != null) {
+                list.remove(messageId);
+            }
+        }
+    }
+
+    /**
+     * Returns up to limit message_ids below beforeMessageId that are in the lists of all the terms, in descending
+     * order, so the most recently posted messages come first.
+     */
+    public int[] getMessageIdsBefore(Collection<String> terms, int beforeMessageId, int limit) {
+        long start = System.nanoTime();
+        try {
+            if (terms.isEmpty() || limit <= 0) {
+                return NO_IDS;
+            }
+            Snapshot[] lists = new Snapshot[terms.size()];
+            int i = 0;
+            for (String term : terms) {
+                Postings list = postings.get(term);
+                if (list == null || list.snapshot.count == 0) {
+                    return NO_IDS;
+                }
+                lists[i++] = list.snapshot;
+            }
+            // The rarest term drives the search; the others are only probed
+            Arrays.sort(lists, (a, b) -> Integer.compare(a.count, b.count));
+            Probe[] probes = new Probe[lists.length - 1];
+            for (int j = 1; j < lists.length; j++) {
+                probes[j - 1] = new Probe(lists[j]);
+            }
+
+            Snapshot driver = lists[0];
+            int[] found = new int[Math.min(limit, driver.count)];
+            int size = 0;
+            int[] block = new int[MAX_BLOCK_SIZE];
+            for (int b = driver.blockBefore(beforeMessageId); b >= 0 && size < found.length; b--) {
+                int n = driver.decodeBlock(b, block);
+                for (int k = n - 1; k >= 0 && size < found.length; k--) {
+                    int messageId = block[k];
+                    if (messageId < beforeMessageId && containedInAll(probes, messageId)) {
+                        found[size++] = messageId;
+                    }
+                }
+            }
+            return size == found.length ? found : Arrays.copyOf(found, size);
+        } finally {
+            Metrics.recordDao("SearchIndex.getMessageIdsBefore", start);
+        }
+    }
+
+    private static boolean containedInAll(Probe[] probes, int messageId) {
+        for (Probe probe : probes) {
+            if (!probe.contains(messageId)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Messages in the term's list, stale postings included
+    public int getPostingCount(String term) {
+        Postings list = postings.get(term);
+        return list == null ? 0 : list.snapshot.count;
+    }
+
+    public int getTermCount() {
+        return postings.size();
+    }
+
+    public long getPostingCount() {
+        long count = 0;
+        for (Postings list : postings.values()) {
+            count += list.snapshot.count;
+        }
+        return count;
+    }
+
+    // Estimated heap held by the index: each term's fixed overhead plus its arrays, spare capacity included
+    public long getMemoryBytes() {
+        long bytes = 0;
+        for (Postings list : postings.values()) {
+            Snapshot snapshot = list.snapshot;
+            bytes += TERM_OVERHEAD_BYTES + (long) BLOCK_SLOT_BYTES * snapshot.firstIds.length;
+            for (int b = 0; b < snapshot.blockCount; b++) {
+                bytes += BLOCK_HEADER_BYTES + snapshot.blocks[b].length;
+            }
+        }
+        return bytes;
+    }
+
+    private static final class Snapshot {
+        // Per block: the varint gaps after its first message_id, that first id, and the first id's position in the
+        // list. The arrays may have spare capacity past blockCount; so may the last block's bytes past lastLength
+        final byte[][] blocks;
+        final int[] firstIds;
+        final int[] starts;
+        final int blockCount;
+        final int count;
+        final int lastId;
+        final int lastLength;
+
+        Snapshot(byte[][] blocks, int[] firstIds, int[] starts, int blockCount, int count, int lastId,
+                 int lastLength) {
+            this.blocks = blocks;
+            this.firstIds = firstIds;
+            this.starts = starts;
+            this.blockCount = blockCount;
+            this.count = count;
+            this.lastId = lastId;
+            this.lastLength = lastLength;
+        }
+
+        int blockSize(int b) {
+            return (b + 1 < blockCount ? starts[b + 1] : count) - starts[b];
+        }
+
+        // The last block whose first id is below messageId, or -1 if there is none
+        int blockBefore(int messageId) {
+            int index = Arrays.binarySearch(firstIds, 0, blockCount, messageId);
+            return index >= 0 ? index - 1 : -index - 2;
+        }
+
+        // Decodes block b into out and returns how many ids it holds
+        int decodeBlock(int b, int[] out) {
+            int n = blockSize(b);
+            byte[] data = blocks[b];
+            int id = firstIds[b];
+            out[0] = id;
+            int offset = 0;
+            for (int k = 1; k < n; k++) {
+                int gap = 0;
+                int shift = 0;
+                byte current;
+                do {
+                    current = data[offset++];
+                    gap |= (current & 0x7F) << shift;
+                    shift += 7;
+                } while (current < 0);
+                id += gap;
+                out[k] = id;
+            }
+            return n;
+        }
+    }
+
+    // Membership tests against one list for descending ids; keeps the last decoded block, since consecutive
+    // candidates usually fall in the same one
+    private static final class Probe {
+        final Snapshot snapshot;
+        final int[] block = new int[MAX_BLOCK_SIZE];
+        int decoded = -1;
+        int size;
+
+        Probe(Snapshot snapshot) {
+            this.snapshot = snapshot;
+        }
+
+        boolean contains(int messageId) {
+            if (messageId > snapshot.lastId) {
+                return false;
+            }
+            int b = snapshot.blockBefore(messageId + 1);
+            if (b < 0) {
+                return false;
+            }
+            if (b != decoded) {
+                size = snapshot.decodeBlock(b, block);
+                decoded = b;
+            }
+            return Arrays.binarySearch(block, 0, size, messageId) >= 0;
+        }
+    }
+
+    private static final class Postings {
+        volatile Snapshot snapshot = EMPTY;
+
+        synchronized void add(int messageId) {
+            Snapshot current = snapshot;
+            if (current.count == 0 || messageId > current.lastId) {
+                snapshot = append(current, messageId);
+                return;
+            }
+            // Only the block the id falls in is decoded, and an id it already holds changes nothing
+            int b = Math.max(0, current.blockBefore(messageId + 1));
+            int[] ids = new int[MAX_BLOCK_SIZE + 1];
+            int n = current.decodeBlock(b, ids);
+            int index = Arrays.binarySearch(ids, 0, n, messageId);
+            if (index >= 0) {
+                return;
+            }
+            index = -index - 1;
+            System.arraycopy(ids, index, ids, index + 1, n - index);
+            ids[index] = messageId;
+            snapshot = withBlock(current, b, ids, n + 1);
+        }
+
+        synchronized void remove(int messageId) {
+            Snapshot current = snapshot;
+            if (current.count == 0 || messageId > current.lastId) {
+                return;
+            }
+            int b = current.blockBefore(messageId + 1);
+            if (b < 0) {
+                return;
+            }
+            int[] ids = new int[MAX_BLOCK_SIZE];
+            int n = current.decodeBlock(b, ids);
+            int index = Arrays.binarySearch(ids, 0, n, messageId);
+            if (index < 0) {
+                return;
+            }
+            System.arraycopy(ids, index + 1, ids, index, n - index - 1);
+            snapshot = withBlock(current, b, ids, n - 1);
+        }
+
+        // The slots written are past every published snapshot's blockCount or lastLength, so no reader looks at
+        // them. A slot readers can see is only replaced in a copy of the block array
+        private static Snapshot append(Snapshot current, int messageId) {
+            byte[][] blocks = current.blocks;
+            int[] firstIds = current.firstIds;
+            int[] starts = current.starts;
+            int last = current.blockCount - 1;
+            if (last < 0 || current.blockSize(last) >= BLOCK_SIZE) {
+                int capacity = firstIds.length;
+                if (current.blockCount == capacity) {
+                    capacity = current.blockCount + 1 + (current.blockCount >> 1);
+                    firstIds = Arrays.copyOf(firstIds, capacity);
+                    starts = Arrays.copyOf(starts, capacity);
+                }
+                // The full block is trimmed to its length, so only the last block ever has spare bytes
+                blocks = Arrays.copyOf(blocks, capacity);
+                if (last >= 0) {
+                    blocks[last] = Arrays.copyOf(blocks[last], current.lastLength);
+                }
+                blocks[last + 1] = NO_BYTES;
+                firstIds[last + 1] = messageId;
+                starts[last + 1] = current.count;
+                return new Snapshot(blocks, firstIds, starts, current.blockCount + 1, current.count + 1, messageId,
+                        0);
+            }
+            byte[] data = blocks[last];
+            int length = current.lastLength;
+            if (length + 5 > data.length) {
+                data = Arrays.copyOf(data, Math.max(16, length + 5 + (data.length >> 1)));
+                blocks = blocks.clone();
+                blocks[last] = data;
+            }
+            length = writeVarint(data, length, messageId - current.lastId);
+            return new Snapshot(blocks, firstIds, starts, current.blockCount, current.count + 1, messageId, length);
+        }
+
+        // Replaces block b with the first n of ids, dropping it when that is none and splitting it in two when that
+        // is more than MAX_BLOCK_SIZE. The other blocks' bytes are shared with the current snapshot
+        private static Snapshot withBlock(Snapshot current, int b, int[] ids, int n) {
+            int pieces = n == 0 ? 0 : n > MAX_BLOCK_SIZE ? 2 : 1;
+            int blockCount = current.blockCount - 1 + pieces;
+            if (blockCount == 0) {
+                return EMPTY;
+            }
+            byte[][] blocks = new byte[blockCount][];
+            int[] firstIds = new int[blockCount];
+            int[] starts = new int[blockCount];
+            System.arraycopy(current.blocks, 0, blocks, 0, b);
+            System.arraycopy(current.firstIds, 0, firstIds, 0, b);
+            System.arraycopy(current.starts, 0, starts, 0, b);
+            int split = pieces == 2 ? n / 2 : n;
+            if (pieces > 0) {
+                blocks[b] = encodeGaps(ids, 0, split);
+                firstIds[b] = ids[0];
+                starts[b] = current.starts[b];
+            }
+            if (pieces == 2) {
+                blocks[b + 1] = encodeGaps(ids, split, n);
+                firstIds[b + 1] = ids[split];
+                starts[b + 1] = current.starts[b] + split;
+            }
+            int delta = n - current.blockSize(b);
+            for (int k = b + 1; k < current.blockCount; k++) {
+                blocks[k - 1 + pieces] = current.blocks[k];
+                firstIds[k - 1 + pieces] = current.firstIds[k];
+                starts[k - 1 + pieces] = current.starts[k] + delta;
+            }
+            if (b + 1 < current.blockCount) {
+                return new Snapshot(blocks, firstIds, starts, blockCount, current.count + delta, current.lastId,
+                        current.lastLength);
+            }
+            // The last block changed; when it went, the one before it is last now and its last id is decoded
+            int lastId = pieces > 0 ? ids[n - 1] : ids[current.decodeBlock(b - 1, ids) - 1];
+            return new Snapshot(blocks, firstIds, starts, blockCount, current.count + delta, lastId,
+                    blocks[blockCount - 1].length);
+        }
+
+        private static byte[] encodeGaps(int[] ids, int from, int to) {
+            byte[] data = new byte[(to - from) * 5];
+            int length = 0;
+            for (int k = from + 1; k < to; k++) {
+                length = writeVarint(data, length, ids[k] - ids[k - 1]);
+            }
+            return Arrays.copyOf(data, length);
+        }
+
+        private static int writeVarint(byte[] data, int offset, int value) {
+            while ((value & ~0x7F) != 0) {
+                data[offset++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            data[offset++] = (byte) value;
+            return offset;
+        }
+    }
+}
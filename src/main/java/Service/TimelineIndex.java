@@ -0,0 +1,168 @@
+package Service;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+import Util.Metrics;
+
+/**
+ * In-memory index from posted_by to the sorted message_ids of that account's messages, so a timeline is resolved
+ * without a query and only the message bodies have to be fetched. Each account's ids live in one primitive int
+ * array, four bytes per message.
+ *
+ * Readers take no lock. Each account's timeline is an immutable snapshot of its array and size behind a volatile
+ * reference. Appending an id larger than any present, the usual case since message_ids only grow, writes it into
+ * the spare capacity past the snapshot's size and publishes a new snapshot over the same array; older snapshots
+ * never look past their own size. Anything else (an out-of-order insert, a removal, growth) copies the array.
+ * Writers to the same account are serialized on its timeline.
+ *
+ * Like AccountDirectory, the index only knows what it was loaded with or told about. MessageService keeps it
+ * current on every write that goes through it.
+ */
+public class TimelineIndex {
+
+    private static final int MIN_CAPACITY = 4;
+    private static final int[] NO_IDS = new int[0];
+    // Estimated fixed cost of an account's entry with compressed oops: map node and Integer key, the timeline, its
+    // snapshot and the array header
+    private static final int ACCOUNT_OVERHEAD_BYTES = 32 + 16 + 16 + 24 + 16;
+
+    private final ConcurrentHashMap<Integer, Timeline> timelines = new ConcurrentHashMap<>();
+
+    public void add(int accountId, int messageId) {
+        timelines.computeIfAbsent(accountId, id -> new Timeline()).add(messageId);
+    }
+
+    // Returns false if the account's timeline did not hold messageId
+    public boolean remove(int accountId, int messageId) {
+        Timeline timeline = timelines.get(accountId);
+        return timeline != null && timeline.remove(messageId);
+    }
+
+    // For deletes that do not say whose message it was. Searches every account, so it costs a binary search per
+    // account; the deletes MessageService serves over HTTP all know the account.
+    public boolean remove(int messageId) {
+        for (Timeline timeline : timelines.values()) {
+            if (timeline.remove(messageId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns up to limit of the account's message_ids greater than afterMessageId, in ascending order.
+     */
+    public int[] getMessageIdsAfter(int accountId, int afterMessageId, int limit) {
+        long start = System.nanoTime();
+        try {
+            Timeline timeline = timelines.get(accountId);
+            if (timeline == null) {
+                return NO_IDS;
+            }
+            Snapshot snapshot = timeline.snapshot;
+            int from = Arrays.binarySearch(snapshot.ids, 0, snapshot.size, afterMessageId);
+            from = from >= 0 ? from + 1 : -from - 1;
+            int to = from + Math.min(limit, snapshot.size - from);
+            return from >= to ? NO_IDS : Arrays.copyOfRange(snapshot.ids, from, to);
+        } finally {
+            Metrics.recordDao("TimelineIndex.getMessageIdsAfter", start);
+        }
+    }
+
+    public int getMessageCount(int accountId) {
+        Timeline timeline = timelines.get(accountId);
+        return timeline == null ? 0 : timeline.snapshot.size;
+    }
+
+    // Accounts that have had at least one message since startup
+    public int getAccountCount() {
+        return timelines.size();
+    }
+
+    public long getMessageCount() {
+        long messages = 0;
+        for (Timeline timeline : timelines.values()) {
+            messages += timeline.snapshot.size;
+        }
+        return messages;
+    }
+
+    // Estimated heap held by the index: each account's fixed overhead plus its array, spare capacity included
+    public long getMemoryBytes() {
+        long bytes = 0;
+        for (Timeline timeline : timelines.values()) {
+            bytes += timeline.getMemoryBytes();
+        }
+        return bytes;
+    }
+
+    // Estimated heap held by the largest single account
+    public long getMaxAccountMemoryBytes() {
+        long max = 0;
+        for (Timeline timeline : timelines.values()) {
+            max = Math.max(max, timeline.getMemoryBytes());
+        }
+        return max;
+    }
+
+    private static final class Snapshot {
+        final int[] ids;
+        final int size;
+
+        Snapshot(int[] ids, int size) {
+            this.ids = ids;
+            this.size = size;
+        }
+    }
+
+    private static final class Timeline {
+        volatile Snapshot snapshot = new Snapshot(NO_IDS, 0);
+
+        synchronized void add(int messageId) {
+            Snapshot current = snapshot;
+            int[] ids = current.ids;
+            int size = current.size;
+            if (size == 0 || ids[size - 1] < messageId) {
+                if (size == ids.length) {
+                    ids = Arrays.copyOf(ids, Math.max(MIN_CAPACITY, size + (size >> 1)));
+                }
+                // The slot is past every published snapshot's size, so no reader is looking at it
+                ids[size] = messageId;
+                snapshot = new Snapshot(ids, size + 1);
+                return;
+            }
+            int index = Arrays.binarySearch(ids, 0, size, messageId);
+            if (index >= 0) {
+                return;
+            }
+            index = -index - 1;
+            int[] copy = new int[Math.max(ids.length, size + 1)];
+            System.arraycopy(ids, 0, copy, 0, index);
+            copy[index] = messageId;
+            System.arraycopy(ids, index, copy, index + 1, size - index);
+            snapshot = new Snapshot(copy, size + 1);
+        }
+
+        synchronized boolean remove(int messageId) {
+            Snapshot current = snapshot;
+            int index = Arrays.binarySearch(current.ids, 0, current.size, messageId);
+            if (index < 0) {
+                return false;
+            }
+            int size = current.size - 1;
+            // Shrink once three quarters of the array is spare
+            int capacity = current.ids.length > MIN_CAPACITY && size < current.ids.length >> 2
+                    ? Math.max(MIN_CAPACITY, size + (size >> 1)) : current.ids.length;
+            int[] copy = new int[capacity];
+            System.arraycopy(current.ids, 0, copy, 0, index);
+            System.arraycopy(current.ids, index + 1, copy, index, size - index);
+            snapshot = new Snapshot(copy, size);
+            return true;
+        }
+
+        long getMemoryBytes() {
+            return ACCOUNT_OVERHEAD_BYTES + 4L * snapshot.ids.length;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package Util;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Admission control for one group of routes: at most limit requests in progress, the rest wait in a bounded queue
+ * and are shed if they wait too long.
+ *
+ * How long is too long follows CoDel's idea of judging a queue by how long it has stood rather than by its length.
+ * While the queue keeps emptying, a request may wait up to intervalMillis, which absorbs bursts. Once the queue has
+ * not been empty for a whole interval, it is a standing queue and the server is overloaded: from then on a request
+ * may only wait targetMillis before it is shed, so latency for admitted requests stays bounded and clients are
+ * told to back off quickly. A request arriving to a full queue (maxQueue waiting) is shed immediately.
+ */
+public class AdmissionLimiter {
+
+    private final String name;
+    private final int limit;
+    private final int maxQueue;
+    private final long targetNanos;
+    private final long intervalNanos;
+    private final Semaphore permits;
+    private final AtomicInteger waiting = new AtomicInteger();
+    private volatile long lastEmptyNanos = System.nanoTime();
+
+    private final LongAdder admittedCount = new LongAdder();
+    private final LongAdder queuedCount = new LongAdder();
+    private final LongAdder shedCount = new LongAdder();
+    private final LongAdder queueNanos = new LongAdder();
+
+    public AdmissionLimiter(String name, int limit, int maxQueue, long targetMillis, long intervalMillis) {
+        this.name = name;
+        this.limit = limit;
+        this.maxQueue = maxQueue;
+        this.targetNanos = TimeUnit.MILLISECONDS.toNanos(targetMillis);
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+        this.permits = new Semaphore(limit, true);
+    }
+
+    /**
+     * Admits the caller, waiting in the queue if the limit is reached. Every true must be matched by a release().
+     * @return true if admitted, false if the request was shed
+     */
+    public boolean acquire() throws InterruptedException {
+        if (waiting.get() == 0 && permits.tryAcquire()) {
+            lastEmptyNanos = System.nanoTime();
+            admittedCount.increment();
+            return true;
+        }
+        if (waiting.incrementAndGet() > maxQueue) {
+            leaveQueue();
+            shedCount.increment();
+            return false;
+        }
+        queuedCount.increment();
+        long start = System.nanoTime();
+        long maxWait = start - lastEmptyNanos > intervalNanos ? targetNanos : intervalNanos;
+        try {
+            boolean admitted = permits.tryAcquire(maxWait, TimeUnit.NANOSECONDS);
+            queueNanos.add(System.nanoTime() - start);
+            if (admitted) {
+                admittedCount.increment();
+            } else {
+                shedCount.increment();
+            }
+            return admitted;
+        } finally {
+            leaveQueue();
+        }
+    }
+
+    private void leaveQueue() {
+        if (waiting.decrementAndGet() == 0) {
+            lastEmptyNanos = System.nanoTime();
+        }
+    }
+
+    public void release() {
+        permits.release();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    // Requests admitted and not yet released
+    public int getInFlight() {
+        return limit - permits.availablePermits();
+    }
+
+    // Requests waiting for admission right now
+    public int getWaiting() {
+        return Math.max(0, waiting.get());
+    }
+
+    public long getAdmittedCount() {
+        return admittedCount.sum();
+    }
+
+    // Requests that had to wait in the queue, whether or not they were admitted in the end
+    public long getQueuedCount() {
+        return queuedCount.sum();
+    }
+
+    // Requests turned away, either because the queue was full or because they waited too long
+    public long getShedCount() {
+        return shedCount.sum();
+    }
+
+    public long getMeanQueueNanos() {
+        long queued = queuedCount.sum();
+        return queued == 0 ? 0 : queueNanos.sum() / queued;
+    }
+}
@@ -0,0 +1,53 @@
+package Util;
+
+/**
+ * A point-in-time snapshot of a cache's counters.
+ */
+public class CacheStats {
+    private final long hitCount;
+    private final long missCount;
+    private final long evictionCount;
+    private final int size;
+
+    public CacheStats(long hitCount, long missCount, long evictionCount, int size) {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.evictionCount = evictionCount;
+        this.size = size;
+    }
+
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    // Lookups that went to the loader, i.e. the database
+    public long getMissCount() {
+        return missCount;
+    }
+
+    // Entries dropped to stay within the size bound
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    // Share of lookups answered from the cache, between 0 and 1
+    public double getHitRatio() {
+        long lookups = hitCount + missCount;
+        return lookups == 0 ? 0 : (double) hitCount / lookups;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStats{" +
+                "hitCount=" + hitCount +
+                ", missCount=" + missCount +
+                ", evictionCount=" + evictionCount +
+                ", size=" + size +
+                ", hitRatio=" + getHitRatio() +
+                '}';
+    }
+}
@@ -0,0 +1,400 @@
+package Util;
+
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import javax.sql.DataSource;
+
+/**
+ * A bounded pool of physical connections handed out through a regular DataSource. Callers keep using
+ * getConnection() and close() exactly as before: close() on a pooled connection returns the physical connection
+ * to the pool instead of tearing it down.
+ *
+ * The pool holds between minSize and maxSize physical connections. A caller that finds the pool exhausted waits
+ * up to acquireTimeoutMillis before getting an SQLTimeoutException. Connections that have been idle longer than
+ * validationIntervalMillis are validated before being handed out, and idle connections above minSize are closed
+ * once they have been idle for idleTimeoutMillis.
+ *
+ * Each physical connection also keeps a StatementCache of up to statementCacheSize prepared statements, so the
+ * DAOs' prepareStatement(sql) calls reuse an already parsed and planned statement instead of preparing it again.
+ */
+public class ConnectionPool implements DataSource {
+
+    private final DataSource source;
+    private final int minSize;
+    private final int maxSize;
+    private final long acquireTimeoutMillis;
+    private final long idleTimeoutMillis;
+    private final long validationIntervalMillis;
+    private final int statementCacheSize;
+
+    /**
+     * One permit per connection that may be handed out. Fair, so waiters are served in arrival order.
+     */
+    private final Semaphore permits;
+    /**
+     * Idle connections, most recently returned first so the hot connections stay hot and the cold ones age out.
+     */
+    private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+    private final ScheduledExecutorService evictor;
+
+    private final AtomicInteger total = new AtomicInteger();
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger waiters = new AtomicInteger();
+    private final AtomicLong acquireCount = new AtomicLong();
+    private final AtomicLong acquireNanos = new AtomicLong();
+    private final AtomicLong maxAcquireNanos = new AtomicLong();
+    private final AtomicLong timeoutCount = new AtomicLong();
+    private final AtomicLong createdCount = new AtomicLong();
+    private final AtomicLong evictedCount = new AtomicLong();
+    private final AtomicLong invalidCount = new AtomicLong();
+    private final AtomicLong statementCacheHits = new AtomicLong();
+    private final AtomicLong statementCacheMisses = new AtomicLong();
+    private final AtomicLong statementCacheEvictions = new AtomicLong();
+
+    private volatile boolean closed;
+
+    public ConnectionPool(DataSource source, int minSize, int maxSize, long acquireTimeoutMillis,
+            long idleTimeoutMillis, long validationIntervalMillis) {
+        this(source, minSize, maxSize, acquireTimeoutMillis, idleTimeoutMillis, validationIntervalMillis, 0);
+    }
+
+    public ConnectionPool(DataSource source, int minSize, int maxSize, long acquireTimeoutMillis,
+            long idleTimeoutMillis, long validationIntervalMillis, int statementCacheSize) {
+        if (minSize < 0 || maxSize < 1 || minSize > maxSize) {
+            throw new IllegalArgumentException("Invalid pool size: min=" + minSize + ", max=" + maxSize);
+        }
+        this.source = source;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.validationIntervalMillis = validationIntervalMillis;
+        this.statementCacheSize = statementCacheSize;
+        this.permits = new Semaphore(maxSize, true);
+
+        this.evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ConnectionPool-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1, Math.min(idleTimeoutMillis, 30_000) / 2);
+        evictor.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Opens minSize connections up front so the first requests do not pay for connection setup.
+     */
+    public void warmUp() {
+        while (total.get() < minSize) {
+            try {
+                PooledConnection pooled = open();
+                idle.offerLast(pooled);
+            } catch (SQLException e) {
+                System.out.println("Error warming up connection pool: " + e.getMessage());
+                return;
+            }
+        }
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+        long start = System.nanoTime();
+        waiters.incrementAndGet();
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection", e);
+        } finally {
+            waiters.decrementAndGet();
+        }
+        if (!acquired) {
+            timeoutCount.incrementAndGet();
+            throw new SQLTimeoutException("Timed out after " + acquireTimeoutMillis
+                    + "ms waiting for a connection (active=" + active.get() + ", max=" + maxSize + ")");
+        }
+
+        PooledConnection pooled;
+        try {
+            pooled = take();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+        active.incrementAndGet();
+
+        long elapsed = System.nanoTime() - start;
+        acquireCount.incrementAndGet();
+        acquireNanos.addAndGet(elapsed);
+        maxAcquireNanos.accumulateAndGet(elapsed, Math::max);
+        return pooled.lease();
+    }
+
+    /**
+     * Takes an idle connection, validating it if it has been sitting for a while, or opens a new one. The caller
+     * already holds a permit, so opening a connection here can never exceed maxSize.
+     */
+    private PooledConnection take() throws SQLException {
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            long idleFor = System.currentTimeMillis() - pooled.lastReturned;
+            if (idleFor < validationIntervalMillis || isValid(pooled)) {
+                return pooled;
+            }
+            invalidCount.incrementAndGet();
+            destroy(pooled);
+        }
+        return open();
+    }
+
+    private boolean isValid(PooledConnection pooled) {
+        try {
+            return pooled.physical.isValid(1);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private PooledConnection open() throws SQLException {
+        Connection physical = source.getConnection();
+        total.incrementAndGet();
+        createdCount.incrementAndGet();
+        return new PooledConnection(physical);
+    }
+
+    private void destroy(PooledConnection pooled) {
+        total.decrementAndGet();
+        pooled.statementCache.close();
+        try {
+            pooled.physical.close();
+        } catch (SQLException e) {
+            System.out.println("Error closing pooled connection: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Called when a lease is closed. Open statements are closed and any transaction the caller left behind is
+     * rolled back, so the next borrower always gets a clean autocommit connection.
+     */
+    private void release(PooledConnection pooled) {
+        boolean reusable = !closed;
+        try {
+            pooled.closeStatements();
+            if (!pooled.physical.getAutoCommit()) {
+                pooled.physical.rollback();
+                pooled.physical.setAutoCommit(true);
+            }
+            reusable = reusable && !pooled.physical.isClosed();
+        } catch (SQLException e) {
+            reusable = false;
+        }
+
+        active.decrementAndGet();
+        if (reusable) {
+            pooled.lastReturned = System.currentTimeMillis();
+            idle.offerFirst(pooled);
+        } else {
+            destroy(pooled);
+        }
+        permits.release();
+    }
+
+    /**
+     * Closes connections that have been idle for longer than idleTimeoutMillis, oldest first, never going below
+     * minSize.
+     */
+    void evictIdle() {
+        long now = System.currentTimeMillis();
+        Iterator<PooledConnection> oldestFirst = idle.descendingIterator();
+        while (oldestFirst.hasNext() && total.get() > minSize) {
+            PooledConnection pooled = oldestFirst.next();
+            if (now - pooled.lastReturned >= idleTimeoutMillis && idle.remove(pooled)) {
+                evictedCount.incrementAndGet();
+                destroy(pooled);
+            }
+        }
+    }
+
+    /**
+     * Closes every idle connection and refuses new borrowers. Connections still leased are closed when returned.
+     */
+    public void close() {
+        closed = true;
+        evictor.shutdownNow();
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            destroy(pooled);
+        }
+    }
+
+    public PoolStats getStats() {
+        long acquires = acquireCount.get();
+        return new PoolStats(active.get(), idle.size(), waiters.get(), total.get(), maxSize, acquires,
+                acquires == 0 ? 0 : acquireNanos.get() / acquires, maxAcquireNanos.get(), timeoutCount.get(),
+                createdCount.get(), evictedCount.get(), invalidCount.get(), statementCacheHits.get(),
+                statementCacheMisses.get(), statementCacheEvictions.get());
+    }
+
+    /**
+     * A physical connection owned by the pool. Each checkout gets its own lease proxy so a caller that closes its
+     * connection twice, or keeps using it after close(), cannot affect the next borrower.
+     */
+    private final class PooledConnection {
+        final Connection physical;
+        final StatementCache statementCache;
+        final List<Statement> openStatements = new ArrayList<>();
+        volatile long lastReturned = System.currentTimeMillis();
+
+        PooledConnection(Connection physical) {
+            this.physical = physical;
+            this.statementCache = new StatementCache(physical, statementCacheSize, statementCacheHits,
+                    statementCacheMisses, statementCacheEvictions);
+        }
+
+        Connection lease() {
+            return (Connection) Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(),
+                    new Class<?>[] { Connection.class }, new Lease(this));
+        }
+
+        void track(Object result) {
+            if (result instanceof Statement) {
+                openStatements.add((Statement) result);
+            }
+        }
+
+        void closeStatements() {
+            for (Statement statement : openStatements) {
+                try {
+                    statement.close();
+                } catch (SQLException e) {
+                    System.out.println("Error closing statement: " + e.getMessage());
+                }
+            }
+            openStatements.clear();
+        }
+    }
+
+    private final class Lease implements InvocationHandler {
+        private final PooledConnection pooled;
+        private boolean released;
+
+        Lease(PooledConnection pooled) {
+            this.pooled = pooled;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!released) {
+                        released = true;
+                        release(pooled);
+                    }
+                    return null;
+                case "isClosed":
+                    return released || pooled.physical.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "PooledConnection[" + pooled.physical + (released ? ", released]" : "]");
+                default:
+                    break;
+            }
+            if (released) {
+                throw new SQLException("Connection has already been returned to the pool");
+            }
+            try {
+                if (method.getName().equals("prepareStatement") && isCacheable(method)) {
+                    Integer autoGeneratedKeys = args.length == 2 ? (Integer) args[1] : null;
+                    Object handle = pooled.statementCache.prepare((Connection) proxy, (String) args[0],
+                            autoGeneratedKeys);
+                    pooled.track(handle);
+                    return handle;
+                }
+                Object result = method.invoke(pooled.physical, args);
+                pooled.track(result);
+                return result;
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    /**
+     * Only prepareStatement(String) and prepareStatement(String, int autoGeneratedKeys) go through the statement
+     * cache; the variants taking result set options or key columns are rare enough to prepare directly.
+     */
+    private static boolean isCacheable(Method method) {
+        Class<?>[] types = method.getParameterTypes();
+        return types.length == 1 || (types.length == 2 && types[1] == int.class);
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("The pool only hands out connections for its configured user");
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        return source.getLogWriter();
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) throws SQLException {
+        source.setLogWriter(out);
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) throws SQLException {
+        source.setLoginTimeout(seconds);
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        return source.getLoginTimeout();
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        return source.getParentLogger();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        return source.unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this) || source.isWrapperFor(iface);
+    }
+}
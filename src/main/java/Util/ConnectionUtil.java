@@ -13,7 +13,10 @@ import org.h2.tools.RunScript;
  * our database. This class utilizes the singleton design pattern. We will be
  * utilizing an in-memory called h2database for the sql demos.
  *
- * DO NOT CHANGE ANYTHING IN THIS CLASS
+ * Connections are handed out by a bounded ConnectionPool. Closing a connection returns it to the pool, so callers
+ * should keep closing their connections exactly as they did before the pool existed.
+ *
+ * The pool can be sized with the db.pool.* system properties, e.g. -Ddb.pool.maxSize=20.
  */
 public class ConnectionUtil {
 
@@ -32,21 +35,35 @@ public class ConnectionUtil {
 	private static String password = "sa";
 
 	/**
-	 * DataSource for pooling. Pooling enables the creation of multiple connections when connections are closed.
+	 * DataSource that opens the physical connections handed out by the pool.
+	 */
+	private static JdbcDataSource dataSource = new JdbcDataSource();
+
+	/**
+	 * Bounded pool of physical connections. Closing a pooled connection returns it here.
 	 */
-	private static JdbcDataSource pool = new JdbcDataSource();
+	private static ConnectionPool pool;
 
 	/**
 	 * static initialization block to establish credentials for DataSoure Pool
 	 */
 	static {
-		pool.setURL(url);
-		pool.setUser(username);
-		pool.setPassword(password);
+		dataSource.setURL(url);
+		dataSource.setUser(username);
+		dataSource.setPassword(password);
+
+		pool = new ConnectionPool(dataSource,
+				Integer.getInteger("db.pool.minSize", 2),
+				Integer.getInteger("db.pool.maxSize", 10),
+				Long.getLong("db.pool.acquireTimeoutMillis", 5_000L),
+				Long.getLong("db.pool.idleTimeoutMillis", 60_000L),
+				Long.getLong("db.pool.validationIntervalMillis", 1_000L),
+				Integer.getInteger("db.pool.statementCacheSize", 32));
+		pool.warmUp();
 	}
 
 	/**
-	 * @return an active connection to the database
+	 * @return an active connection to the database, or null if none could be acquired
 	 */
 	public static Connection getConnection() {
 		try {
@@ -58,17 +75,44 @@ public class ConnectionUtil {
 		return null;
 	}
 
+	/**
+	 * @return the pool behind getConnection()
+	 */
+	public static ConnectionPool getPool() {
+		return pool;
+	}
+
+	/**
+	 * @return a snapshot of the pool counters: active, idle, waiters, acquire latency and so on
+	 */
+	public static PoolStats getPoolStats() {
+		return pool.getStats();
+	}
+
 	/**
 	 * For the purpose of testing, we will need to drop and recreate our database
 	 * tables to keep it consistent across all tests. The method will read the sql
 	 * file in resources. This will be performed before every test.
+	 *
+	 * The base script drops the tables along with their indexes, so the schema migrations are applied again
+	 * afterwards.
 	 */
 	public static void resetTestDatabase() {
+		Connection connection = getConnection();
 		try {
 			FileReader sqlReader = new FileReader("src/main/resources/SocialMedia.sql");
-			RunScript.execute(getConnection(), sqlReader);
+			RunScript.execute(connection, sqlReader);
 		} catch (SQLException | FileNotFoundException e) {
 			e.printStackTrace();
+		} finally {
+			try {
+				if (connection != null) {
+					connection.close();
+				}
+			} catch (SQLException e) {
+				e.printStackTrace();
+			}
 		}
+		SchemaMigrator.migrate();
 	}
 }
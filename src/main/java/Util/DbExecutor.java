@@ -0,0 +1,78 @@
+package Util;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * The bounded executor that runs blocking JDBC work for the asynchronous service methods, so request threads hand
+ * off database calls instead of blocking on them.
+ *
+ * It has as many threads as the connection pool has connections (db.executor.threads overrides this), so it never
+ * asks the pool for more connections than exist. Work beyond that waits in a queue of db.executor.queueCapacity
+ * tasks. Once the queue is full, new work is rejected and its future fails with a RejectedExecutionException.
+ */
+public class DbExecutor {
+
+    private static final int QUEUE_CAPACITY = Integer.getInteger("db.executor.queueCapacity", 1000);
+
+    private static final AtomicLong rejectedCount = new AtomicLong();
+    private static ThreadPoolExecutor executor;
+
+    private DbExecutor() {
+    }
+
+    public static synchronized ThreadPoolExecutor get() {
+        if (executor == null) {
+            int threads = Integer.getInteger("db.executor.threads", ConnectionUtil.getPoolStats().getMaxSize());
+            executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(QUEUE_CAPACITY), new DbThreadFactory());
+        }
+        return executor;
+    }
+
+    /**
+     * Runs work on executor and returns its future. A rejected submission gives a failed future instead of
+     * throwing, so callers handle overload the same way as any other failure.
+     */
+    public static <T> CompletableFuture<T> supplyAsync(Supplier<T> work, Executor executor) {
+        try {
+            return CompletableFuture.supplyAsync(work, executor);
+        } catch (RejectedExecutionException e) {
+            rejectedCount.incrementAndGet();
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    // Tasks waiting for a thread
+    public static int getQueueDepth() {
+        return get().getQueue().size();
+    }
+
+    public static int getActiveCount() {
+        return get().getActiveCount();
+    }
+
+    // Submissions turned away because the queue was full
+    public static long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    private static final class DbThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "db-worker-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package Util;
+
+/**
+ * Builds entity tags from data versions and evaluates If-None-Match against them.
+ *
+ * A tag is "scope-version": the version is a counter that only moves forward while the data changes, and the scope
+ * identifies the counter's lifetime, so a tag handed out before a restart never matches one handed out after it.
+ */
+public class ETags {
+
+    private ETags() {
+    }
+
+    public static String of(String scope, long version) {
+        return "\"" + scope + "-" + version + "\"";
+    }
+
+    // A tag for one of several representations of the same data, e.g. an encoding; a null variant gives of(scope, version)
+    public static String of(String scope, long version, String variant) {
+        return variant == null ? of(scope, version) : "\"" + scope + "-" + version + "-" + variant + "\"";
+    }
+
+    /**
+     * True if an If-None-Match header value matches etag: either "*" or a list containing etag. Weak tags (W/"...")
+     * compare equal to their strong counterparts, as If-None-Match uses weak comparison.
+     */
+    public static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null || etag == null) {
+            return false;
+        }
+        String target = stripWeak(etag);
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.equals("*") || stripWeak(tag).equals(target)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String stripWeak(String tag) {
+        return tag.startsWith("W/") ? tag.substring(2) : tag;
+    }
+}
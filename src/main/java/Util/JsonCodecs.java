@@ -0,0 +1,23 @@
+package Util;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * The shared JSON mapper for the API payloads. Building an ObjectMapper and resolving its serializers is expensive,
+ * so there is exactly one, used by Javalin and by PayloadFormat.JSON, whose readers and writers are built from it
+ * once up front.
+ *
+ * Payloads are parsed straight from the request InputStream and written straight to the response OutputStream,
+ * without an intermediate String. The streams are never closed by the mapper; the server owns them.
+ */
+public class JsonCodecs {
+
+    public static final ObjectMapper MAPPER = new ObjectMapper()
+            .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+            .disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+
+    private JsonCodecs() {
+    }
+}
@@ -0,0 +1,96 @@
+package Util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free latency histogram with log-linear buckets, in the style of HdrHistogram. Every power of two is split
+ * into SUB_BUCKETS equal buckets, so any recorded value is reported within about 3% of its true value, from
+ * nanoseconds up to MAX_VALUE (about 18 minutes) in a fixed array of counters.
+ *
+ * Recording is a few arithmetic operations and one atomic increment, safe to call from any number of threads.
+ * Percentiles are computed from a scan of the counters and may be slightly inconsistent with concurrent recording.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 40;
+    public static final long MAX_VALUE = (1L << (MAX_EXPONENT + 1)) - 1;
+    private static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Records one value, in nanoseconds. Negative values count as 0, values above MAX_VALUE as MAX_VALUE.
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, Math.min(nanos, MAX_VALUE));
+        counts.incrementAndGet(bucketIndex(value));
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getSum() {
+        return sum.sum();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Returns the value at the given quantile (between 0 and 1), as the upper bound of the bucket holding it, but
+     * never more than the largest value recorded. Returns 0 if nothing has been recorded.
+     */
+    public long getValueAtQuantile(double quantile) {
+        long total = 0;
+        long[] snapshot = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(bucketUpperBound(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    // Values below SUB_BUCKETS get a bucket each; above that, the top SUB_BUCKET_BITS bits after the leading one
+    // pick the bucket within the value's power of two
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long bucketUpperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        int subBucket = index % SUB_BUCKETS;
+        int shift = exponent - SUB_BUCKET_BITS;
+        return ((long) (SUB_BUCKETS + subBucket + 1) << shift) - 1;
+    }
+}
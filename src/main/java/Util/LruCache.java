@@ -0,0 +1,189 @@
+package Util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * A bounded, thread-safe read-through cache with least-recently-used eviction. Keys are spread over independently
+ * locked segments, each an access-ordered LinkedHashMap, so concurrent readers of different keys rarely contend.
+ *
+ * A loader result of null is cached too (negative caching), so repeated lookups of a missing key do not go back
+ * to the database until the key is written.
+ *
+ * Writers must call put() or invalidate() after changing the underlying data. A load that was already in flight
+ * when a key in its segment was written does not store its (possibly stale) result.
+ */
+public class LruCache<K, V> {
+
+    private static final Object NULL_VALUE = new Object();
+
+    private final Segment[] segments;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public LruCache(int maxSize) {
+        this(maxSize, 16);
+    }
+
+    public LruCache(int maxSize, int segmentCount) {
+        int count = Math.max(1, Math.min(segmentCount, maxSize));
+        int perSegment = Math.max(1, maxSize / count);
+        segments = new Segment[count];
+        for (int i = 0; i < count; i++) {
+            segments[i] = new Segment(perSegment, evictions);
+        }
+    }
+
+    /**
+     * Returns the cached value for key, loading it with loader on a miss. The loader runs outside of any lock.
+     */
+    @SuppressWarnings("unchecked")
+    public V get(K key, Function<? super K, ? extends V> loader) {
+        Segment segment = segmentFor(key);
+        long generation;
+        synchronized (segment) {
+            Object cached = segment.map.get(key);
+            if (cached != null) {
+                hits.incrementAndGet();
+                return cached == NULL_VALUE ? null : (V) cached;
+            }
+            generation = segment.generation;
+        }
+        misses.incrementAndGet();
+        V loaded = loader.apply(key);
+        synchronized (segment) {
+            if (segment.generation == generation) {
+                segment.map.put(key, loaded == null ? NULL_VALUE : loaded);
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * Returns the cached values for keys, loading all the missing ones with a single call to loader, which returns
+     * the values it found by key. The result maps every key to its value, or to null if it is known to be missing;
+     * if the loader returns null, because the load failed, the keys it was asked for are left out of the result.
+     *
+     * Loaded values, and keys the loader did not return as missing, are only stored when at most half of the keys
+     * missed. A mostly-missed batch is treated as a scan: storing it would evict the entries single-key lookups
+     * keep hot, typically for data that is not read again soon.
+     */
+    @SuppressWarnings("unchecked")
+    public Map<K, V> getAll(List<K> keys, Function<List<K>, Map<K, V>> loader) {
+        Map<K, V> result = new HashMap<>(keys.size() * 2);
+        List<K> missing = new ArrayList<>();
+        long[] generations = new long[keys.size()];
+        for (K key : keys) {
+            Segment segment = segmentFor(key);
+            synchronized (segment) {
+                Object cached = segment.map.get(key);
+                if (cached != null) {
+                    result.put(key, cached == NULL_VALUE ? null : (V) cached);
+                    continue;
+                }
+                generations[missing.size()] = segment.generation;
+            }
+            missing.add(key);
+        }
+        hits.addAndGet(keys.size() - missing.size());
+        if (missing.isEmpty()) {
+            return result;
+        }
+        misses.addAndGet(missing.size());
+        Map<K, V> loaded = loader.apply(missing);
+        if (loaded == null) {
+            return result;
+        }
+        boolean store = missing.size() * 2 <= keys.size();
+        for (int i = 0; i < missing.size(); i++) {
+            K key = missing.get(i);
+            V value = loaded.get(key);
+            if (store) {
+                Segment segment = segmentFor(key);
+                synchronized (segment) {
+                    if (segment.generation == generations[i]) {
+                        segment.map.put(key, value == null ? NULL_VALUE : value);
+                    }
+                }
+            }
+            result.put(key, value);
+        }
+        return result;
+    }
+
+    /**
+     * Stores value for key, replacing any cached entry. A null value records the key as known to be missing.
+     */
+    public void put(K key, V value) {
+        Segment segment = segmentFor(key);
+        synchronized (segment) {
+            segment.generation++;
+            segment.map.put(key, value == null ? NULL_VALUE : value);
+        }
+    }
+
+    /**
+     * Drops any cached entry for key so the next get() loads it again.
+     */
+    public void invalidate(K key) {
+        Segment segment = segmentFor(key);
+        synchronized (segment) {
+            segment.generation++;
+            segment.map.remove(key);
+        }
+    }
+
+    public void invalidateAll() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.generation++;
+                segment.map.clear();
+            }
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.map.size();
+            }
+        }
+        return size;
+    }
+
+    public CacheStats getStats() {
+        return new CacheStats(hits.get(), misses.get(), evictions.get(), size());
+    }
+
+    private Segment segmentFor(K key) {
+        int hash = key.hashCode();
+        hash ^= (hash >>> 16);
+        return segments[Math.floorMod(hash, segments.length)];
+    }
+
+    // Not generic, so the segment array can be created without an unchecked cast; keys only go in as K
+    private static final class Segment {
+        long generation;
+        final LinkedHashMap<Object, Object> map;
+
+        Segment(int capacity, AtomicLong evictions) {
+            this.map = new LinkedHashMap<Object, Object>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Object, Object> eldest) {
+                    if (size() > capacity) {
+                        evictions.incrementAndGet();
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package Util;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Process-wide request and database metrics, rendered in the Prometheus text exposition format.
+ *
+ * Latencies are kept in a LatencyHistogram per HTTP route (method and path pattern) and per DAO method. Alongside
+ * them are counters of responses by route and status, of DAO calls that failed with a SQLException, and of other
+ * named error paths. Recording never takes a lock.
+ */
+public class Metrics {
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99};
+
+    private static final ConcurrentHashMap<String, LatencyHistogram> routeLatencies = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, LongAdder> responseCounts = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, LatencyHistogram> daoLatencies = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, LongAdder> daoErrors = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, LongAdder> errors = new ConcurrentHashMap<>();
+
+    private Metrics() {
+    }
+
+    // Records a finished HTTP request against its route, e.g. ("GET", "/messages/{id}")
+    public static void recordRoute(String method, String route, int status, long nanos) {
+        String labels = "method=\"" + method + "\",route=\"" + escape(route) + "\"";
+        routeLatencies.computeIfAbsent(labels, key -> new LatencyHistogram()).record(nanos);
+        responseCounts.computeIfAbsent(labels + ",status=\"" + status + "\"", key -> new LongAdder()).increment();
+    }
+
+    // Records a DAO call that started at startNanos (a System.nanoTime() value), e.g. "MessageDAO.getMessageById"
+    public static void recordDao(String method, long startNanos) {
+        daoLatencies.computeIfAbsent(method, key -> new LatencyHistogram()).record(System.nanoTime() - startNanos);
+    }
+
+    // Counts a DAO call that failed with a SQLException
+    public static void recordDaoError(String method) {
+        daoErrors.computeIfAbsent(method, key -> new LongAdder()).increment();
+    }
+
+    // Counts one occurrence of a named error path, e.g. "unhandled_exception"
+    public static void recordError(String type) {
+        errors.computeIfAbsent(type, key -> new LongAdder()).increment();
+    }
+
+    public static LatencyHistogram getRouteLatency(String method, String route) {
+        return routeLatencies.get("method=\"" + method + "\",route=\"" + escape(route) + "\"");
+    }
+
+    public static LatencyHistogram getDaoLatency(String method) {
+        return daoLatencies.get(method);
+    }
+
+    public static long getDaoErrorCount(String method) {
+        LongAdder count = daoErrors.get(method);
+        return count == null ? 0 : count.sum();
+    }
+
+    public static long getErrorCount(String type) {
+        LongAdder count = errors.get(type);
+        return count == null ? 0 : count.sum();
+    }
+
+    /**
+     * Appends every histogram and counter recorded so far, sorted by label so the output is stable.
+     */
+    public static void writePrometheus(StringBuilder out) {
+        writeSummaries(out, "http_request_duration_seconds", "Time from request start to response written",
+                routeLatencies);
+        out.append("# HELP http_responses_total Responses by route and status code\n");
+        out.append("# TYPE http_responses_total counter\n");
+        for (Map.Entry<String, LongAdder> entry : new TreeMap<>(responseCounts).entrySet()) {
+            out.append("http_responses_total{").append(entry.getKey()).append("} ")
+                    .append(entry.getValue().sum()).append('\n');
+        }
+
+        Map<String, LatencyHistogram> daoByLabel = new TreeMap<>();
+        for (Map.Entry<String, LatencyHistogram> entry : daoLatencies.entrySet()) {
+            daoByLabel.put("method=\"" + escape(entry.getKey()) + "\"", entry.getValue());
+        }
+        writeSummaries(out, "dao_call_duration_seconds", "Time spent in a DAO method, connection checkout included",
+                daoByLabel);
+        out.append("# HELP dao_errors_total DAO calls that failed with a SQLException\n");
+        out.append("# TYPE dao_errors_total counter\n");
+        for (Map.Entry<String, LongAdder> entry : new TreeMap<>(daoErrors).entrySet()) {
+            out.append("dao_errors_total{method=\"").append(escape(entry.getKey())).append("\"} ")
+                    .append(entry.getValue().sum()).append('\n');
+        }
+
+        out.append("# HELP app_errors_total Other error paths, by type\n");
+        out.append("# TYPE app_errors_total counter\n");
+        for (Map.Entry<String, LongAdder> entry : new TreeMap<>(errors).entrySet()) {
+            out.append("app_errors_total{type=\"").append(escape(entry.getKey())).append("\"} ")
+                    .append(entry.getValue().sum()).append('\n');
+        }
+    }
+
+    // Writes a summary per label set: p50, p90 and p99 as quantile samples, plus _count, _sum and a _max gauge
+    private static void writeSummaries(StringBuilder out, String name, String help,
+                                       Map<String, LatencyHistogram> histograms) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(" summary\n");
+        for (Map.Entry<String, LatencyHistogram> entry : new TreeMap<>(histograms).entrySet()) {
+            String labels = entry.getKey();
+            LatencyHistogram histogram = entry.getValue();
+            for (double quantile : QUANTILES) {
+                out.append(name).append('{').append(labels).append(",quantile=\"").append(quantile).append("\"} ")
+                        .append(seconds(histogram.getValueAtQuantile(quantile))).append('\n');
+            }
+            out.append(name).append("_count{").append(labels).append("} ").append(histogram.getCount()).append('\n');
+            out.append(name).append("_sum{").append(labels).append("} ").append(seconds(histogram.getSum()))
+                    .append('\n');
+        }
+        out.append("# HELP ").append(name).append("_max Largest value recorded\n");
+        out.append("# TYPE ").append(name).append("_max gauge\n");
+        for (Map.Entry<String, LatencyHistogram> entry : new TreeMap<>(histograms).entrySet()) {
+            out.append(name).append("_max{").append(entry.getKey()).append("} ")
+                    .append(seconds(entry.getValue().getMax())).append('\n');
+        }
+    }
+
+    // Appends a single unlabelled sample with its HELP and TYPE lines
+    public static void writeSample(StringBuilder out, String name, String type, String help, double value) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        out.append(name).append(' ');
+        if (value == Math.rint(value) && !Double.isInfinite(value)) {
+            out.append((long) value);
+        } else {
+            out.append(value);
+        }
+        out.append('\n');
+    }
+
+    // Appends one sample per label value, e.g. name{group="reads"}, under a single HELP and TYPE line
+    public static void writeSamples(StringBuilder out, String name, String type, String help, String label,
+                                    Map<String, ? extends Number> values) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        for (Map.Entry<String, ? extends Number> entry : values.entrySet()) {
+            out.append(name).append('{').append(label).append("=\"").append(escape(entry.getKey())).append("\"} ")
+                    .append(entry.getValue()).append('\n');
+        }
+    }
+
+    private static double seconds(long nanos) {
+        return nanos / 1e9;
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
@@ -0,0 +1,127 @@
+package Util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Encodes and decodes the opaque cursors handed out by the paginated list endpoints. A cursor records the key of
+ * the last row on a page, so the next page is fetched with a keyset predicate ("message_id > ?") rather than an
+ * OFFSET that has to skip over every earlier row.
+ *
+ * Clients must treat cursors as opaque strings; the encoding may change between releases.
+ */
+public class PageCursor {
+
+    private static final String MESSAGE_ID_PREFIX = "m:";
+    private static final String TIME_KEY_PREFIX = "t:";
+
+    private PageCursor() {
+    }
+
+    /**
+     * @return a cursor that resumes after the given message_id
+     */
+    public static String encodeMessageId(int messageId) {
+        return encode(MESSAGE_ID_PREFIX + messageId);
+    }
+
+    /**
+     * @return the message_id to resume after, or 0 for a null cursor (start from the first page)
+     * @throws IllegalArgumentException if the cursor was not produced by encodeMessageId
+     */
+    public static int decodeMessageId(String cursor) {
+        if (cursor == null) {
+            return 0;
+        }
+        String decoded = decode(cursor);
+        if (!decoded.startsWith(MESSAGE_ID_PREFIX)) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor);
+        }
+        try {
+            return Integer.parseInt(decoded.substring(MESSAGE_ID_PREFIX.length()));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor, e);
+        }
+    }
+
+    /**
+     * @return a cursor that resumes after the given position in (time_posted_epoch, message_id) order
+     */
+    public static String encodeTimeKey(TimeKey key) {
+        return encode(TIME_KEY_PREFIX + key.getTimePostedEpoch() + ":" + key.getMessageId());
+    }
+
+    /**
+     * @return the position to resume after, or null for a null cursor (start from the first page)
+     * @throws IllegalArgumentException if the cursor was not produced by encodeTimeKey
+     */
+    public static TimeKey decodeTimeKey(String cursor) {
+        if (cursor == null) {
+            return null;
+        }
+        String decoded = decode(cursor);
+        int separator = decoded.lastIndexOf(':');
+        if (!decoded.startsWith(TIME_KEY_PREFIX) || separator < TIME_KEY_PREFIX.length()) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor);
+        }
+        try {
+            return new TimeKey(Long.parseLong(decoded.substring(TIME_KEY_PREFIX.length(), separator)),
+                    Integer.parseInt(decoded.substring(separator + 1)));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor, e);
+        }
+    }
+
+    private static String encode(String raw) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String decode(String cursor) {
+        try {
+            return new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor, e);
+        }
+    }
+
+    /**
+     * A position in the order of the time-range listings: by time_posted_epoch, ties broken by message_id.
+     */
+    public static final class TimeKey implements Comparable<TimeKey> {
+        private final long timePostedEpoch;
+        private final int messageId;
+
+        public TimeKey(long timePostedEpoch, int messageId) {
+            this.timePostedEpoch = timePostedEpoch;
+            this.messageId = messageId;
+        }
+
+        public long getTimePostedEpoch() {
+            return timePostedEpoch;
+        }
+
+        public int getMessageId() {
+            return messageId;
+        }
+
+        @Override
+        public int compareTo(TimeKey other) {
+            int byTime = Long.compare(timePostedEpoch, other.timePostedEpoch);
+            return byTime != 0 ? byTime : Integer.compare(messageId, other.messageId);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof TimeKey)) {
+                return false;
+            }
+            TimeKey other = (TimeKey) o;
+            return timePostedEpoch == other.timePostedEpoch && messageId == other.messageId;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(timePostedEpoch) * 31 + messageId;
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package Util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Locale;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+import Model.Account;
+import Model.BatchItemResult;
+import Model.Message;
+
+/**
+ * The encodings the API can read and write: JSON, and CBOR and Smile, two binary encodings of the same data model
+ * that are smaller and cheaper to produce and parse, mostly because field names and numbers are not spelled out as
+ * text. The payload shapes are identical in all three, so a client can switch by changing its headers alone.
+ *
+ * Each format has one mapper, and its readers and writers are built once; ObjectReader and ObjectWriter are
+ * immutable and safe to share across request threads. The JSON format uses JsonCodecs' mapper, the one Javalin is
+ * configured with.
+ */
+public enum PayloadFormat {
+
+    JSON("application/json", null, JsonCodecs.MAPPER),
+    CBOR("application/cbor", "cbor", binaryMapper(new CBORFactory())),
+    SMILE("application/x-jackson-smile", "smile", binaryMapper(new SmileFactory()));
+
+    private final String mediaType;
+    // Distinguishes this encoding's entity tags from the JSON ones; null for JSON, whose tags are left as they were
+    private final String etagVariant;
+    private final ObjectMapper mapper;
+    private final ObjectReader accountReader;
+    private final ObjectReader messageReader;
+    private final ObjectReader messageListReader;
+    private final ObjectWriter accountWriter;
+    private final ObjectWriter messageWriter;
+    private final ObjectWriter messageListWriter;
+    private final ObjectWriter batchResultsWriter;
+
+    PayloadFormat(String mediaType, String etagVariant, ObjectMapper mapper) {
+        this.mediaType = mediaType;
+        this.etagVariant = etagVariant;
+        this.mapper = mapper;
+        this.accountReader = mapper.readerFor(Account.class);
+        this.messageReader = mapper.readerFor(Message.class);
+        this.messageListReader = mapper.readerFor(new TypeReference<List<Message>>(){});
+        this.accountWriter = mapper.writerFor(Account.class);
+        this.messageWriter = mapper.writerFor(Message.class);
+        this.messageListWriter = mapper.writerFor(new TypeReference<List<Message>>(){});
+        this.batchResultsWriter = mapper.writerFor(BatchItemResult[].class);
+    }
+
+    private static ObjectMapper binaryMapper(JsonFactory factory) {
+        return new ObjectMapper(factory)
+                .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+                .disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+    }
+
+    /**
+     * The format a request body is in, from its Content-Type. Anything that is not CBOR or Smile, a missing header
+     * included, is read as JSON, which is what clients have always sent.
+     */
+    public static PayloadFormat fromContentType(String contentType) {
+        if (contentType == null) {
+            return JSON;
+        }
+        String mediaType = mediaType(contentType);
+        for (PayloadFormat format : values()) {
+            if (format.mediaType.equals(mediaType)) {
+                return format;
+            }
+        }
+        return JSON;
+    }
+
+    /**
+     * The format to answer in, from an Accept header: the supported type with the highest q-value, the earliest
+     * listed winning a tie. Wildcards and anything else that names no binary format get JSON, so clients that
+     * send no Accept header, or one without these types, see no change.
+     */
+    public static PayloadFormat fromAccept(String accept) {
+        if (accept == null || accept.isEmpty()) {
+            return JSON;
+        }
+        PayloadFormat best = JSON;
+        double bestQuality = 0;
+        for (String range : accept.split(",")) {
+            PayloadFormat format = forRange(mediaType(range));
+            double quality = quality(range);
+            if (format != null && quality > bestQuality) {
+                best = format;
+                bestQuality = quality;
+            }
+        }
+        return best;
+    }
+
+    // Wildcard ranges are served as JSON; ranges naming none of the formats match nothing
+    private static PayloadFormat forRange(String mediaType) {
+        if (mediaType.equals("*/*") || mediaType.equals("application/*")) {
+            return JSON;
+        }
+        for (PayloadFormat format : values()) {
+            if (format.mediaType.equals(mediaType)) {
+                return format;
+            }
+        }
+        return null;
+    }
+
+    // The type/subtype of a header value, without parameters, in lower case
+    private static String mediaType(String value) {
+        int parameters = value.indexOf(';');
+        return (parameters < 0 ? value : value.substring(0, parameters)).trim().toLowerCase(Locale.ROOT);
+    }
+
+    // The q parameter of an Accept range, 1 if absent or malformed
+    private static double quality(String range) {
+        for (String parameter : range.split(";")) {
+            String trimmed = parameter.trim();
+            if (trimmed.startsWith("q=")) {
+                try {
+                    return Double.parseDouble(trimmed.substring(2));
+                } catch (NumberFormatException e) {
+                    return 1;
+                }
+            }
+        }
+        return 1;
+    }
+
+    public String getMediaType() {
+        return mediaType;
+    }
+
+    public String getEtagVariant() {
+        return etagVariant;
+    }
+
+    public ObjectMapper getMapper() {
+        return mapper;
+    }
+
+    // A streaming generator in this format over out; closing it leaves out open
+    public JsonGenerator createGenerator(OutputStream out) throws IOException {
+        return mapper.getFactory().createGenerator(out);
+    }
+
+    public Account readAccount(InputStream in) throws IOException {
+        return accountReader.readValue(in);
+    }
+
+    public Message readMessage(InputStream in) throws IOException {
+        return messageReader.readValue(in);
+    }
+
+    public List<Message> readMessageList(InputStream in) throws IOException {
+        return messageListReader.readValue(in);
+    }
+
+    public ObjectWriter getAccountWriter() {
+        return accountWriter;
+    }
+
+    public ObjectWriter getMessageWriter() {
+        return messageWriter;
+    }
+
+    public ObjectWriter getMessageListWriter() {
+        return messageListWriter;
+    }
+
+    public ObjectWriter getBatchResultsWriter() {
+        return batchResultsWriter;
+    }
+}
@@ -0,0 +1,132 @@
+package Util;
+
+/**
+ * A point-in-time snapshot of the connection pool counters. Latencies are reported in nanoseconds.
+ */
+public class PoolStats {
+    private final int active;
+    private final int idle;
+    private final int waiters;
+    private final int total;
+    private final int maxSize;
+    private final long acquireCount;
+    private final long meanAcquireNanos;
+    private final long maxAcquireNanos;
+    private final long timeoutCount;
+    private final long createdCount;
+    private final long evictedCount;
+    private final long invalidCount;
+    private final long statementCacheHits;
+    private final long statementCacheMisses;
+    private final long statementCacheEvictions;
+
+    public PoolStats(int active, int idle, int waiters, int total, int maxSize, long acquireCount,
+            long meanAcquireNanos, long maxAcquireNanos, long timeoutCount, long createdCount, long evictedCount,
+            long invalidCount, long statementCacheHits, long statementCacheMisses, long statementCacheEvictions) {
+        this.active = active;
+        this.idle = idle;
+        this.waiters = waiters;
+        this.total = total;
+        this.maxSize = maxSize;
+        this.acquireCount = acquireCount;
+        this.meanAcquireNanos = meanAcquireNanos;
+        this.maxAcquireNanos = maxAcquireNanos;
+        this.timeoutCount = timeoutCount;
+        this.createdCount = createdCount;
+        this.evictedCount = evictedCount;
+        this.invalidCount = invalidCount;
+        this.statementCacheHits = statementCacheHits;
+        this.statementCacheMisses = statementCacheMisses;
+        this.statementCacheEvictions = statementCacheEvictions;
+    }
+
+    // Connections currently leased out to callers
+    public int getActive() {
+        return active;
+    }
+
+    // Connections sitting in the pool ready to be handed out
+    public int getIdle() {
+        return idle;
+    }
+
+    // Callers currently blocked waiting for a connection
+    public int getWaiters() {
+        return waiters;
+    }
+
+    // Physical connections currently open, leased or idle
+    public int getTotal() {
+        return total;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public long getAcquireCount() {
+        return acquireCount;
+    }
+
+    public long getMeanAcquireNanos() {
+        return meanAcquireNanos;
+    }
+
+    public long getMaxAcquireNanos() {
+        return maxAcquireNanos;
+    }
+
+    // Borrowers that gave up after waiting for the acquire timeout
+    public long getTimeoutCount() {
+        return timeoutCount;
+    }
+
+    public long getCreatedCount() {
+        return createdCount;
+    }
+
+    // Idle connections closed for exceeding the idle timeout
+    public long getEvictedCount() {
+        return evictedCount;
+    }
+
+    // Idle connections discarded because they failed validation
+    public long getInvalidCount() {
+        return invalidCount;
+    }
+
+    // prepareStatement calls answered from a connection's statement cache
+    public long getStatementCacheHits() {
+        return statementCacheHits;
+    }
+
+    public long getStatementCacheMisses() {
+        return statementCacheMisses;
+    }
+
+    // Cached statements closed to make room for newer ones
+    public long getStatementCacheEvictions() {
+        return statementCacheEvictions;
+    }
+
+    @Override
+    public String toString() {
+        return "PoolStats{" +
+                "active=" + active +
+                ", idle=" + idle +
+                ", waiters=" + waiters +
+                ", total=" + total +
+                ", maxSize=" + maxSize +
+                ", acquireCount=" + acquireCount +
+                ", meanAcquireNanos=" + meanAcquireNanos +
+                ", maxAcquireNanos=" + maxAcquireNanos +
+                ", timeoutCount=" + timeoutCount +
+                ", createdCount=" + createdCount +
+                ", evictedCount=" + evictedCount +
+                ", invalidCount=" + invalidCount +
+                ", statementCacheHits=" + statementCacheHits +
+                ", statementCacheMisses=" + statementCacheMisses +
+                ", statementCacheEvictions=" + statementCacheEvictions +
+                '}';
+    }
+}
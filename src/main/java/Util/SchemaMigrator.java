@@ -0,0 +1,198 @@
+package Util;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Applies versioned, additive schema changes (indexes and the like) on top of the base SocialMedia.sql script.
+ * Every applied version is recorded in the schema_migrations table, so running the migrator again only applies
+ * versions that are new. Migrations are append-only: never edit or reorder a version once it has shipped, add a
+ * new one instead.
+ *
+ * The migrator runs at application startup and again whenever the test database is reset, since the base script
+ * drops the tables, their indexes and the migrations table with them.
+ */
+public class SchemaMigrator {
+
+    private static final List<Migration> MIGRATIONS = List.of(
+            new Migration(1, "Index messages by poster for the per-account listings",
+                    "CREATE INDEX IF NOT EXISTS message_posted_by_idx ON message (posted_by, message_id)"),
+            new Migration(2, "Index messages by posting time for time-ordered reads",
+                    "CREATE INDEX IF NOT EXISTS message_time_posted_idx ON message (time_posted_epoch, message_id)"));
+
+    /**
+     * The queries the DAOs run on every request. verifyIndexUsage() checks through EXPLAIN that none of them falls
+     * back to a full scan of the message table.
+     */
+    private static final Map<String, String> HOT_QUERIES = new LinkedHashMap<>();
+
+    static {
+        HOT_QUERIES.put("MessageDAO.getMessageById", "SELECT * FROM message WHERE message_id = ?");
+        HOT_QUERIES.put("MessageDAO.getMessagesByIds",
+                "SELECT * FROM message WHERE message_id = ANY(?) ORDER BY message_id");
+        HOT_QUERIES.put("MessageDAO.getMessagesByUser", "select * from message where posted_by = ?");
+        HOT_QUERIES.put("MessageDAO.getMessagesByUserAfter",
+                "SELECT * FROM message WHERE posted_by = ? AND message_id > ? ORDER BY message_id LIMIT ?");
+        HOT_QUERIES.put("MessageDAO.streamMessagesByUser",
+                "SELECT * FROM message WHERE posted_by = ? ORDER BY message_id");
+        HOT_QUERIES.put("MessageDAO.getMessagesInTimeRange",
+                "SELECT * FROM message WHERE time_posted_epoch >= ? AND time_posted_epoch < ?"
+                        + " AND (time_posted_epoch > ? OR message_id > ?) ORDER BY time_posted_epoch, message_id LIMIT ?");
+        HOT_QUERIES.put("AccountDAO.getAccountByUsername", "SELECT * FROM account WHERE username = ?");
+    }
+
+    private SchemaMigrator() {
+    }
+
+    /**
+     * Applies every migration that is not yet recorded in schema_migrations, in version order.
+     * @return the number of migrations applied by this call
+     */
+    public static synchronized int migrate() {
+        int applied = 0;
+        Connection connection = ConnectionUtil.getConnection();
+        try {
+            Statement statement = connection.createStatement();
+            statement.executeUpdate("CREATE TABLE IF NOT EXISTS schema_migrations ("
+                    + "version int primary key, "
+                    + "description varchar(255), "
+                    + "applied_at timestamp default current_timestamp)");
+
+            Set<Integer> appliedVersions = new HashSet<>();
+            ResultSet resultSet = statement.executeQuery("SELECT version FROM schema_migrations");
+            while (resultSet.next()) {
+                appliedVersions.add(resultSet.getInt(1));
+            }
+
+            for (Migration migration : MIGRATIONS) {
+                if (appliedVersions.contains(migration.version)) {
+                    continue;
+                }
+                connection.setAutoCommit(false);
+                try {
+                    for (String sql : migration.statements) {
+                        statement.executeUpdate(sql);
+                    }
+                    PreparedStatement record = connection.prepareStatement(
+                            "INSERT INTO schema_migrations (version, description) VALUES (?, ?)");
+                    record.setInt(1, migration.version);
+                    record.setString(2, migration.description);
+                    record.executeUpdate();
+                    connection.commit();
+                    applied++;
+                    System.out.println("Applied schema migration " + migration.version + ": " + migration.description);
+                } catch (SQLException e) {
+                    connection.rollback();
+                    throw e;
+                } finally {
+                    connection.setAutoCommit(true);
+                }
+            }
+        } catch (SQLException e) {
+            System.out.println("Error applying schema migrations: " + e.getMessage());
+        } finally {
+            try {
+                if (connection != null) {
+                    connection.close();
+                }
+            } catch (SQLException e) {
+                System.out.println("Error closing connection: " + e.getMessage());
+            }
+        }
+        return applied;
+    }
+
+    /**
+     * @return the versions recorded in schema_migrations, in ascending order
+     */
+    public static List<Integer> appliedVersions() {
+        List<Integer> versions = new ArrayList<>();
+        Connection connection = ConnectionUtil.getConnection();
+        try {
+            ResultSet resultSet = connection.createStatement()
+                    .executeQuery("SELECT version FROM schema_migrations ORDER BY version");
+            while (resultSet.next()) {
+                versions.add(resultSet.getInt(1));
+            }
+        } catch (SQLException e) {
+            System.out.println("Error reading schema migrations: " + e.getMessage());
+        } finally {
+            try {
+                if (connection != null) {
+                    connection.close();
+                }
+            } catch (SQLException e) {
+                System.out.println("Error closing connection: " + e.getMessage());
+            }
+        }
+        return versions;
+    }
+
+    /**
+     * @return the latest version this build knows about
+     */
+    public static int latestVersion() {
+        return MIGRATIONS.get(MIGRATIONS.size() - 1).version;
+    }
+
+    /**
+     * Runs EXPLAIN on each hot DAO query and reports the ones H2 would answer with a full table scan.
+     * @return one line per offending query with its plan; empty if every hot query uses an index
+     */
+    public static List<String> verifyIndexUsage() {
+        List<String> problems = new ArrayList<>();
+        Connection connection = ConnectionUtil.getConnection();
+        try {
+            for (Map.Entry<String, String> query : HOT_QUERIES.entrySet()) {
+                PreparedStatement explain = connection.prepareStatement("EXPLAIN " + query.getValue());
+                ResultSet resultSet = explain.executeQuery();
+                String plan = resultSet.next() ? resultSet.getString(1) : "";
+                if (plan.contains("tableScan")) {
+                    problems.add(query.getKey() + " scans the whole table: " + plan.replaceAll("\\s+", " "));
+                }
+            }
+        } catch (SQLException e) {
+            problems.add("Could not explain hot queries: " + e.getMessage());
+        } finally {
+            try {
+                if (connection != null) {
+                    connection.close();
+                }
+            } catch (SQLException e) {
+                System.out.println("Error closing connection: " + e.getMessage());
+            }
+        }
+        return problems;
+    }
+
+    /**
+     * Applies pending migrations and logs any hot query that still does a full table scan.
+     */
+    public static void migrateAndVerify() {
+        migrate();
+        for (String problem : verifyIndexUsage()) {
+            System.out.println("WARNING: " + problem);
+        }
+    }
+
+    private static final class Migration {
+        final int version;
+        final String description;
+        final String[] statements;
+
+        Migration(int version, String description, String... statements) {
+            this.version = version;
+            this.description = description;
+            this.statements = statements;
+        }
+    }
+}
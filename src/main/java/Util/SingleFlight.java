@@ -0,0 +1,91 @@
+package Util;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent identical calls: while a call for a key is in flight, further callers with the same key get
+ * its result instead of starting their own. The key is forgotten as soon as the call completes, so nothing is
+ * cached; a caller arriving after that starts a new call and sees data at least as fresh as its own arrival.
+ *
+ * Writers call forget() for the keys they affect. A caller arriving after the write then starts a new call rather
+ * than joining one that may have read the data before the write.
+ */
+public class SingleFlight<K, V> {
+
+    private final String name;
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder callCount = new LongAdder();
+    private final LongAdder coalescedCount = new LongAdder();
+
+    public SingleFlight(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Returns the in-flight result for key if there is one, otherwise starts call and shares its result with
+     * everyone who asks for key until it completes. A call that throws fails the shared future.
+     */
+    public CompletableFuture<V> execute(K key, Supplier<CompletableFuture<V>> call) {
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, flight);
+        if (existing != null) {
+            coalescedCount.increment();
+            return existing;
+        }
+        callCount.increment();
+        CompletableFuture<V> result;
+        try {
+            result = call.get();
+        } catch (RuntimeException e) {
+            result = CompletableFuture.failedFuture(e);
+        }
+        result.whenComplete((value, failure) -> {
+            // Removed before completing, so a caller woken by the result cannot join this flight again
+            inFlight.remove(key, flight);
+            if (failure != null) {
+                flight.completeExceptionally(failure);
+            } else {
+                flight.complete(value);
+            }
+        });
+        return flight;
+    }
+
+    // New callers for key start a new call; callers already waiting still get the current one's result
+    public void forget(K key) {
+        inFlight.remove(key);
+    }
+
+    public void forgetIf(Predicate<? super K> affected) {
+        inFlight.keySet().removeIf(affected);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    // Calls actually made
+    public long getCallCount() {
+        return callCount.sum();
+    }
+
+    // Callers that were handed another caller's in-flight result instead of making a call
+    public long getCoalescedCount() {
+        return coalescedCount.sum();
+    }
+
+    // Share of callers served by another caller's call, from 0 to 1
+    public double getCoalescingRatio() {
+        long calls = callCount.sum();
+        long coalesced = coalescedCount.sum();
+        return calls + coalesced == 0 ? 0 : (double) coalesced / (calls + coalesced);
+    }
+
+    public int getInFlight() {
+        return inFlight.size();
+    }
+}
@@ -0,0 +1,183 @@
+package Util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Prepared statements of one physical connection, keyed by SQL text and kept in least-recently-used order. Only
+ * the thread holding the connection's lease touches the cache, so it needs no locking of its own.
+ *
+ * Callers get a handle to the cached statement. Closing the handle clears the parameters and the current result
+ * set and leaves the statement prepared for the next caller; the statement itself is only closed when it is
+ * evicted or when the connection leaves the pool.
+ */
+class StatementCache {
+
+    private final Connection physical;
+    private final int capacity;
+    private final AtomicLong hits;
+    private final AtomicLong misses;
+    private final AtomicLong evictions;
+    private final LinkedHashMap<String, Entry> entries;
+
+    StatementCache(Connection physical, int capacity, AtomicLong hits, AtomicLong misses, AtomicLong evictions) {
+        this.physical = physical;
+        this.capacity = capacity;
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * Returns a handle to a prepared statement for sql, preparing it on a miss. autoGeneratedKeys is null for the
+     * plain prepareStatement(String) variant.
+     */
+    PreparedStatement prepare(Connection lease, String sql, Integer autoGeneratedKeys) throws SQLException {
+        if (capacity <= 0) {
+            return prepareUncached(sql, autoGeneratedKeys);
+        }
+        String key = autoGeneratedKeys == null ? sql : autoGeneratedKeys + "\u0000" + sql;
+        Entry entry = entries.get(key);
+        if (entry != null && !entry.inUse && entry.statement.isClosed()) {
+            entries.remove(key);
+            entry = null;
+        }
+        if (entry != null && !entry.inUse) {
+            hits.incrementAndGet();
+        } else if (entry != null) {
+            // The same SQL is already open on this connection, e.g. a nested query. Hand out a one-off statement
+            // rather than sharing the cached one.
+            misses.incrementAndGet();
+            return prepareUncached(sql, autoGeneratedKeys);
+        } else {
+            misses.incrementAndGet();
+            entry = new Entry(prepareUncached(sql, autoGeneratedKeys));
+            entries.put(key, entry);
+            evictOverflow();
+        }
+        entry.inUse = true;
+        return (PreparedStatement) Proxy.newProxyInstance(StatementCache.class.getClassLoader(),
+                new Class<?>[] { PreparedStatement.class }, new Handle(entry, lease));
+    }
+
+    private PreparedStatement prepareUncached(String sql, Integer autoGeneratedKeys) throws SQLException {
+        return autoGeneratedKeys == null
+                ? physical.prepareStatement(sql)
+                : physical.prepareStatement(sql, autoGeneratedKeys);
+    }
+
+    /**
+     * Evicts least recently used entries that are not currently checked out until the cache fits its capacity.
+     */
+    private void evictOverflow() {
+        Iterator<Entry> eldestFirst = entries.values().iterator();
+        while (entries.size() > capacity && eldestFirst.hasNext()) {
+            Entry eldest = eldestFirst.next();
+            if (!eldest.inUse) {
+                eldestFirst.remove();
+                evictions.incrementAndGet();
+                closeQuietly(eldest.statement);
+            }
+        }
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    /**
+     * Closes every cached statement. Called when the physical connection is closed.
+     */
+    void close() {
+        for (Entry entry : entries.values()) {
+            closeQuietly(entry.statement);
+        }
+        entries.clear();
+    }
+
+    private static void closeQuietly(PreparedStatement statement) {
+        try {
+            statement.close();
+        } catch (SQLException e) {
+            System.out.println("Error closing cached statement: " + e.getMessage());
+        }
+    }
+
+    private static final class Entry {
+        final PreparedStatement statement;
+        boolean inUse;
+
+        Entry(PreparedStatement statement) {
+            this.statement = statement;
+        }
+    }
+
+    /**
+     * One checkout of a cached statement. close() resets the statement and hands it back to the cache.
+     */
+    private static final class Handle implements InvocationHandler {
+        private final Entry entry;
+        private final Connection lease;
+        private boolean closed;
+
+        Handle(Entry entry, Connection lease) {
+            this.entry = entry;
+            this.lease = lease;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!closed) {
+                        closed = true;
+                        reset();
+                    }
+                    return null;
+                case "isClosed":
+                    return closed || entry.statement.isClosed();
+                case "getConnection":
+                    return lease;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "CachedStatement[" + entry.statement + "]";
+                default:
+                    break;
+            }
+            if (closed) {
+                throw new SQLException("Statement has already been closed");
+            }
+            try {
+                return method.invoke(entry.statement, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+
+        private void reset() throws SQLException {
+            try {
+                ResultSet current = entry.statement.getResultSet();
+                if (current != null) {
+                    current.close();
+                }
+                entry.statement.clearParameters();
+                entry.statement.clearBatch();
+            } finally {
+                entry.inUse = false;
+            }
+        }
+    }
+}
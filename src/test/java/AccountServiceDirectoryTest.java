@@ -0,0 +1,66 @@
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import DAO.AccountDAO;
+import Model.Account;
+import Service.AccountService;
+
+public class AccountServiceDirectoryTest {
+    AccountDAO accountDAO;
+    AccountService accountService;
+
+    /**
+     * Before every test, build an AccountService over a mock DAO that knows about one account.
+     */
+    @Before
+    public void setUp() {
+        accountDAO = Mockito.mock(AccountDAO.class);
+        Mockito.when(accountDAO.getAllAccountSummaries()).thenReturn(List.of(new Account(1, "testuser1", null)));
+        accountService = new AccountService(accountDAO);
+    }
+
+    /**
+     * Existence checks should be answered from the directory loaded at startup, never from the database.
+     */
+    @Test
+    public void existenceChecksDoNotQueryTheDatabase() {
+        Assert.assertTrue(accountService.accountExists("testuser1"));
+        Assert.assertFalse(accountService.accountExists("nobody"));
+        Assert.assertTrue(accountService.accountExists(1));
+        Assert.assertFalse(accountService.accountExists(2));
+        Assert.assertEquals(Set.of(1), accountService.getExistingAccountIds(List.of(1, 2, 3)));
+
+        Mockito.verify(accountDAO, Mockito.never()).accountExists(Mockito.anyString());
+    }
+
+    /**
+     * A registered account should be known to the directory straight away.
+     */
+    @Test
+    public void registeredAccountIsAddedToTheDirectory() {
+        Account newAccount = new Account("user2", "password");
+        Mockito.when(accountDAO.insertAccount(newAccount)).thenReturn(new Account(2, "user2", "password"));
+
+        accountService.addAccount(newAccount);
+
+        Assert.assertTrue(accountService.accountExists("user2"));
+        Assert.assertTrue(accountService.accountExists(2));
+    }
+
+    /**
+     * A registration the database rejects should not be added to the directory.
+     */
+    @Test
+    public void rejectedRegistrationIsNotAdded() {
+        Account newAccount = new Account("user2", "password");
+        Mockito.when(accountDAO.insertAccount(newAccount)).thenReturn(null);
+
+        Assert.assertNull(accountService.addAccount(newAccount));
+        Assert.assertFalse(accountService.accountExists("user2"));
+    }
+}
@@ -0,0 +1,98 @@
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import Util.AdmissionLimiter;
+
+public class AdmissionLimiterTest {
+
+    /**
+     * Requests within the limit should be admitted straight away, without being counted as queued.
+     */
+    @Test
+    public void admitsUpToTheLimitWithoutQueueing() throws InterruptedException {
+        AdmissionLimiter limiter = new AdmissionLimiter("reads", 2, 10, 5, 100);
+
+        Assert.assertTrue(limiter.acquire());
+        Assert.assertTrue(limiter.acquire());
+
+        Assert.assertEquals(2, limiter.getInFlight());
+        Assert.assertEquals(0, limiter.getQueuedCount());
+        limiter.release();
+        limiter.release();
+        Assert.assertEquals(0, limiter.getInFlight());
+    }
+
+    /**
+     * A request over the limit should wait and be admitted once a permit is released within the interval.
+     */
+    @Test
+    public void queuedRequestIsAdmittedWhenAPermitFreesUp() throws Exception {
+        AdmissionLimiter limiter = new AdmissionLimiter("writes", 1, 10, 5, 2000);
+        Assert.assertTrue(limiter.acquire());
+
+        CompletableFuture<Boolean> waiter = waitForAdmission(limiter);
+        while (limiter.getWaiting() == 0) {
+            Thread.sleep(1);
+        }
+        limiter.release();
+
+        Assert.assertTrue(waiter.get(5, TimeUnit.SECONDS));
+        Assert.assertEquals(1, limiter.getQueuedCount());
+        Assert.assertEquals(0, limiter.getShedCount());
+    }
+
+    /**
+     * With the limit reached, a request is shed once it has waited out the interval, and immediately if the queue
+     * is full.
+     */
+    @Test
+    public void shedsWhenWaitingTooLongOrQueueIsFull() throws InterruptedException {
+        AdmissionLimiter limiter = new AdmissionLimiter("reads", 1, 1, 5, 50);
+        Assert.assertTrue(limiter.acquire());
+
+        long start = System.nanoTime();
+        Assert.assertFalse(limiter.acquire());
+        Assert.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(5));
+        Assert.assertEquals(1, limiter.getShedCount());
+
+        AdmissionLimiter noQueue = new AdmissionLimiter("writes", 1, 0, 5, 50);
+        Assert.assertTrue(noQueue.acquire());
+        Assert.assertFalse(noQueue.acquire());
+        Assert.assertEquals(0, noQueue.getQueuedCount());
+        Assert.assertEquals(1, noQueue.getShedCount());
+    }
+
+    /**
+     * Once the queue has stood for longer than the interval, new arrivals may only wait the short target.
+     */
+    @Test
+    public void standingQueueShortensTheWait() throws Exception {
+        AdmissionLimiter limiter = new AdmissionLimiter("reads", 1, 10, 5, 200);
+        Assert.assertTrue(limiter.acquire());
+        // Two overlapping waiters keep the queue from emptying for longer than the interval
+        CompletableFuture<Boolean> first = waitForAdmission(limiter);
+        Thread.sleep(150);
+        CompletableFuture<Boolean> second = waitForAdmission(limiter);
+        Thread.sleep(100);
+
+        long start = System.nanoTime();
+        Assert.assertFalse(limiter.acquire());
+        Assert.assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(150));
+
+        Assert.assertFalse(first.get(5, TimeUnit.SECONDS));
+        Assert.assertFalse(second.get(5, TimeUnit.SECONDS));
+    }
+
+    private CompletableFuture<Boolean> waitForAdmission(AdmissionLimiter limiter) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return limiter.acquire();
+            } catch (InterruptedException e) {
+                return false;
+            }
+        });
+    }
+}
@@ -0,0 +1,126 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import DAO.ColumnarMessageStore;
+import DAO.MessageDAO;
+import Model.Message;
+import Util.ConnectionUtil;
+
+public class ColumnarMessageStoreTest {
+    MessageDAO messageDAO;
+    ColumnarMessageStore store;
+
+    /**
+     * Before every test, reset the database and load a new store from it.
+     */
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+        messageDAO = new MessageDAO(false);
+        store = new ColumnarMessageStore(messageDAO);
+    }
+
+    /**
+     * The store should start with what H2 holds, and every write should reach both the store and H2.
+     */
+    @Test
+    public void writesGoThroughToTheDatabase() {
+        Message seeded = new Message(1, 1, "test message 1", 1669947792);
+        Assert.assertEquals(seeded, store.getMessageById(1));
+
+        Message added = store.addMessage(new Message(1, "h\u00e9llo w\u00f6rld", 1669947800));
+        Assert.assertEquals(added, store.getMessageById(added.getMessage_id()));
+        Assert.assertEquals(added, messageDAO.getMessageById(added.getMessage_id()));
+
+        Message updated = store.updateMessageTextReturning(1, "changed");
+        Assert.assertEquals("changed", store.getMessageById(1).getMessage_text());
+        Assert.assertEquals(updated, messageDAO.getMessageById(1));
+
+        Assert.assertNotNull(store.deleteMessageReturning(1));
+        Assert.assertNull(store.getMessageById(1));
+        Assert.assertNull(messageDAO.getMessageById(1));
+        Assert.assertEquals(messageDAO.getAllMessages(), store.getAllMessages());
+        Assert.assertEquals(1, store.getLiveRowCount());
+    }
+
+    /**
+     * A write the database rejects, here a message from a missing account, should not appear in the store.
+     */
+    @Test
+    public void rejectedWriteIsNotApplied() {
+        Assert.assertNull(store.addMessage(new Message(99, "no such account", 1669947800)));
+        Assert.assertEquals(1, store.getAllMessages().size());
+    }
+
+    /**
+     * Listings and pages should match what MessageDAO returns for the same data.
+     */
+    @Test
+    public void listingsMatchTheDatabase() {
+        List<Message> batch = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            batch.add(new Message(1, "message " + i, 1669947792L + i));
+        }
+        store.addMessages(batch);
+        store.deleteMessage(10);
+
+        Assert.assertEquals(messageDAO.getAllMessages(), store.getAllMessages());
+        Assert.assertEquals(messageDAO.getMessagesByUser(1), store.getMessagesByUser(1));
+        Assert.assertEquals(messageDAO.getMessagesAfter(5, 20), store.getMessagesAfter(5, 20));
+        Assert.assertEquals(messageDAO.getMessagesByUserAfter(1, 2990, 50), store.getMessagesByUserAfter(1, 2990, 50));
+        Assert.assertTrue(store.getMessagesByUser(2).isEmpty());
+    }
+
+    /**
+     * Readers running alongside the writer should only ever see complete rows, in message_id order.
+     */
+    @Test
+    public void readersSeeCompleteRowsWhileTheWriterAppends() throws Exception {
+        store.deleteMessage(1);
+        AtomicBoolean writing = new AtomicBoolean(true);
+        CompletableFuture<Void> reader = CompletableFuture.runAsync(() -> {
+            while (writing.get()) {
+                int previousId = 0;
+                for (Message message : store.getAllMessages()) {
+                    Assert.assertTrue(message.getMessage_id() > previousId);
+                    Assert.assertEquals("message " + message.getTime_posted_epoch(), message.getMessage_text());
+                    previousId = message.getMessage_id();
+                }
+            }
+        });
+        for (int round = 0; round < 20; round++) {
+            List<Message> batch = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                long epoch = round * 200L + i;
+                batch.add(new Message(1, "message " + epoch, epoch));
+            }
+            store.addMessages(batch);
+        }
+        writing.set(false);
+        reader.get(30, TimeUnit.SECONDS);
+        Assert.assertEquals(4000, store.getLiveRowCount());
+    }
+
+    /**
+     * Its write lock would serialize group commits into batches of one, so a DAO with group commit on is refused.
+     */
+    @Test
+    public void refusesGroupCommit() {
+        MessageDAO groupCommitDAO = new MessageDAO(true);
+        try {
+            new ColumnarMessageStore(groupCommitDAO);
+            Assert.fail("expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            Assert.assertNull(store.getGroupCommitWriter());
+        } finally {
+            groupCommitDAO.getGroupCommitWriter().close();
+        }
+    }
+}
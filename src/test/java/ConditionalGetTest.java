@@ -0,0 +1,121 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class ConditionalGetTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient for interacting
+     * locally on the web. A second account is registered so per-account versions can be told apart.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException, IOException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        app.start(8080);
+        Thread.sleep(1000);
+
+        HttpRequest registerRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/register"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"username\": \"testuser2\", \"password\": \"password\"}"))
+                .header("Content-Type", "application/json")
+                .build();
+        webClient.send(registerRequest, HttpResponse.BodyHandlers.ofString());
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Repeating GET localhost:8080/messages with the ETag it returned
+     *
+     * Expected Response:
+     *  Status Code: 304 with an empty body, until a message is posted; then 200 with a new ETag
+     */
+    @Test
+    public void getAllMessagesNotModifiedUntilAMessageIsPosted() throws IOException, InterruptedException {
+        HttpResponse<String> first = get("/messages", null);
+        Assert.assertEquals(200, first.statusCode());
+        String etag = first.headers().firstValue("ETag").orElseThrow();
+
+        HttpResponse<String> second = get("/messages", etag);
+        Assert.assertEquals(304, second.statusCode());
+        Assert.assertEquals("", second.body());
+
+        postMessage(1);
+
+        HttpResponse<String> third = get("/messages", etag);
+        Assert.assertEquals(200, third.statusCode());
+        Assert.assertNotEquals(etag, third.headers().firstValue("ETag").orElseThrow());
+    }
+
+    /**
+     * Sending GET localhost:8080/accounts/{account_id}/messages with If-None-Match after another account posts
+     *
+     * Expected Response:
+     *  Status Code: 304 for the account that did not post, 200 for the account that did
+     */
+    @Test
+    public void getMessagesByUserVersionedPerAccount() throws IOException, InterruptedException {
+        String firstAccountTag = get("/accounts/1/messages", null).headers().firstValue("ETag").orElseThrow();
+        String secondAccountTag = get("/accounts/2/messages", null).headers().firstValue("ETag").orElseThrow();
+
+        postMessage(2);
+
+        Assert.assertEquals(304, get("/accounts/1/messages", firstAccountTag).statusCode());
+        Assert.assertEquals(200, get("/accounts/2/messages", secondAccountTag).statusCode());
+    }
+
+    /**
+     * Sending GET localhost:8080/messages/1 with a matching weak If-None-Match, and with "*"
+     *
+     * Expected Response:
+     *  Status Code: 304
+     */
+    @Test
+    public void getMessageByIdNotModified() throws IOException, InterruptedException {
+        String etag = get("/messages/1", null).headers().firstValue("ETag").orElseThrow();
+
+        Assert.assertEquals(304, get("/messages/1", "W/" + etag).statusCode());
+        Assert.assertEquals(304, get("/messages/1", "*").statusCode());
+    }
+
+    private HttpResponse<String> get(String path, String ifNoneMatch) throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder().uri(URI.create("http://localhost:8080" + path));
+        if (ifNoneMatch != null) {
+            request.header("If-None-Match", ifNoneMatch);
+        }
+        return webClient.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private void postMessage(int postedBy) throws IOException, InterruptedException {
+        HttpRequest postMessageRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{"+
+                        "\"posted_by\":" + postedBy + ", " +
+                        "\"message_text\": \"a new message\", " +
+                        "\"time_posted_epoch\": 1669947800}"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(200, webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+    }
+}
@@ -0,0 +1,174 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Util.ConnectionPool;
+import Util.PoolStats;
+
+public class ConnectionPoolTest {
+    ConnectionPool pool;
+
+    /**
+     * Before every test, build a small pool over a private in-memory database so the counters start from zero.
+     */
+    @Before
+    public void setUp() {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:pooltest;DB_CLOSE_DELAY=-1");
+        dataSource.setUser("sa");
+        dataSource.setPassword("sa");
+        pool = new ConnectionPool(dataSource, 1, 2, 200, 50, 0, 2);
+        pool.warmUp();
+    }
+
+    @After
+    public void tearDown() {
+        pool.close();
+    }
+
+    /**
+     * Closing a pooled connection should return it to the pool rather than opening a new one on the next call.
+     */
+    @Test
+    public void closedConnectionIsReused() throws SQLException {
+        Connection first = pool.getConnection();
+        first.close();
+        Connection second = pool.getConnection();
+        second.close();
+
+        PoolStats stats = pool.getStats();
+        Assert.assertEquals(1, stats.getCreatedCount());
+        Assert.assertEquals(0, stats.getActive());
+        Assert.assertEquals(1, stats.getIdle());
+        Assert.assertEquals(2, stats.getAcquireCount());
+    }
+
+    /**
+     * Borrowing more than maxSize connections should time out instead of opening more.
+     */
+    @Test
+    public void exhaustedPoolTimesOut() throws SQLException {
+        Connection first = pool.getConnection();
+        Connection second = pool.getConnection();
+        Assert.assertEquals(2, pool.getStats().getActive());
+        try {
+            pool.getConnection();
+            Assert.fail("Expected the third borrower to time out");
+        } catch (SQLTimeoutException e) {
+            Assert.assertEquals(1, pool.getStats().getTimeoutCount());
+        }
+        first.close();
+        second.close();
+        Assert.assertEquals(2, pool.getStats().getIdle());
+    }
+
+    /**
+     * A connection that has been returned must not be usable through the old handle.
+     */
+    @Test
+    public void releasedConnectionRejectsUse() throws SQLException {
+        Connection connection = pool.getConnection();
+        connection.close();
+        connection.close();
+        Assert.assertTrue(connection.isClosed());
+        try {
+            connection.prepareStatement("SELECT 1");
+            Assert.fail("Expected a released connection to reject statements");
+        } catch (SQLException e) {
+            Assert.assertEquals(0, pool.getStats().getActive());
+        }
+    }
+
+    /**
+     * A transaction left open by a caller should be rolled back before the connection is handed out again.
+     */
+    @Test
+    public void abandonedTransactionIsRolledBack() throws SQLException {
+        Connection setup = pool.getConnection();
+        setup.prepareStatement("CREATE TABLE IF NOT EXISTS pool_tx (id INT)").executeUpdate();
+        setup.prepareStatement("DELETE FROM pool_tx").executeUpdate();
+        setup.close();
+
+        Connection connection = pool.getConnection();
+        connection.setAutoCommit(false);
+        connection.prepareStatement("INSERT INTO pool_tx VALUES (1)").executeUpdate();
+        connection.close();
+
+        Connection next = pool.getConnection();
+        Assert.assertTrue(next.getAutoCommit());
+        PreparedStatement count = next.prepareStatement("SELECT COUNT(*) FROM pool_tx");
+        ResultSet resultSet = count.executeQuery();
+        resultSet.next();
+        Assert.assertEquals(0, resultSet.getInt(1));
+        next.close();
+    }
+
+    /**
+     * Idle connections above minSize should be closed once they pass the idle timeout.
+     */
+    @Test
+    public void idleConnectionsAboveMinimumAreEvicted() throws SQLException, InterruptedException {
+        Connection first = pool.getConnection();
+        Connection second = pool.getConnection();
+        first.close();
+        second.close();
+        Assert.assertEquals(2, pool.getStats().getTotal());
+
+        long deadline = System.currentTimeMillis() + 2_000;
+        while (pool.getStats().getTotal() > 1 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        Assert.assertEquals(1, pool.getStats().getTotal());
+        Assert.assertEquals(1, pool.getStats().getEvictedCount());
+    }
+
+    /**
+     * Preparing the same SQL again on a pooled connection should reuse the cached statement, and closing the
+     * handle should leave the statement usable for the next caller.
+     */
+    @Test
+    public void preparedStatementsAreCachedPerConnection() throws SQLException {
+        for (int i = 0; i < 3; i++) {
+            Connection connection = pool.getConnection();
+            PreparedStatement statement = connection.prepareStatement("SELECT ?");
+            statement.setInt(1, i);
+            ResultSet resultSet = statement.executeQuery();
+            resultSet.next();
+            Assert.assertEquals(i, resultSet.getInt(1));
+            connection.close();
+            Assert.assertTrue(statement.isClosed());
+        }
+
+        PoolStats stats = pool.getStats();
+        Assert.assertEquals(1, stats.getStatementCacheMisses());
+        Assert.assertEquals(2, stats.getStatementCacheHits());
+    }
+
+    /**
+     * Once the cache is full, the least recently used statement should be closed and dropped.
+     */
+    @Test
+    public void leastRecentlyUsedStatementIsEvicted() throws SQLException {
+        Connection connection = pool.getConnection();
+        connection.prepareStatement("SELECT 1").close();
+        connection.prepareStatement("SELECT 2").close();
+        connection.prepareStatement("SELECT 1").close();
+        connection.prepareStatement("SELECT 3").close();
+        connection.prepareStatement("SELECT 1").close();
+        connection.prepareStatement("SELECT 2").close();
+        connection.close();
+
+        PoolStats stats = pool.getStats();
+        Assert.assertEquals(2, stats.getStatementCacheEvictions());
+        Assert.assertEquals(2, stats.getStatementCacheHits());
+        Assert.assertEquals(4, stats.getStatementCacheMisses());
+    }
+}
@@ -0,0 +1,125 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import Util.PayloadFormat;
+import io.javalin.Javalin;
+
+public class ContentNegotiationTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper cborMapper;
+    ObjectMapper smileMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and a CBOR and a
+     * Smile ObjectMapper for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        cborMapper = new ObjectMapper(new CBORFactory());
+        smileMapper = new ObjectMapper(new SmileFactory());
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending GET localhost:8080/messages/1 with Accept: application/cbor
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Content-Type: application/cbor
+     *  Response Body: CBOR representation of the message, with an ETag distinct from the JSON one
+     */
+    @Test
+    public void getMessageByIdAsCbor() throws IOException, InterruptedException {
+        HttpResponse<byte[]> response = get("/messages/1", "application/cbor");
+
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals("application/cbor", response.headers().firstValue("Content-Type").orElseThrow());
+        Message expected = new Message(1, 1, "test message 1", 1669947792);
+        Assert.assertEquals(expected, cborMapper.readValue(response.body(), Message.class));
+
+        String jsonTag = get("/messages/1", null).headers().firstValue("ETag").orElseThrow();
+        Assert.assertNotEquals(jsonTag, response.headers().firstValue("ETag").orElseThrow());
+    }
+
+    /**
+     * Sending POST localhost:8080/messages with a Smile body and Accept: application/x-jackson-smile, then reading
+     * every message back as a Smile list
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: Smile representations of the created message and of the full list
+     */
+    @Test
+    public void postMessageAndListMessagesAsSmile() throws IOException, InterruptedException {
+        byte[] body = smileMapper.writeValueAsBytes(new Message(1, "a binary message", 1669947800));
+        HttpRequest postRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                .header("Content-Type", "application/x-jackson-smile")
+                .header("Accept", "application/x-jackson-smile")
+                .build();
+        HttpResponse<byte[]> created = webClient.send(postRequest, HttpResponse.BodyHandlers.ofByteArray());
+
+        Assert.assertEquals(200, created.statusCode());
+        Assert.assertEquals(new Message(2, 1, "a binary message", 1669947800),
+                smileMapper.readValue(created.body(), Message.class));
+
+        HttpResponse<byte[]> list = get("/messages", "application/json;q=0.5, application/x-jackson-smile");
+        Assert.assertEquals(200, list.statusCode());
+        List<Message> messages = smileMapper.readValue(list.body(), new TypeReference<List<Message>>(){});
+        Assert.assertEquals(2, messages.size());
+        Assert.assertEquals("a binary message", messages.get(1).getMessage_text());
+    }
+
+    /**
+     * Accept headers without a binary type, or with wildcards only, are answered in JSON as before.
+     */
+    @Test
+    public void acceptNegotiation() {
+        Assert.assertEquals(PayloadFormat.JSON, PayloadFormat.fromAccept(null));
+        Assert.assertEquals(PayloadFormat.JSON, PayloadFormat.fromAccept("*/*"));
+        Assert.assertEquals(PayloadFormat.JSON, PayloadFormat.fromAccept("text/html, application/*;q=0.8"));
+        Assert.assertEquals(PayloadFormat.CBOR, PayloadFormat.fromAccept("application/json;q=0.9, application/cbor"));
+        Assert.assertEquals(PayloadFormat.JSON, PayloadFormat.fromAccept("application/cbor;q=0, */*;q=0.1"));
+        Assert.assertEquals(PayloadFormat.SMILE, PayloadFormat.fromContentType("application/x-jackson-smile"));
+        Assert.assertEquals(PayloadFormat.JSON, PayloadFormat.fromContentType("text/plain; charset=utf-8"));
+    }
+
+    private HttpResponse<byte[]> get(String path, String accept) throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder().uri(URI.create("http://localhost:8080" + path));
+        if (accept != null) {
+            request.header("Accept", accept);
+        }
+        return webClient.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+    }
+}
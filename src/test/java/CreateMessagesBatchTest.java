@@ -0,0 +1,106 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.BatchItemResult;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class CreateMessagesBatchTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/messages/batch with a mix of valid and invalid messages
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: one result per message; valid ones created with consecutive ids, invalid ones rejected
+     */
+    @Test
+    public void createMessagesBatchMixedResults() throws IOException, InterruptedException {
+        HttpRequest postBatchRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/batch"))
+                .POST(HttpRequest.BodyPublishers.ofString("[" +
+                        "{\"posted_by\":1, \"message_text\": \"first\", \"time_posted_epoch\": 1669947792}," +
+                        "{\"posted_by\":1, \"message_text\": \"\", \"time_posted_epoch\": 1669947792}," +
+                        "{\"posted_by\":42, \"message_text\": \"unknown poster\", \"time_posted_epoch\": 1669947792}," +
+                        "{\"posted_by\":1, \"message_text\": \"second\", \"time_posted_epoch\": 1669947793}]"))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse<String> response = webClient.send(postBatchRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+
+        List<BatchItemResult> results = objectMapper.readValue(response.body(),
+                new TypeReference<List<BatchItemResult>>(){});
+        Assert.assertEquals(4, results.size());
+        Assert.assertEquals(BatchItemResult.CREATED, results.get(0).getStatus());
+        Assert.assertEquals(new Message(2, 1, "first", 1669947792), results.get(0).getMessage());
+        Assert.assertEquals(BatchItemResult.REJECTED, results.get(1).getStatus());
+        Assert.assertNotNull(results.get(1).getError());
+        Assert.assertEquals(BatchItemResult.REJECTED, results.get(2).getStatus());
+        Assert.assertEquals(BatchItemResult.CREATED, results.get(3).getStatus());
+        Assert.assertEquals(new Message(3, 1, "second", 1669947793), results.get(3).getMessage());
+
+        HttpRequest getRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/3"))
+                .build();
+        HttpResponse<String> getResponse = webClient.send(getRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(new Message(3, 1, "second", 1669947793),
+                objectMapper.readValue(getResponse.body(), Message.class));
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/messages/batch with a body that is not an array
+     *
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void createMessagesBatchNotAnArray() throws IOException, InterruptedException {
+        HttpRequest postBatchRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/batch"))
+                .POST(HttpRequest.BodyPublishers.ofString(
+                        "{\"posted_by\":1, \"message_text\": \"first\", \"time_posted_epoch\": 1669947792}"))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse<String> response = webClient.send(postBatchRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(400, response.statusCode());
+    }
+}
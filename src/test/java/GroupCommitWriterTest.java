@@ -0,0 +1,180 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import DAO.GroupCommitWriter;
+import DAO.MessageDAO;
+import Model.Message;
+import Service.MessageService;
+import Util.ConnectionUtil;
+
+public class GroupCommitWriterTest {
+    MessageDAO messageDAO;
+
+    /**
+     * Before every test, reset the database and build a DAO with group commit turned on.
+     */
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+        messageDAO = new MessageDAO(true);
+    }
+
+    @After
+    public void tearDown() {
+        messageDAO.getGroupCommitWriter().close();
+    }
+
+    /**
+     * Concurrent inserts should all be stored with distinct ids while sharing transactions.
+     */
+    @Test
+    public void concurrentInsertsShareCommits() throws InterruptedException {
+        int threads = 8;
+        int perThread = 50;
+        List<Thread> workers = new ArrayList<>();
+        Set<Integer> ids = Collections.synchronizedSet(new HashSet<>());
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            Thread worker = new Thread(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    Message stored = messageDAO.addMessage(new Message(1, "msg " + thread + "-" + i, i));
+                    Assert.assertNotNull(stored);
+                    ids.add(stored.getMessage_id());
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        GroupCommitWriter writer = messageDAO.getGroupCommitWriter();
+        Assert.assertEquals(threads * perThread, ids.size());
+        Assert.assertEquals(threads * perThread, writer.getMessageCount());
+        Assert.assertTrue(writer.getBatchCount() < writer.getMessageCount());
+        Assert.assertEquals(threads * perThread + 1, messageDAO.getAllMessages().size());
+    }
+
+    /**
+     * A message that cannot be stored should fail on its own without failing the rest of its batch.
+     */
+    @Test
+    public void badMessageDoesNotFailItsBatch() {
+        CompletableFuture<Message> good = messageDAO.addMessageAsync(new Message(1, "good", 1), Runnable::run);
+        CompletableFuture<Message> bad = messageDAO.addMessageAsync(new Message(999, "no such account", 1),
+                Runnable::run);
+
+        Assert.assertEquals("good", good.join().getMessage_text());
+        Assert.assertNull(bad.join());
+    }
+
+    /**
+     * Asynchronous adds through MessageService should not hold an executor thread while they wait for their commit,
+     * so even a single-threaded executor lets them share transactions, and what follows each commit should run off
+     * the writer thread.
+     */
+    @Test
+    public void asyncAddsDoNotHoldExecutorThreads() {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            MessageService messageService = new MessageService(messageDAO,
+                    new MessageService.Options().executor(executor));
+            List<CompletableFuture<Message>> added = new ArrayList<>();
+            List<CompletableFuture<String>> completedOn = new ArrayList<>();
+            for (int i = 0; i < 40; i++) {
+                CompletableFuture<Message> future = messageService.addMessageAsync(new Message(1, "async " + i, i));
+                added.add(future);
+                completedOn.add(future.thenApply(message -> Thread.currentThread().getName()));
+            }
+            for (CompletableFuture<Message> future : added) {
+                Assert.assertNotNull(future.join());
+            }
+            for (CompletableFuture<String> thread : completedOn) {
+                Assert.assertNotEquals("GroupCommitWriter", thread.join());
+            }
+            Assert.assertTrue(messageDAO.getGroupCommitWriter().getMaxBatchSize() > 1);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Every DAO with group commit on should share one writer, and a closed writer should answer instead of leaving
+     * callers waiting.
+     */
+    @Test
+    public void writerIsSharedAndAnswersAfterClose() {
+        GroupCommitWriter writer = messageDAO.getGroupCommitWriter();
+        Assert.assertSame(writer, new MessageDAO(true).getGroupCommitWriter());
+
+        writer.close();
+        Assert.assertTrue(writer.isClosed());
+        Assert.assertNull(writer.submit(new Message(1, "too late", 1)).join());
+        // A fresh writer takes its place; tearDown closes it
+        messageDAO = new MessageDAO(true);
+        Assert.assertNotSame(writer, messageDAO.getGroupCommitWriter());
+    }
+
+    /**
+     * With the queue full, submit should fail the future at once rather than block its caller, while put waits for
+     * room.
+     */
+    @Test
+    public void submitRejectsWhenTheQueueIsFull() throws InterruptedException {
+        CountDownLatch committing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        MessageDAO slowDAO = new MessageDAO(false) {
+            @Override
+            public List<Message> addMessages(List<Message> newMessages) {
+                committing.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.addMessages(newMessages);
+            }
+        };
+        GroupCommitWriter writer = new GroupCommitWriter(slowDAO, 1, 0, 1);
+        try {
+            CompletableFuture<Message> first = writer.submit(new Message(1, "first", 1));
+            committing.await();
+            CompletableFuture<Message> queued = writer.submit(new Message(1, "queued", 1));
+            CompletableFuture<Message> rejected = writer.submit(new Message(1, "rejected", 1));
+
+            Assert.assertTrue(rejected.isCompletedExceptionally());
+            try {
+                rejected.join();
+                Assert.fail();
+            } catch (CompletionException e) {
+                Assert.assertTrue(e.getCause() instanceof RejectedExecutionException);
+            }
+            Assert.assertEquals(1, writer.getRejectedCount());
+
+            CompletableFuture<Message> waited = CompletableFuture.supplyAsync(
+                    () -> writer.put(new Message(1, "waited", 1)).join());
+            release.countDown();
+            Assert.assertEquals("first", first.join().getMessage_text());
+            Assert.assertEquals("queued", queued.join().getMessage_text());
+            Assert.assertEquals("waited", waited.join().getMessage_text());
+        } finally {
+            release.countDown();
+            writer.close();
+        }
+    }
+}
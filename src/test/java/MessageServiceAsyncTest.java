@@ -0,0 +1,82 @@
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import DAO.MessageDAO;
+import Model.Message;
+import Service.MessageService;
+
+public class MessageServiceAsyncTest {
+    MessageDAO messageDAO;
+    ExecutorService executor;
+    MessageService messageService;
+
+    /**
+     * Before every test, build a MessageService over a mock DAO and a single-threaded executor of its own.
+     */
+    @Before
+    public void setUp() {
+        messageDAO = Mockito.mock(MessageDAO.class);
+        executor = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "test-db-worker"));
+        messageService = new MessageService(messageDAO, new MessageService.Options().executor(executor));
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * The DAO call should run on the service's executor, not on the calling thread, and complete the future.
+     */
+    @Test
+    public void asyncLookupRunsOnTheExecutor() throws Exception {
+        String[] daoThread = new String[1];
+        Mockito.when(messageDAO.getMessageById(1)).thenAnswer(invocation -> {
+            daoThread[0] = Thread.currentThread().getName();
+            return new Message(1, 1, "test message 1", 1669947792);
+        });
+
+        Message message = messageService.getMessageByIdAsync(1).get(5, TimeUnit.SECONDS);
+
+        Assert.assertEquals(new Message(1, 1, "test message 1", 1669947792), message);
+        Assert.assertEquals("test-db-worker", daoThread[0]);
+    }
+
+    /**
+     * When the executor will not take more work the future should fail rather than the call throwing.
+     */
+    @Test
+    public void rejectedWorkFailsTheFuture() throws Exception {
+        executor.shutdown();
+        // Without group commit the DAO hands the insert to the executor it is given
+        Mockito.when(messageDAO.addMessageAsync(Mockito.any(), Mockito.any())).thenCallRealMethod();
+
+        CompletableFuture<Message> future = messageService.addMessageAsync(new Message(1, "hello", 1669947792));
+
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            Assert.fail("expected the future to fail");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+        Mockito.verify(messageDAO, Mockito.never()).addMessage(Mockito.any());
+    }
+
+    /**
+     * An invalid page cursor should be reported straight away, before any work is queued.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidCursorThrowsBeforeQueueing() {
+        messageService.getMessagesPageAsync("not a cursor", 10);
+    }
+}
@@ -0,0 +1,105 @@
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import DAO.MessageDAO;
+import Model.Message;
+import Service.MessageService;
+import Util.CacheStats;
+
+public class MessageServiceCacheTest {
+    MessageDAO messageDAO;
+    MessageService messageService;
+
+    /**
+     * Before every test, build a MessageService over a mock DAO so the number of database calls can be counted.
+     */
+    @Before
+    public void setUp() {
+        messageDAO = Mockito.mock(MessageDAO.class);
+        messageService = new MessageService(messageDAO, new MessageService.Options());
+    }
+
+    /**
+     * Repeated lookups of the same message should reach the DAO only once.
+     */
+    @Test
+    public void repeatedLookupsHitTheCache() {
+        Mockito.when(messageDAO.getMessageById(1)).thenReturn(new Message(1, 1, "test message 1", 1669947792));
+
+        for (int i = 0; i < 3; i++) {
+            Assert.assertEquals(new Message(1, 1, "test message 1", 1669947792), messageService.getMessageById(1));
+        }
+
+        Mockito.verify(messageDAO, Mockito.times(1)).getMessageById(1);
+        CacheStats stats = messageService.getMessageCacheStats();
+        Assert.assertEquals(2, stats.getHitCount());
+        Assert.assertEquals(1, stats.getMissCount());
+    }
+
+    /**
+     * A message that does not exist should be remembered as missing until it is created.
+     */
+    @Test
+    public void missesAreCachedUntilTheMessageIsAdded() {
+        Message newMessage = new Message(1, "hello", 1669947792);
+        Mockito.when(messageDAO.addMessage(newMessage)).thenReturn(new Message(2, 1, "hello", 1669947792));
+
+        Assert.assertNull(messageService.getMessageById(2));
+        Assert.assertNull(messageService.getMessageById(2));
+        Mockito.verify(messageDAO, Mockito.times(1)).getMessageById(2);
+
+        messageService.addMessage(newMessage);
+        Assert.assertEquals(new Message(2, 1, "hello", 1669947792), messageService.getMessageById(2));
+        Mockito.verify(messageDAO, Mockito.times(1)).getMessageById(2);
+    }
+
+    /**
+     * Updating or deleting a message should not leave the old version in the cache.
+     */
+    @Test
+    public void writesInvalidateTheCache() {
+        Message original = new Message(1, 1, "test message 1", 1669947792);
+        Message updated = new Message(1, 1, "updated", 1669947792);
+        Mockito.when(messageDAO.getMessageById(1)).thenReturn(original, updated);
+        Mockito.when(messageDAO.updateMessage(Mockito.any())).thenReturn(updated);
+        Mockito.when(messageDAO.deleteMessage(1)).thenReturn(true);
+
+        messageService.getMessageById(1);
+        messageService.updateMessage(updated);
+        Assert.assertEquals("updated", messageService.getMessageById(1).getMessage_text());
+
+        messageService.deleteMessage(1);
+        Assert.assertNull(messageService.getMessageById(1));
+        Mockito.verify(messageDAO, Mockito.times(2)).getMessageById(1);
+    }
+
+    /**
+     * Changing a message returned by the service must not change what the cache holds.
+     */
+    @Test
+    public void callersCannotModifyCachedMessages() {
+        Mockito.when(messageDAO.getMessageById(1)).thenReturn(new Message(1, 1, "test message 1", 1669947792));
+
+        messageService.getMessageById(1).setMessage_text("changed by caller");
+        Assert.assertEquals("test message 1", messageService.getMessageById(1).getMessage_text());
+    }
+
+    /**
+     * The single-statement update and delete should leave the cache holding the row they returned.
+     */
+    @Test
+    public void returningWritesPopulateTheCache() {
+        Mockito.when(messageDAO.updateMessageTextReturning(1, "updated"))
+                .thenReturn(new Message(1, 1, "updated", 1669947792));
+        Mockito.when(messageDAO.deleteMessageReturning(1)).thenReturn(new Message(1, 1, "updated", 1669947792));
+
+        messageService.updateMessageText(1, "updated");
+        Assert.assertEquals("updated", messageService.getMessageById(1).getMessage_text());
+
+        messageService.deleteMessageReturning(1);
+        Assert.assertNull(messageService.getMessageById(1));
+        Mockito.verify(messageDAO, Mockito.never()).getMessageById(1);
+    }
+}
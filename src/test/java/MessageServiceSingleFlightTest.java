@@ -0,0 +1,98 @@
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import DAO.MessageDAO;
+import Model.Message;
+import Model.MessagePage;
+import Service.MessageService;
+import Util.SingleFlight;
+
+public class MessageServiceSingleFlightTest {
+    MessageDAO messageDAO;
+    ExecutorService executor;
+    MessageService messageService;
+    CountDownLatch daoCalled;
+    CountDownLatch releaseDao;
+
+    /**
+     * Before every test, build a MessageService over a mock DAO whose reads block until the test releases them, so
+     * several reads can be issued while the first is still in flight.
+     */
+    @Before
+    public void setUp() {
+        messageDAO = Mockito.mock(MessageDAO.class);
+        executor = Executors.newFixedThreadPool(4);
+        messageService = new MessageService(messageDAO, new MessageService.Options().executor(executor));
+        daoCalled = new CountDownLatch(1);
+        releaseDao = new CountDownLatch(1);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Concurrent reads of the same message should share one DAO call, yet each get its own copy of the message.
+     */
+    @Test
+    public void concurrentReadsOfOneMessageShareOneCall() throws Exception {
+        Mockito.when(messageDAO.getMessageById(1)).thenAnswer(invocation -> {
+            daoCalled.countDown();
+            releaseDao.await(5, TimeUnit.SECONDS);
+            return new Message(1, 1, "test message 1", 1669947792);
+        });
+
+        CompletableFuture<Message> first = messageService.getMessageByIdAsync(1);
+        Assert.assertTrue(daoCalled.await(5, TimeUnit.SECONDS));
+        CompletableFuture<Message> second = messageService.getMessageByIdAsync(1);
+        CompletableFuture<Message> third = messageService.getMessageByIdAsync(1);
+        releaseDao.countDown();
+
+        Message expected = new Message(1, 1, "test message 1", 1669947792);
+        Assert.assertEquals(expected, first.get(5, TimeUnit.SECONDS));
+        Assert.assertEquals(expected, second.get(5, TimeUnit.SECONDS));
+        Assert.assertNotSame(first.get(), second.get());
+        Assert.assertNotSame(second.get(), third.get());
+        Mockito.verify(messageDAO, Mockito.times(1)).getMessageById(1);
+
+        SingleFlight<?, ?> flights = messageService.getSingleFlights().get(0);
+        Assert.assertEquals(1, flights.getCallCount());
+        Assert.assertEquals(2, flights.getCoalescedCount());
+        Assert.assertEquals(0, flights.getInFlight());
+    }
+
+    /**
+     * A page read issued after a message is posted by the same account should not join the read already in flight.
+     */
+    @Test
+    public void writeStartsANewFlightForLaterReads() throws Exception {
+        Message posted = new Message(2, 1, "a new message", 1669947800);
+        Mockito.when(messageDAO.addMessage(Mockito.any())).thenReturn(posted);
+        Mockito.when(messageDAO.getMessagesByUserAfter(1, 0, 11)).thenAnswer(invocation -> {
+            daoCalled.countDown();
+            releaseDao.await(5, TimeUnit.SECONDS);
+            return List.of(new Message(1, 1, "test message 1", 1669947792));
+        });
+
+        CompletableFuture<MessagePage> before = messageService.getMessagesByUserPageAsync(1, null, 10);
+        Assert.assertTrue(daoCalled.await(5, TimeUnit.SECONDS));
+        messageService.addMessage(new Message(1, "a new message", 1669947800));
+        CompletableFuture<MessagePage> after = messageService.getMessagesByUserPageAsync(1, null, 10);
+        releaseDao.countDown();
+
+        before.get(5, TimeUnit.SECONDS);
+        after.get(5, TimeUnit.SECONDS);
+        Mockito.verify(messageDAO, Mockito.times(2)).getMessagesByUserAfter(1, 0, 11);
+    }
+}
@@ -0,0 +1,107 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import Util.LatencyHistogram;
+import Util.Metrics;
+import io.javalin.Javalin;
+
+public class MetricsEndpointTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient for interacting
+     * locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending GET localhost:8080/metrics after requests to a route, a missing message and an unknown path
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: Prometheus text with route and DAO summaries, status counters and pool and cache gauges
+     */
+    @Test
+    public void metricsReportRoutesDaoCallsAndStatuses() throws IOException, InterruptedException {
+        // Metrics are process-wide, so counts are compared against what earlier tests left behind
+        long routeCount = count(Metrics.getRouteLatency("GET", "/messages/{id}"));
+        long daoCount = count(Metrics.getDaoLatency("MessageDAO.getMessageById"));
+
+        get("/messages/100");
+        get("/messages/100");
+        get("/no/such/path");
+
+        HttpResponse<String> response = get("/metrics");
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertTrue(response.headers().firstValue("Content-Type").orElse("").startsWith("text/plain"));
+        String body = response.body();
+
+        String route = "method=\"GET\",route=\"/messages/{id}\"";
+        Assert.assertTrue(body, body.contains("http_request_duration_seconds{" + route + ",quantile=\"0.99\"}"));
+        Assert.assertTrue(body, body.contains("http_request_duration_seconds_count{" + route + "} " + (routeCount + 2)));
+        Assert.assertTrue(body, body.contains("http_request_duration_seconds_max{" + route + "}"));
+        Assert.assertTrue(body, body.contains("http_responses_total{" + route + ",status=\"200\"}"));
+        Assert.assertTrue(body, body.contains("route=\"unmatched\",status=\"404\"}"));
+        // The second lookup is answered from the cache, so the DAO was called once
+        Assert.assertTrue(body, body.contains("dao_call_duration_seconds_count{method=\"MessageDAO.getMessageById\"} "
+                + (daoCount + 1)));
+        Assert.assertTrue(body, body.contains("db_pool_max_connections "));
+        Assert.assertTrue(body, body.contains("message_cache_hits_total 1"));
+    }
+
+    /**
+     * Percentiles read back from a histogram should be within the bucket precision of the true values.
+     */
+    @Test
+    public void histogramPercentilesAreWithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long micros = 1; micros <= 10_000; micros++) {
+            histogram.record(micros * 1000);
+        }
+
+        Assert.assertEquals(10_000, histogram.getCount());
+        Assert.assertEquals(10_000_000, histogram.getMax());
+        assertWithin(5_000_000, histogram.getValueAtQuantile(0.5));
+        assertWithin(9_900_000, histogram.getValueAtQuantile(0.99));
+        Assert.assertEquals(10_000_000, histogram.getValueAtQuantile(1.0));
+    }
+
+    private void assertWithin(long expected, long actual) {
+        Assert.assertTrue(expected + " vs " + actual, Math.abs(actual - expected) <= expected * 0.04);
+    }
+
+    private long count(LatencyHistogram histogram) {
+        return histogram == null ? 0 : histogram.getCount();
+    }
+
+    private HttpResponse<String> get(String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder().uri(URI.create("http://localhost:8080" + path)).build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
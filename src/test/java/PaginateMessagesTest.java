@@ -0,0 +1,130 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class PaginateMessagesTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web. Four more messages are posted so the table holds message ids 1 to 5.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException, IOException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+
+        for (int i = 2; i <= 5; i++) {
+            HttpRequest postMessageRequest = HttpRequest.newBuilder()
+                    .uri(URI.create("http://localhost:8080/messages"))
+                    .POST(HttpRequest.BodyPublishers.ofString("{"+
+                            "\"posted_by\":1, " +
+                            "\"message_text\": \"test message " + i + "\", " +
+                            "\"time_posted_epoch\": " + (1669947792 + i) + "}"))
+                    .header("Content-Type", "application/json")
+                    .build();
+            webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString());
+        }
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Walking GET localhost:8080/messages?limit=2 by following the next cursor
+     *
+     * Expected Response:
+     *  Status Code: 200 on every page
+     *  Response Body: pages of 2, 2 and 1 messages in message_id order, the last one without a next cursor
+     */
+    @Test
+    public void getAllMessagesFollowingCursors() throws IOException, InterruptedException {
+        List<Integer> seenIds = new ArrayList<>();
+        List<Integer> pageSizes = new ArrayList<>();
+        String cursor = null;
+        do {
+            String uri = "http://localhost:8080/messages?limit=2" + (cursor == null ? "" : "&cursor=" + cursor);
+            HttpResponse<String> response = webClient.send(HttpRequest.newBuilder().uri(URI.create(uri)).build(),
+                    HttpResponse.BodyHandlers.ofString());
+            Assert.assertEquals(200, response.statusCode());
+            List<Message> page = objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+            pageSizes.add(page.size());
+            for (Message message : page) {
+                seenIds.add(message.getMessage_id());
+            }
+            cursor = response.headers().firstValue(SocialMediaController.NEXT_CURSOR_HEADER).orElse(null);
+        } while (cursor != null);
+
+        Assert.assertEquals(List.of(2, 2, 1), pageSizes);
+        Assert.assertEquals(List.of(1, 2, 3, 4, 5), seenIds);
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/accounts/1/messages?limit=3
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the first 3 messages of the user, with a next cursor header
+     */
+    @Test
+    public void getMessagesByUserFirstPage() throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/accounts/1/messages?limit=3"))
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+
+        List<Message> expectedResult = new ArrayList<>();
+        expectedResult.add(new Message(1, 1, "test message 1", 1669947792));
+        expectedResult.add(new Message(2, 1, "test message 2", 1669947794));
+        expectedResult.add(new Message(3, 1, "test message 3", 1669947795));
+        List<Message> actualResult = objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+        Assert.assertEquals(expectedResult, actualResult);
+        Assert.assertTrue(response.headers().firstValue(SocialMediaController.NEXT_CURSOR_HEADER).isPresent());
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages with a limit out of range or a malformed cursor
+     *
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void getAllMessagesInvalidPagingParameters() throws IOException, InterruptedException {
+        for (String query : List.of("limit=0", "limit=abc", "limit=100000", "cursor=not-a-cursor")) {
+            HttpRequest request = HttpRequest.newBuilder()
+                    .uri(URI.create("http://localhost:8080/messages?" + query))
+                    .build();
+            HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+            Assert.assertEquals(query, 400, response.statusCode());
+        }
+    }
+}
@@ -14,6 +14,7 @@ import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
@@ -98,6 +99,51 @@ public class RetrieveAllMessagesTest {
     }
 
 
+    /**
+     * Sending an http request to GET localhost:8080/messages when the database read fails after part of the
+     * listing has been sent
+     *
+     * Expected Response:
+     *  Status Code: 200, sent with the first rows
+     *  Response Body: a truncated listing that does not parse as a JSON array, or no complete body at all
+     */
+    @Test
+    public void getAllMessagesFailingPartWay() throws IOException, InterruptedException, SQLException {
+        try (Connection conn = ConnectionUtil.getConnection()) {
+            PreparedStatement ps = conn.prepareStatement(
+                    "insert into message (posted_by, message_text, time_posted_epoch) values (1, ?, 1669947792)");
+            for (int i = 2; i <= 1000; i++) {
+                ps.setString(1, "message " + i);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+            // Reading message 900's time_posted_epoch as a number fails, after several flushes of the streamed array
+            conn.createStatement().execute("alter table message alter column time_posted_epoch varchar(20)");
+            conn.createStatement().execute("update message set time_posted_epoch = 'never' where message_id = 900");
+        }
+        try {
+            HttpRequest request = HttpRequest.newBuilder()
+                    .uri(URI.create("http://localhost:8080/messages"))
+                    .build();
+            HttpResponse<String> response;
+            try {
+                response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+            } catch (IOException e) {
+                // The connection was cut before the body ended
+                return;
+            }
+            Assert.assertEquals(200, response.statusCode());
+            Assert.assertTrue(response.body().startsWith("[{\"message_id\":1,"));
+            Assert.assertFalse(response.body().endsWith("]"));
+            try {
+                objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+                Assert.fail("A truncated listing parsed as a complete one");
+            } catch (JsonProcessingException expected) {
+            }
+        } finally {
+            ConnectionUtil.resetTestDatabase();
+        }
+    }
 
     private void removeInitialMessage(){
         try {
@@ -0,0 +1,49 @@
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Util.ConnectionUtil;
+import Util.SchemaMigrator;
+
+public class SchemaMigrationTest {
+
+    /**
+     * Before every test, reset the database, which runs the base script followed by the migrations.
+     */
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+    }
+
+    /**
+     * Every known migration should be recorded once the database has been reset.
+     */
+    @Test
+    public void allMigrationsAreRecorded() {
+        List<Integer> expected = new ArrayList<>();
+        for (int version = 1; version <= SchemaMigrator.latestVersion(); version++) {
+            expected.add(version);
+        }
+        Assert.assertEquals(expected, SchemaMigrator.appliedVersions());
+    }
+
+    /**
+     * Running the migrator again should not apply anything twice.
+     */
+    @Test
+    public void migrateIsIdempotent() {
+        Assert.assertEquals(0, SchemaMigrator.migrate());
+        Assert.assertEquals(SchemaMigrator.latestVersion(), SchemaMigrator.appliedVersions().size());
+    }
+
+    /**
+     * None of the hot DAO queries should be planned as a full table scan.
+     */
+    @Test
+    public void hotQueriesUseIndexes() {
+        Assert.assertEquals(new ArrayList<String>(), SchemaMigrator.verifyIndexUsage());
+    }
+}
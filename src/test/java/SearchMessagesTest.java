@@ -0,0 +1,231 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import DAO.MessageDAO;
+import Model.Message;
+import Model.MessagePage;
+import Service.MessageService;
+import Service.SearchIndex;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class SearchMessagesTest {
+    MessageDAO messageDAO;
+    MessageService messageService;
+
+    /**
+     * Before every test, reset the database and start a service that indexes message text. 600 more messages are
+     * posted; message i has the words "even" or "odd", "fizz" if i is a multiple of 3 and "buzz" if of 5.
+     */
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+        messageDAO = new MessageDAO(false);
+        messageService = new MessageService(messageDAO, new MessageService.Options().searchIndex(true));
+        List<Message> batch = new ArrayList<>();
+        for (int i = 0; i < 600; i++) {
+            String text = "Message " + i + (i % 2 == 0 ? " even" : " odd") + (i % 3 == 0 ? " FIZZ" : "")
+                    + (i % 5 == 0 ? ", buzz!" : "");
+            batch.add(new Message(1, text, 1669947792L + i));
+        }
+        messageService.addMessages(batch);
+    }
+
+    /**
+     * Terms are the lower-cased runs of letters and digits, and lookups should agree with a plain scan of the ids
+     * across many blocks, after out-of-order adds and removals.
+     */
+    @Test
+    public void postingListsMatchAScan() {
+        Assert.assertEquals(List.of("caf\u00e9", "d\u00e9j\u00e0", "vu", "42"),
+                SearchIndex.terms("Caf\u00e9, D\u00c9J\u00c0-vu  42 caf\u00e9!"));
+        Assert.assertTrue(SearchIndex.terms(" -- ").isEmpty());
+
+        SearchIndex index = new SearchIndex();
+        List<Integer> expected = new ArrayList<>();
+        for (int messageId = 1; messageId <= 2000; messageId += 1 + messageId % 7) {
+            index.add(messageId, "alpha" + (messageId % 4 == 0 ? " beta" : ""));
+        }
+        index.add(3, "alpha beta");
+        index.add(5000, "beta alpha");
+        index.remove(5000, "beta");
+        index.remove(4, "alpha beta");
+        for (int messageId = 1999; messageId >= 1; messageId--) {
+            if (containsBoth(messageId)) {
+                expected.add(messageId);
+            }
+        }
+
+        int[] found = index.getMessageIdsBefore(List.of("beta", "alpha"), 2000, 10_000);
+        List<Integer> foundIds = new ArrayList<>();
+        for (int messageId : found) {
+            foundIds.add(messageId);
+        }
+        Assert.assertEquals(expected, foundIds);
+        Assert.assertArrayEquals(new int[] {8, 3}, index.getMessageIdsBefore(List.of("alpha", "beta"), 12, 5));
+        Assert.assertEquals(0, index.getMessageIdsBefore(List.of("alpha", "gamma"), 2000, 10).length);
+        Assert.assertArrayEquals(new int[] {5000}, index.getMessageIdsBefore(List.of("alpha"), 6000, 1));
+        Assert.assertTrue(index.getMemoryBytes() < 4L * index.getPostingCount() + 2000);
+    }
+
+    /**
+     * Ids added out of order fill blocks past their size until they split, and removals empty blocks until they
+     * are dropped, the last one included; a list should still hold exactly what was left in it.
+     */
+    @Test
+    public void blocksSplitAndEmpty() {
+        SearchIndex index = new SearchIndex();
+        for (int messageId = 2; messageId <= 3000; messageId += 2) {
+            index.add(messageId, "word");
+        }
+        for (int messageId = 2999; messageId >= 1; messageId -= 2) {
+            index.add(messageId, "word");
+        }
+        index.add(1500, "word");
+        for (int messageId = 1; messageId <= 3000; messageId++) {
+            if (messageId % 3 == 0 || (messageId > 1000 && messageId <= 2000) || messageId > 2900) {
+                index.remove(messageId, "word");
+            }
+        }
+        index.add(2500, "word");
+
+        List<Integer> expected = new ArrayList<>();
+        for (int messageId = 2900; messageId >= 1; messageId--) {
+            if (messageId % 3 != 0 && (messageId <= 1000 || messageId > 2000)) {
+                expected.add(messageId);
+            }
+        }
+        List<Integer> foundIds = new ArrayList<>();
+        for (int messageId : index.getMessageIdsBefore(List.of("word"), Integer.MAX_VALUE, 10_000)) {
+            foundIds.add(messageId);
+        }
+        Assert.assertEquals(expected, foundIds);
+        Assert.assertEquals(expected.size(), index.getPostingCount("word"));
+        Assert.assertArrayEquals(new int[] {2900}, index.getMessageIdsBefore(List.of("word"), 3001, 1));
+        Assert.assertArrayEquals(new int[] {1000, 998}, index.getMessageIdsBefore(List.of("word"), 2001, 2));
+    }
+
+    // Mirrors the adds and removals of postingListsMatchAScan
+    private static boolean containsBoth(int messageId) {
+        if (messageId == 3) {
+            return true;
+        }
+        if (messageId == 4 || messageId % 4 != 0) {
+            return false;
+        }
+        for (int added = 1; added <= messageId; added += 1 + added % 7) {
+            if (added == messageId) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Pages of a search should add up to what a service without the index finds by scanning the table, after
+     * every kind of write, newest first.
+     */
+    @Test
+    public void searchesMatchAScan() {
+        MessageService scanning = new MessageService(messageDAO, new MessageService.Options());
+        List<Message> fizzBuzz = walk(messageService, "buzz fizz", 7);
+        Assert.assertEquals(40, fizzBuzz.size());
+        Assert.assertEquals("Message 585 odd FIZZ, buzz!", fizzBuzz.get(0).getMessage_text());
+
+        messageService.deleteMessageReturning(fizzBuzz.get(0).getMessage_id());
+        messageService.deleteMessage(fizzBuzz.get(1).getMessage_id());
+        messageService.updateMessageText(fizzBuzz.get(2).getMessage_id(), "no longer");
+        messageService.updateMessage(new Message(fizzBuzz.get(3).getMessage_id(), 0, "fizz only", 0));
+        messageService.updateMessageText(3, "now buzz and fizz");
+        messageService.addMessage(new Message(1, "Fizz buzz, the newest", 1669950000L));
+
+        for (String query : new String[] {"fizz buzz", "FIZZ", "even buzz", "newest", "fizz only", "no-such"}) {
+            Assert.assertEquals(query, walk(scanning, query, 1000), walk(messageService, query, 7));
+        }
+        List<Message> after = walk(messageService, "fizz buzz", 7);
+        Assert.assertEquals(38, after.size());
+        Assert.assertEquals("Fizz buzz, the newest", after.get(0).getMessage_text());
+        Assert.assertEquals(3, after.get(after.size() - 2).getMessage_id());
+    }
+
+    /**
+     * Searching with GET localhost:8080/messages/search?q=&limit= by following the next cursor, and with bad
+     * parameters
+     *
+     * Expected Response:
+     *  Status Code: 200 on every page, and 400 without q, with a q that has no terms, or with a bad limit or cursor
+     *  Response Body: the messages containing every term, most recently posted first; GET /messages/{id} still
+     *  answers for ids
+     */
+    @Test
+    public void searchMessagesOverHttp() throws IOException, InterruptedException {
+        SocialMediaController socialMediaController = new SocialMediaController();
+        Javalin app = socialMediaController.startAPI();
+        app.start(8080);
+        try {
+            Thread.sleep(1000);
+            HttpClient webClient = HttpClient.newHttpClient();
+            ObjectMapper objectMapper = new ObjectMapper();
+
+            List<Integer> seenIds = new ArrayList<>();
+            String cursor = null;
+            do {
+                String uri = "http://localhost:8080/messages/search?q=Buzz+EVEN&limit=8"
+                        + (cursor == null ? "" : "&cursor=" + cursor);
+                HttpResponse<String> response = webClient.send(HttpRequest.newBuilder().uri(URI.create(uri)).build(),
+                        HttpResponse.BodyHandlers.ofString());
+                Assert.assertEquals(200, response.statusCode());
+                List<Message> page = objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+                Assert.assertTrue(page.size() <= 8);
+                for (Message message : page) {
+                    Assert.assertTrue(message.getMessage_text().endsWith("buzz!"));
+                    Assert.assertTrue(message.getMessage_text().contains(" even"));
+                    seenIds.add(message.getMessage_id());
+                }
+                cursor = response.headers().firstValue(SocialMediaController.NEXT_CURSOR_HEADER).orElse(null);
+            } while (cursor != null);
+            Assert.assertEquals(60, seenIds.size());
+            for (int i = 1; i < seenIds.size(); i++) {
+                Assert.assertTrue(seenIds.get(i - 1) > seenIds.get(i));
+            }
+
+            for (String query : new String[] {"", "q=", "q=%21%21", "q=buzz&limit=0", "q=buzz&cursor=nonsense"}) {
+                HttpResponse<String> response = webClient.send(HttpRequest.newBuilder()
+                        .uri(URI.create("http://localhost:8080/messages/search?" + query)).build(),
+                        HttpResponse.BodyHandlers.ofString());
+                Assert.assertEquals(query, 400, response.statusCode());
+            }
+            HttpResponse<String> byId = webClient.send(HttpRequest.newBuilder()
+                    .uri(URI.create("http://localhost:8080/messages/1")).build(), HttpResponse.BodyHandlers.ofString());
+            Assert.assertEquals(200, byId.statusCode());
+            Assert.assertEquals("test message 1", objectMapper.readValue(byId.body(), Message.class).getMessage_text());
+        } finally {
+            app.stop();
+        }
+    }
+
+    private static List<Message> walk(MessageService service, String query, int limit) {
+        List<Message> messages = new ArrayList<>();
+        String cursor = null;
+        do {
+            MessagePage page = service.searchMessages(query, cursor, limit);
+            Assert.assertTrue(page.getMessages().size() <= limit);
+            messages.addAll(page.getMessages());
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+        return messages;
+    }
+}
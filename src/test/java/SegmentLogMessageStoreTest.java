@@ -0,0 +1,201 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import DAO.SegmentLogMessageStore;
+import Model.Message;
+
+public class SegmentLogMessageStoreTest {
+    // Just over the minimum, so a few thousand small messages span several segments
+    private static final int SEGMENT_SIZE = 70_000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    List<SegmentLogMessageStore> opened = new ArrayList<>();
+
+    /**
+     * Compaction only runs when a test asks for it.
+     */
+    private SegmentLogMessageStore open() throws IOException {
+        SegmentLogMessageStore store = new SegmentLogMessageStore(folder.getRoot().toPath(), SEGMENT_SIZE, false,
+                0.5, 0);
+        opened.add(store);
+        return store;
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        for (SegmentLogMessageStore store : opened) {
+            store.close();
+        }
+    }
+
+    /**
+     * Inserts, overwrites and deletes should read back as the latest state, in message_id order.
+     */
+    @Test
+    public void readsTheLatestRecordOfEachMessage() throws IOException {
+        SegmentLogMessageStore store = open();
+        Message first = store.addMessage(new Message(1, "first", 1669947792));
+        Message second = store.addMessage(new Message(2, "second", 1669947793));
+        Message third = store.addMessage(new Message(1, "third", 1669947794));
+
+        Assert.assertEquals(new Message(1, 1, "first", 1669947792), first);
+        Assert.assertEquals(new Message(1, 1, "changed", 1669947792), store.updateMessageTextReturning(1, "changed"));
+        Assert.assertEquals(second, store.deleteMessageReturning(second.getMessage_id()));
+        Assert.assertNull(store.deleteMessageReturning(second.getMessage_id()));
+        Assert.assertNull(store.updateMessageTextReturning(42, "missing"));
+
+        Assert.assertEquals(List.of(new Message(1, 1, "changed", 1669947792), third), store.getAllMessages());
+        Assert.assertEquals(List.of(third), store.getMessagesByUserAfter(1, 1, 10));
+        Assert.assertTrue(store.getMessagesByUser(2).isEmpty());
+        Assert.assertEquals(2, store.getLiveMessageCount());
+    }
+
+    /**
+     * Reopening the directory without closing the store, as after a crash, should rebuild the same index and carry
+     * on numbering after the highest message_id seen.
+     */
+    @Test
+    public void recoversTheIndexFromTheSegments() throws IOException {
+        SegmentLogMessageStore store = open();
+        for (int i = 0; i < 3000; i++) {
+            store.addMessage(new Message(1 + i % 3, "message " + i, 1669947792L + i));
+        }
+        store.deleteMessage(3000);
+        store.updateMessageTextReturning(10, "changed");
+        List<Message> before = store.getAllMessages();
+        Assert.assertTrue(store.getSegmentCount() > 1);
+
+        SegmentLogMessageStore recovered = open();
+
+        Assert.assertEquals(before, recovered.getAllMessages());
+        Assert.assertEquals(3001, recovered.addMessage(new Message(1, "after restart", 1669948000L)).getMessage_id());
+    }
+
+    /**
+     * A record cut short by a crash should be dropped on recovery, and what is written after it should survive the
+     * next restart without the damaged bytes coming back.
+     */
+    @Test
+    public void discardsATornRecord() throws IOException {
+        SegmentLogMessageStore store = open();
+        store.addMessage(new Message(1, "kept", 1669947792));
+        store.addMessage(new Message(1, "torn by the crash", 1669947793));
+
+        // The second record starts after the 32-byte header and the first, 27 bytes plus its text; damage its text
+        File segment = folder.getRoot().listFiles()[0];
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            file.seek(32 + 27 + "kept".length() + 23);
+            file.write('X');
+        }
+
+        SegmentLogMessageStore recovered = open();
+        Assert.assertEquals(List.of(new Message(1, 1, "kept", 1669947792)), recovered.getAllMessages());
+        Message replacement = recovered.addMessage(new Message(1, "new", 1669947800));
+        Assert.assertEquals(2, replacement.getMessage_id());
+
+        Assert.assertEquals(List.of(new Message(1, 1, "kept", 1669947792), replacement), open().getAllMessages());
+    }
+
+    /**
+     * Compacting segments that are mostly dead should shrink the log and leave the same messages after a restart.
+     */
+    @Test
+    public void compactionReclaimsDeadRecords() throws IOException {
+        SegmentLogMessageStore store = open();
+        for (int i = 0; i < 2000; i++) {
+            store.addMessage(new Message(1, "message number " + i, 1669947792L + i));
+        }
+        for (int messageId = 1; messageId <= 2000; messageId++) {
+            if (messageId % 10 != 0) {
+                store.deleteMessage(messageId);
+            }
+        }
+        List<Message> before = store.getAllMessages();
+        int segmentsBefore = store.getSegmentCount();
+        long usedBefore = store.getUsedBytes();
+
+        Assert.assertTrue(store.compact() > 0);
+
+        Assert.assertTrue(store.getSegmentCount() < segmentsBefore);
+        Assert.assertTrue(store.getUsedBytes() < usedBefore);
+        Assert.assertEquals(before, store.getAllMessages());
+        Assert.assertEquals(before, open().getAllMessages());
+    }
+
+    /**
+     * A tombstone should outlive compaction only while an older segment still holds the message it deletes, so
+     * rounds of inserts and deletes leave no growing trail of tombstones to copy forward on every pass.
+     */
+    @Test
+    public void compactionDropsTombstonesNoLongerNeeded() throws IOException {
+        SegmentLogMessageStore store = open();
+        for (int i = 0; i < 700; i++) {
+            store.addMessage(new Message(1, "kept " + i + " " + "x".repeat(50), 1669947792L + i));
+        }
+        for (int messageId = 1; messageId <= 70; messageId++) {
+            store.deleteMessage(messageId);
+        }
+        for (int round = 0; round < 20; round++) {
+            List<Message> added = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                added.add(store.addMessage(new Message(2, "round " + round + " message " + i, 1669950000L + i)));
+            }
+            for (Message message : added) {
+                store.deleteMessage(message.getMessage_id());
+            }
+            store.compact();
+        }
+        List<Message> before = store.getAllMessages();
+
+        Assert.assertEquals(630, before.size());
+        Assert.assertEquals(71, before.get(0).getMessage_id());
+        Assert.assertTrue(store.getUsedBytes() - store.getLiveBytes() < 2 * SEGMENT_SIZE);
+        Assert.assertEquals(0, store.compact());
+        Assert.assertEquals(before, open().getAllMessages());
+    }
+
+    /**
+     * Closing a store whose background compactor is running should wait for it, so no pass creates or deletes
+     * segment files afterwards, and the messages should survive a restart.
+     */
+    @Test
+    public void closeStopsTheCompactor() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        SegmentLogMessageStore store = new SegmentLogMessageStore(directory, SEGMENT_SIZE, false, 0.5, 1);
+        for (int i = 0; i < 2000; i++) {
+            store.addMessage(new Message(1, "message number " + i, 1669947792L + i));
+            if (i % 2 == 1) {
+                store.deleteMessage(i);
+            }
+        }
+        List<Message> before = store.getAllMessages();
+        store.close();
+
+        List<Path> files = listFiles(directory);
+        Thread.sleep(50);
+        Assert.assertEquals(files, listFiles(directory));
+        Assert.assertEquals(0, store.compact());
+        Assert.assertEquals(before, open().getAllMessages());
+    }
+
+    private static List<Path> listFiles(Path directory) throws IOException {
+        try (Stream<Path> stream = Files.list(directory)) {
+            return stream.sorted().collect(Collectors.toList());
+        }
+    }
+}
@@ -0,0 +1,194 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import DAO.MessageDAO;
+import Model.Message;
+import Model.MessagePage;
+import Service.MessageService;
+import Service.RecentMessagesIndex;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class TimeRangeQueryTest {
+    MessageDAO messageDAO;
+    MessageService messageService;
+
+    /**
+     * Before every test, reset the database and start a service whose recent messages index holds the newest 100
+     * messages. 300 more are posted, three to each time_posted_epoch from 1669950000 on.
+     */
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+        messageDAO = new MessageDAO(false);
+        messageService = new MessageService(messageDAO, new MessageService.Options().recentIndexSize(100));
+        List<Message> batch = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            batch.add(new Message(1, "message " + i, 1669950000L + i / 3));
+        }
+        messageService.addMessages(batch);
+    }
+
+    /**
+     * Pages walked by cursor should add up to the whole range in (time_posted_epoch, message_id) order, whether the
+     * range is recent enough to be served from memory or reaches back past the index to the database.
+     */
+    @Test
+    public void pagesMatchTheDatabase() {
+        RecentMessagesIndex index = messageService.getRecentMessagesIndex();
+        Assert.assertEquals(100, index.size());
+
+        Assert.assertEquals(messageDAO.getMessagesInTimeRange(1669950070L, 0, 1669950095L, 1000),
+                walk(1669950070L, 1669950095L, 7));
+        Assert.assertTrue(index.getHitCount() > 0);
+        Assert.assertEquals(0, index.getMissCount());
+
+        List<Message> old = walk(1669940000L, 1669950010L, 7);
+        Assert.assertEquals(messageDAO.getMessagesInTimeRange(1669940000L, 0, 1669950010L, 1000), old);
+        Assert.assertEquals(31, old.size());
+        Assert.assertEquals(1669947792L, old.get(0).getTime_posted_epoch());
+        Assert.assertTrue(index.getMissCount() > 0);
+
+        Assert.assertTrue(walk(1669950100L, 1669960000L, 7).isEmpty());
+        Assert.assertTrue(walk(1669950050L, 1669950050L, 7).isEmpty());
+    }
+
+    /**
+     * Deletes and updates through the service should show in ranges served from memory, and a message posted
+     * before the index's floor should still be found in the database.
+     */
+    @Test
+    public void reflectsWrites() {
+        List<Message> before = messageService.getMessagesInTimeRange(1669950090L, 1669950100L, null, 100)
+                .getMessages();
+        Message deleted = before.get(0);
+        Message updated = before.get(1);
+        messageService.deleteMessageReturning(deleted.getMessage_id());
+        messageService.updateMessageText(updated.getMessage_id(), "changed");
+        messageService.deleteMessage(before.get(2).getMessage_id());
+        messageService.updateMessage(new Message(before.get(3).getMessage_id(), 0, "changed again", 0));
+        Message late = messageService.addMessage(new Message(1, "late", 1669950000L));
+
+        List<Message> after = messageService.getMessagesInTimeRange(1669950090L, 1669950100L, null, 100)
+                .getMessages();
+        Assert.assertEquals(messageDAO.getMessagesInTimeRange(1669950090L, 0, 1669950100L, 100), after);
+        Assert.assertEquals(before.size() - 2, after.size());
+        Assert.assertEquals("changed", after.get(0).getMessage_text());
+        Assert.assertEquals("changed again", after.get(1).getMessage_text());
+
+        List<Message> early = messageService.getMessagesInTimeRange(1669950000L, 1669950001L, null, 100)
+                .getMessages();
+        Assert.assertEquals(4, early.size());
+        Assert.assertEquals(late, early.get(3));
+    }
+
+    /**
+     * Concurrent updates of one message should leave the index with the text the database ended up with.
+     */
+    @Test
+    public void concurrentUpdatesEndWithTheCommittedText() throws Exception {
+        Message target = messageService.getMessagesInTimeRange(1669950095L, 1669950096L, null, 1).getMessages()
+                .get(0);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> writers = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                int writer = t;
+                writers.add(pool.submit(() -> {
+                    for (int i = 0; i < 25; i++) {
+                        messageService.updateMessageText(target.getMessage_id(), "writer " + writer + " update " + i);
+                    }
+                }));
+            }
+            for (Future<?> writer : writers) {
+                writer.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        Message indexed = messageService.getMessagesInTimeRange(1669950095L, 1669950096L, null, 1).getMessages()
+                .get(0);
+        Assert.assertEquals(messageDAO.getMessageById(target.getMessage_id()), indexed);
+    }
+
+    /**
+     * Retrieving GET localhost:8080/messages?since=&until=&limit= by following the next cursor, and with bad
+     * parameters
+     *
+     * Expected Response:
+     *  Status Code: 200 on every page, and 400 for an unparseable bound, since after until, a bad limit or cursor
+     *  Response Body: the messages posted in [since, until), oldest first, pages of at most limit messages
+     */
+    @Test
+    public void getMessagesInTimeRangeOverHttp() throws IOException, InterruptedException {
+        SocialMediaController socialMediaController = new SocialMediaController();
+        Javalin app = socialMediaController.startAPI();
+        app.start(8080);
+        try {
+            Thread.sleep(1000);
+            HttpClient webClient = HttpClient.newHttpClient();
+            ObjectMapper objectMapper = new ObjectMapper();
+
+            List<Integer> seenIds = new ArrayList<>();
+            String cursor = null;
+            do {
+                String uri = "http://localhost:8080/messages?since=1669950010&until=1669950020&limit=4"
+                        + (cursor == null ? "" : "&cursor=" + cursor);
+                HttpResponse<String> response = webClient.send(HttpRequest.newBuilder().uri(URI.create(uri)).build(),
+                        HttpResponse.BodyHandlers.ofString());
+                Assert.assertEquals(200, response.statusCode());
+                List<Message> page = objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+                Assert.assertTrue(page.size() <= 4);
+                for (Message message : page) {
+                    seenIds.add(message.getMessage_id());
+                }
+                cursor = response.headers().firstValue(SocialMediaController.NEXT_CURSOR_HEADER).orElse(null);
+            } while (cursor != null);
+            List<Integer> expectedIds = new ArrayList<>();
+            for (Message message : messageDAO.getMessagesInTimeRange(1669950010L, 0, 1669950020L, 100)) {
+                expectedIds.add(message.getMessage_id());
+            }
+            Assert.assertEquals(30, seenIds.size());
+            Assert.assertEquals(expectedIds, seenIds);
+
+            for (String query : new String[] {"since=abc", "since=5&until=4", "until=5&limit=0",
+                    "since=5&cursor=nonsense"}) {
+                HttpResponse<String> response = webClient.send(HttpRequest.newBuilder()
+                        .uri(URI.create("http://localhost:8080/messages?" + query)).build(),
+                        HttpResponse.BodyHandlers.ofString());
+                Assert.assertEquals(query, 400, response.statusCode());
+            }
+        } finally {
+            app.stop();
+        }
+    }
+
+    private List<Message> walk(long since, long until, int limit) {
+        List<Message> messages = new ArrayList<>();
+        String cursor = null;
+        do {
+            MessagePage page = messageService.getMessagesInTimeRange(since, until, cursor, limit);
+            Assert.assertTrue(page.getMessages().size() <= limit);
+            messages.addAll(page.getMessages());
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+        return messages;
+    }
+}
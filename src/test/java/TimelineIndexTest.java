@@ -0,0 +1,148 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import DAO.MessageDAO;
+import DAO.MessageRowHandler;
+import Model.Message;
+import Model.MessagePage;
+import Service.MessageService;
+import Service.TimelineIndex;
+import Util.ConnectionUtil;
+
+public class TimelineIndexTest {
+    MessageDAO messageDAO;
+    MessageService messageService;
+
+    /**
+     * Before every test, reset the database and start a service that indexes timelines.
+     */
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+        messageDAO = new MessageDAO(false);
+        messageService = new MessageService(messageDAO, new MessageService.Options().timelineIndex(true));
+    }
+
+    /**
+     * IDs should come back sorted and after the given one, whatever order they were added and removed in.
+     */
+    @Test
+    public void keepsEachAccountsIdsSorted() {
+        TimelineIndex index = new TimelineIndex();
+        for (int messageId : new int[] {5, 1, 9, 7, 3, 11, 2}) {
+            index.add(1, messageId);
+        }
+        index.add(2, 4);
+        index.add(1, 5);
+
+        Assert.assertTrue(index.remove(1, 9));
+        Assert.assertFalse(index.remove(1, 9));
+        Assert.assertTrue(index.remove(4));
+
+        Assert.assertArrayEquals(new int[] {1, 2, 3, 5, 7, 11}, index.getMessageIdsAfter(1, 0, 100));
+        Assert.assertArrayEquals(new int[] {5, 7}, index.getMessageIdsAfter(1, 3, 2));
+        Assert.assertArrayEquals(new int[0], index.getMessageIdsAfter(1, 11, 10));
+        Assert.assertArrayEquals(new int[0], index.getMessageIdsAfter(2, 0, 10));
+        Assert.assertEquals(6, index.getMessageCount());
+        Assert.assertEquals(2, index.getAccountCount());
+        Assert.assertTrue(index.getMaxAccountMemoryBytes() >= 6 * 4);
+    }
+
+    /**
+     * Listings, pages and streams served from the index should match what MessageDAO finds after every kind of
+     * write.
+     */
+    @Test
+    public void timelinesMatchTheDatabase() throws Exception {
+        List<Message> batch = new ArrayList<>();
+        for (int i = 0; i < 2500; i++) {
+            batch.add(new Message(1, "message " + i, 1669947792L + i));
+        }
+        messageService.addMessages(batch);
+        messageService.addMessage(new Message(1, "single", 1669950000L));
+        messageService.deleteMessageReturning(10);
+        messageService.deleteMessage(20);
+        messageService.updateMessageText(30, "changed");
+
+        Assert.assertEquals(messageDAO.getMessagesByUserAfter(1, 0, 10_000), messageService.getMessagesByUser(1));
+        MessagePage page = messageService.getMessagesByUserPage(1, null, 1000);
+        Assert.assertEquals(messageDAO.getMessagesByUserAfter(1, 0, 1000), page.getMessages());
+        int lastOnPage = page.getMessages().get(999).getMessage_id();
+        Assert.assertEquals(messageDAO.getMessagesByUserAfter(1, lastOnPage, 1000),
+                messageService.getMessagesByUserPage(1, page.getNextCursor(), 1000).getMessages());
+
+        List<Message> streamed = new ArrayList<>();
+        int rows = messageService.streamMessagesByUser(1, (messageId, postedBy, messageText, timePostedEpoch) ->
+                streamed.add(new Message(messageId, postedBy, messageText, timePostedEpoch)));
+        Assert.assertEquals(streamed.size(), rows);
+        Assert.assertEquals(messageDAO.getMessagesByUserAfter(1, 0, 10_000), streamed);
+        Assert.assertTrue(messageService.getMessagesByUser(2).isEmpty());
+    }
+
+    /**
+     * A row the index does not hold, between indexed ones, should not make a cold timeline read drop the indexed
+     * messages it pushes out of the range query.
+     */
+    @Test
+    public void unindexedRowsDoNotDropIndexedMessages() throws IOException {
+        for (int i = 2; i <= 7; i++) {
+            messageDAO.addMessage(new Message(1, "message " + i, 1669947792L + i));
+        }
+        MessageDAO hidingDAO = new MessageDAO(false) {
+            @Override
+            public int streamAllMessages(MessageRowHandler handler) throws IOException {
+                // Message 4 committed but was not indexed yet
+                return super.streamAllMessages((messageId, postedBy, messageText, timePostedEpoch) -> {
+                    if (messageId != 4) {
+                        handler.onRow(messageId, postedBy, messageText, timePostedEpoch);
+                    }
+                });
+            }
+        };
+        MessageService service = new MessageService(hidingDAO, new MessageService.Options().timelineIndex(true));
+
+        List<Integer> expectedIds = List.of(1, 2, 3, 5, 6, 7);
+        for (int read = 0; read < 2; read++) {
+            List<Integer> ids = new ArrayList<>();
+            for (Message message : service.getMessagesByUser(1)) {
+                ids.add(message.getMessage_id());
+            }
+            Assert.assertEquals(expectedIds, ids);
+        }
+        Assert.assertEquals(6, service.getTimelineIndex().getMessageCount(1));
+    }
+
+    /**
+     * A timeline read should fetch the bodies it is missing in one store call and none of the ones already cached,
+     * and never run the per-account query.
+     */
+    @Test
+    public void fetchesOnlyUncachedBodies() throws IOException {
+        MessageDAO mockDAO = Mockito.mock(MessageDAO.class);
+        Mockito.when(mockDAO.streamAllMessages(Mockito.any())).thenAnswer(invocation -> {
+            MessageRowHandler handler = invocation.getArgument(0);
+            handler.onRow(1, 1, "first", 1669947792);
+            handler.onRow(2, 1, "second", 1669947793);
+            return 2;
+        });
+        Mockito.when(mockDAO.getMessageById(1)).thenReturn(new Message(1, 1, "first", 1669947792));
+        Mockito.when(mockDAO.getMessagesByIds(new int[] {2}))
+                .thenReturn(List.of(new Message(2, 1, "second", 1669947793)));
+        MessageService service = new MessageService(mockDAO, new MessageService.Options().timelineIndex(true));
+
+        service.getMessageById(1);
+        List<Message> expected = List.of(new Message(1, 1, "first", 1669947792),
+                new Message(2, 1, "second", 1669947793));
+        Assert.assertEquals(expected, service.getMessagesByUser(1));
+        Assert.assertEquals(expected, service.getMessagesByUser(1));
+
+        Mockito.verify(mockDAO, Mockito.times(1)).getMessagesByIds(Mockito.any());
+        Mockito.verify(mockDAO, Mockito.never()).getMessagesByUser(Mockito.anyInt());
+    }
+}